@@ -0,0 +1,121 @@
+package it.cdl.calendario;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronta la composizione del titolo della Boss Bar prima e dopo {@link BossBarTemplate}.
+ * <p>
+ * {@code *MinuteTick} misura l'aggiornamento di ogni minuto di gioco, il caso più frequente: prima
+ * {@link String#format} per l'orario e un {@link String#replace} sul titolo già preparato, ora il modello
+ * scritto nel buffer riutilizzato e confrontato con l'ultimo titolo inviato. {@code *FullRebuild} misura
+ * la ricostruzione completa al cambio di giorno, di meteo o degli eventi attivi.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BossBarTitleBenchmark {
+
+    /** Il formato predefinito di config.yml. */
+    private static final String FORMAT = "&a{data} &8| {stagione} &8| {meteo} &8| &e{ora} &8| &d{evento}";
+    private static final String DATE = "§a12 Dicembre 3";
+    private static final String SEASON = "§bInverno";
+    private static final String WEATHER = "§bSereno";
+    private static final String EVENTS = "§d§lLuna di Sangue§7, §dCaccia alle Uova";
+
+    // --- Stato del percorso precedente ---
+    private String cachedTitlePrefix;
+
+    // --- Stato del percorso con il modello ---
+    private BossBarTemplate template;
+    private final String[] values = new String[BossBarTemplate.Placeholder.values().length];
+    private final StringBuilder titleBuffer = new StringBuilder(128);
+    private String lastTitle;
+
+    private int minuteOfDay;
+
+    @Setup
+    public void setup() {
+        cachedTitlePrefix = legacyPrefix();
+        template = BossBarTemplate.compile(FORMAT);
+        values[BossBarTemplate.Placeholder.DATA.ordinal()] = DATE;
+        values[BossBarTemplate.Placeholder.STAGIONE.ordinal()] = SEASON;
+        values[BossBarTemplate.Placeholder.METEO.ordinal()] = WEATHER;
+        values[BossBarTemplate.Placeholder.EVENTO.ordinal()] = EVENTS;
+
+        // I due percorsi devono produrre lo stesso titolo per ogni minuto del giorno.
+        for (int minute = 0; minute < 24 * 60; minute++) {
+            String legacy = cachedTitlePrefix.replace("{ora}", String.format("%02d:%02d", minute / 60, minute % 60));
+            values[BossBarTemplate.Placeholder.ORA.ordinal()] = BossBarTemplate.clock(minute);
+            titleBuffer.setLength(0);
+            template.render(titleBuffer, values);
+            if (!legacy.contentEquals(titleBuffer)) {
+                throw new IllegalStateException("Titolo diverso alle " + minute + ": '" + legacy + "' / '" + titleBuffer + "'");
+            }
+        }
+    }
+
+    @Benchmark
+    public String legacyMinuteTick() {
+        minuteOfDay = (minuteOfDay + 1) % (24 * 60);
+        String clock = String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+        String title = cachedTitlePrefix.replace("{ora}", clock);
+        if (!title.equals(lastTitle)) {
+            lastTitle = title;
+        }
+        return lastTitle;
+    }
+
+    @Benchmark
+    public String templateMinuteTick() {
+        minuteOfDay = (minuteOfDay + 1) % (24 * 60);
+        values[BossBarTemplate.Placeholder.ORA.ordinal()] = BossBarTemplate.clock(minuteOfDay);
+        titleBuffer.setLength(0);
+        template.render(titleBuffer, values);
+        if (lastTitle == null || !lastTitle.contentEquals(titleBuffer)) {
+            lastTitle = titleBuffer.toString();
+        }
+        return lastTitle;
+    }
+
+    @Benchmark
+    public String legacyFullRebuild() {
+        minuteOfDay = (minuteOfDay + 1) % (24 * 60);
+        String clock = String.format("%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+        return legacyPrefix().replace("{ora}", clock);
+    }
+
+    @Benchmark
+    public String templateFullRebuild() {
+        minuteOfDay = (minuteOfDay + 1) % (24 * 60);
+        values[BossBarTemplate.Placeholder.ORA.ordinal()] = BossBarTemplate.clock(minuteOfDay);
+        titleBuffer.setLength(0);
+        template.render(titleBuffer, values);
+        return titleBuffer.toString();
+    }
+
+    /**
+     * La catena di sostituzioni usata da BossBarManager prima del modello compilato.
+     */
+    private static String legacyPrefix() {
+        return FORMAT
+                .replace("{data}", DATE)
+                .replace("{stagione}", SEASON)
+                .replace("{evento}", EVENTS)
+                .replace('&', '§')
+                .replace("{meteo}", WEATHER);
+    }
+}
@@ -0,0 +1,141 @@
+package it.cdl.calendario;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextReplacementConfig;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * La composizione dei messaggi usata da LanguageManager prima di {@link MessageTemplate}: il messaggio viene
+ * convertito in un {@link Component} e ogni segnaposto sostituito con un {@link TextReplacementConfig}.
+ * Serve come riferimento per i benchmark e per il controllo di equivalenza sui file di lingua inclusi nel plugin.
+ * <p>
+ * Eseguito da solo ({@code main}) confronta i due percorsi su tutti i messaggi dei file di lingua
+ * ed esce con codice 1 se anche uno solo differisce.
+ */
+public final class LegacyMessageRenderer {
+
+    /** I file di lingua inclusi nel plugin. */
+    static final List<String> SHIPPED_LANGUAGES = List.of("lang/en_US.yml", "lang/it_IT.yml");
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{[A-Za-z0-9_.-]+}");
+
+    private LegacyMessageRenderer() {
+    }
+
+    /**
+     * Compone un messaggio come faceva LanguageManager prima dei modelli compilati.
+     *
+     * @param rawMessage   Il messaggio con i codici colore {@code &}.
+     * @param replacements Una serie di coppie "segnaposto, valore".
+     * @return Il messaggio finale (formato §).
+     */
+    public static String render(String rawMessage, String... replacements) {
+        Component messageComponent = LegacyComponentSerializer.legacyAmpersand().deserialize(rawMessage);
+        for (int i = 0; i < replacements.length; i += 2) {
+            if (i + 1 < replacements.length) {
+                String rawValue = replacements[i + 1] != null ? replacements[i + 1] : "";
+                Component valueComponent = LegacyComponentSerializer.legacyAmpersand().deserialize(rawValue);
+                TextReplacementConfig replacementConfig = TextReplacementConfig.builder()
+                        .matchLiteral(replacements[i])
+                        .replacement(valueComponent)
+                        .build();
+                messageComponent = messageComponent.replaceText(replacementConfig);
+            }
+        }
+        return LegacyComponentSerializer.legacySection().serialize(messageComponent);
+    }
+
+    /**
+     * Carica tutti i messaggi di un file di lingua incluso nel plugin, con le chiavi complete (es. {@code commands.reload-success}).
+     *
+     * @param resource Il percorso della risorsa, es. {@code lang/en_US.yml}.
+     * @return I messaggi per chiave, nell'ordine del file.
+     */
+    public static Map<String, String> loadMessages(String resource) throws IOException {
+        try (InputStream in = LegacyMessageRenderer.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) throw new IOException("Resource not found: " + resource);
+            Map<String, String> messages = new LinkedHashMap<>();
+            flatten("", new Yaml().load(new InputStreamReader(in, StandardCharsets.UTF_8)), messages);
+            return messages;
+        }
+    }
+
+    /**
+     * Confronta i due percorsi su ogni messaggio dei file di lingua inclusi nel plugin, senza valori e con
+     * valori di varie forme (semplici, colorati, con soli stili, vuoti) per ogni segnaposto del messaggio.
+     *
+     * @return Le differenze trovate, vuota se i due percorsi producono sempre lo stesso testo.
+     */
+    public static List<String> mismatches() throws IOException {
+        List<String> mismatches = new ArrayList<>();
+        for (String resource : SHIPPED_LANGUAGES) {
+            for (Map.Entry<String, String> message : loadMessages(resource).entrySet()) {
+                MessageTemplate template = MessageTemplate.compile(message.getValue());
+                for (String[] replacements : sampleReplacements(message.getValue())) {
+                    String expected = render(message.getValue(), replacements);
+                    String actual = template.render(replacements);
+                    if (!expected.equals(actual)) {
+                        mismatches.add(resource + " " + message.getKey() + " " + String.join(", ", replacements)
+                                + ": '" + expected + "' != '" + actual + "'");
+                    }
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> mismatches = mismatches();
+        mismatches.forEach(System.out::println);
+        System.out.println(mismatches.isEmpty() ? "OK: nessuna differenza." : mismatches.size() + " differenze.");
+        if (!mismatches.isEmpty()) System.exit(1);
+    }
+
+    private static List<String[]> sampleReplacements(String rawMessage) {
+        List<String> placeholders = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(rawMessage);
+        while (matcher.find()) {
+            if (!placeholders.contains(matcher.group())) placeholders.add(matcher.group());
+        }
+        // Valori semplici, con più colori, con un solo gruppo di codici in testa (che in Adventure cambia lo stile
+        // del testo che segue il segnaposto), con soli stili, con un reset, vuoti e con codici § (testo per Adventure).
+        String[][] shapes = {
+                {"Valore"}, {"&e&lValore &d", "&6Oro &r&o"}, {"&c&lRosso", "&a"}, {"&oCorsivo", "&n&mBarrato"},
+                {"&rNormale", "x&r&ly"}, {"", "§cRosso"}
+        };
+        List<String[]> samples = new ArrayList<>();
+        samples.add(new String[0]);
+        for (String[] shape : shapes) {
+            String[] replacements = new String[placeholders.size() * 2];
+            for (int i = 0; i < placeholders.size(); i++) {
+                replacements[2 * i] = placeholders.get(i);
+                replacements[2 * i + 1] = shape[i % shape.length] + (shape[i % shape.length].isEmpty() ? "" : i);
+            }
+            samples.add(replacements);
+        }
+        return samples;
+    }
+
+    private static void flatten(String prefix, Object node, Map<String, String> out) {
+        if (node instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                flatten(prefix.isEmpty() ? String.valueOf(entry.getKey()) : prefix + "." + entry.getKey(), entry.getValue(), out);
+            }
+        } else if (node != null) {
+            out.put(prefix, String.valueOf(node));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package it.cdl.calendario;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Confronta la composizione di un messaggio di lingua prima e dopo {@link MessageTemplate}: prima un
+ * {@code TextReplacementConfig} di Adventure per ogni segnaposto ({@link LegacyMessageRenderer}), ora il modello compilato.
+ * <p>
+ * I messaggi sono presi da {@code lang/en_US.yml}: uno senza segnaposto e altri con 1, 3 e 5 segnaposto.
+ * Prima di misurare, i due percorsi vengono confrontati su tutti i messaggi dei file di lingua inclusi nel plugin.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageTemplateBenchmark {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{[A-Za-z0-9_.-]+}");
+
+    @Param({"bossbar.weather-clear", "commands.event-started", "commands.history-line", "commands.stats-block-queue"})
+    public String key;
+
+    private String rawMessage;
+    private MessageTemplate template;
+    private String[] replacements;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> mismatches = LegacyMessageRenderer.mismatches();
+        if (!mismatches.isEmpty()) {
+            throw new IllegalStateException("I due percorsi producono messaggi diversi: " + mismatches);
+        }
+
+        rawMessage = LegacyMessageRenderer.loadMessages("lang/en_US.yml").get(key);
+        if (rawMessage == null) throw new IllegalStateException("Messaggio non trovato: " + key);
+        template = MessageTemplate.compile(rawMessage);
+
+        List<String> pairs = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(rawMessage);
+        while (matcher.find()) {
+            pairs.add(matcher.group());
+            pairs.add(pairs.size() % 4 == 1 ? "&e&lEgg Hunt" : String.valueOf(pairs.size() * 7));
+        }
+        replacements = pairs.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public String adventureReplaceText() {
+        return LegacyMessageRenderer.render(rawMessage, replacements);
+    }
+
+    @Benchmark
+    public String compiledTemplate() {
+        return template.render(replacements);
+    }
+}
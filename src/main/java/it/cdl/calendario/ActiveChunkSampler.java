@@ -0,0 +1,161 @@
+package it.cdl.calendario;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Seleziona i chunk su cui applicare gli effetti stagionali in base alla presenza dei giocatori.
+ * Mantiene un insieme deduplicato di chunk "attivi" (quelli entro un raggio configurabile
+ * da almeno un giocatore) tramite uno spatial hash per mondo, e distribuisce un numero fisso
+ * di campioni per esecuzione su questi chunk, a rotazione o pesati per numero di giocatori.
+ * La copertura cresce con il numero di giocatori, mentre il costo per esecuzione resta costante.
+ * Tutti i metodi devono essere chiamati dal thread principale.
+ */
+public class ActiveChunkSampler {
+
+    /**
+     * Modalità di distribuzione dei campioni sui chunk attivi.
+     */
+    public enum Mode {
+        /** Visita i chunk attivi a turno, garantendo una copertura uniforme. */
+        ROUND_ROBIN,
+        /** Sceglie i chunk con probabilità proporzionale al numero di giocatori vicini. */
+        WEIGHTED
+    }
+
+    private final Random random = new Random();
+    private final int radius;
+    private final Mode mode;
+
+    /**
+     * Spatial hash per mondo: chiave del chunk (x e z impacchettati in un long) → numero di giocatori.
+     * Le mappe vengono svuotate e riutilizzate a ogni aggiornamento.
+     */
+    private final Map<World, Map<Long, Integer>> activeChunksByWorld = new HashMap<>();
+
+    // --- Vista "appiattita" dei chunk attivi, ricostruita a ogni aggiornamento ---
+    private World[] worlds = new World[64];
+    private long[] keys = new long[64];
+    private int[] cumulativeWeights = new int[64];
+    private int size = 0;
+    private int totalWeight = 0;
+
+    /**
+     * Posizione del prossimo chunk da visitare in modalità {@link Mode#ROUND_ROBIN}.
+     * Sopravvive agli aggiornamenti per non ripartire sempre dagli stessi chunk.
+     */
+    private int cursor = 0;
+
+    /**
+     * Costruttore del campionatore.
+     *
+     * @param radius Il raggio (in chunk) attorno a ogni giocatore da considerare attivo.
+     * @param mode   La modalità di distribuzione dei campioni.
+     */
+    public ActiveChunkSampler(int radius, Mode mode) {
+        this.radius = Math.max(0, radius);
+        this.mode = mode;
+    }
+
+    /**
+     * Ricostruisce l'insieme dei chunk attivi a partire dalle posizioni correnti dei giocatori.
+     * I chunk condivisi da più giocatori compaiono una sola volta, con peso pari al numero di giocatori.
+     */
+    public void refresh() {
+        for (Map<Long, Integer> chunks : activeChunksByWorld.values()) {
+            chunks.clear();
+        }
+
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Location location = player.getLocation();
+            Map<Long, Integer> chunks = activeChunksByWorld.computeIfAbsent(location.getWorld(), w -> new HashMap<>());
+            int centerX = location.getBlockX() >> 4;
+            int centerZ = location.getBlockZ() >> 4;
+            for (int dx = -radius; dx <= radius; dx++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    chunks.merge(packKey(centerX + dx, centerZ + dz), 1, Integer::sum);
+                }
+            }
+        }
+
+        size = 0;
+        totalWeight = 0;
+        activeChunksByWorld.entrySet().removeIf(entry -> entry.getValue().isEmpty());
+        for (Map.Entry<World, Map<Long, Integer>> entry : activeChunksByWorld.entrySet()) {
+            for (Map.Entry<Long, Integer> chunk : entry.getValue().entrySet()) {
+                ensureCapacity(size + 1);
+                totalWeight += chunk.getValue();
+                worlds[size] = entry.getKey();
+                keys[size] = chunk.getKey();
+                cumulativeWeights[size] = totalWeight;
+                size++;
+            }
+        }
+        // Rilascia i riferimenti ai mondi oltre la dimensione corrente.
+        Arrays.fill(worlds, size, worlds.length, null);
+    }
+
+    /**
+     * Estrae fino a {@code count} chunk attivi e caricati, passandoli all'azione indicata.
+     * I chunk non caricati vengono saltati senza forzarne il caricamento.
+     *
+     * @param count  Il numero massimo di campioni da estrarre.
+     * @param action L'azione da eseguire per ogni chunk estratto.
+     * @return Il numero di chunk effettivamente passati all'azione.
+     */
+    public int sample(int count, Consumer<Chunk> action) {
+        if (size == 0) return 0;
+        int samples = Math.min(count, mode == Mode.ROUND_ROBIN ? size : count);
+        int delivered = 0;
+        for (int i = 0; i < samples; i++) {
+            int index = mode == Mode.ROUND_ROBIN ? nextRoundRobinIndex() : nextWeightedIndex();
+            World world = worlds[index];
+            int chunkX = (int) keys[index];
+            int chunkZ = (int) (keys[index] >> 32);
+            if (!world.isChunkLoaded(chunkX, chunkZ)) continue;
+            action.accept(world.getChunkAt(chunkX, chunkZ));
+            delivered++;
+        }
+        return delivered;
+    }
+
+    /**
+     * Restituisce il numero di chunk attivi distinti dopo l'ultimo aggiornamento.
+     * @return La dimensione dell'insieme dei chunk attivi.
+     */
+    public int getActiveChunkCount() {
+        return size;
+    }
+
+    private int nextRoundRobinIndex() {
+        if (cursor >= size) cursor = 0;
+        return cursor++;
+    }
+
+    private int nextWeightedIndex() {
+        int target = random.nextInt(totalWeight);
+        int index = Arrays.binarySearch(cumulativeWeights, 0, size, target + 1);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= keys.length) return;
+        int newLength = Math.max(required, keys.length * 2);
+        worlds = Arrays.copyOf(worlds, newLength);
+        keys = Arrays.copyOf(keys, newLength);
+        cumulativeWeights = Arrays.copyOf(cumulativeWeights, newLength);
+    }
+
+    private static long packKey(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | ((chunkZ & 0xFFFFFFFFL) << 32);
+    }
+}
@@ -0,0 +1,43 @@
+package it.cdl.calendario;
+
+/**
+ * Record che rappresenta un evento in corso, con i giorni assoluti (vedi {@link CalendarEngine})
+ * di inizio e di fine. L'evento termina all'inizio del giorno {@code endDay}.
+ *
+ * @param event    L'evento in corso.
+ * @param startDay Il giorno assoluto in cui l'evento è iniziato.
+ * @param endDay   Il giorno assoluto in cui l'evento termina, o {@link Long#MAX_VALUE} se ha durata infinita.
+ */
+public record ActiveEvent(CustomEvent event, long startDay, long endDay) {
+
+    /**
+     * Crea un evento in corso calcolandone la fine dalla durata in giorni.
+     * Una durata di 0 giorni viene trattata come 1, come nel countdown originale.
+     *
+     * @param event    L'evento avviato.
+     * @param startDay Il giorno assoluto di avvio.
+     * @return L'evento in corso.
+     */
+    public static ActiveEvent startingOn(CustomEvent event, long startDay) {
+        long endDay = event.durationDays() == -1 ? Long.MAX_VALUE : startDay + Math.max(1, event.durationDays());
+        return new ActiveEvent(event, startDay, endDay);
+    }
+
+    /**
+     * Indica se l'evento non ha una scadenza.
+     * @return {@code true} se la durata è infinita.
+     */
+    public boolean isInfinite() {
+        return endDay == Long.MAX_VALUE;
+    }
+
+    /**
+     * Restituisce i giorni rimanenti prima della conclusione.
+     *
+     * @param today Il giorno assoluto corrente.
+     * @return I giorni rimanenti, o -1 se la durata è infinita.
+     */
+    public long daysRemaining(long today) {
+        return isInfinite() ? -1 : Math.max(0, endDay - today);
+    }
+}
@@ -0,0 +1,103 @@
+package it.cdl.calendario;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tabella alias di Walker costruita con il metodo di Vose.
+ * Permette di estrarre uno tra {@code n} esiti con probabilità arbitrarie in tempo costante:
+ * si sceglie una colonna a caso e poi, con un secondo numero casuale, l'esito della colonna
+ * o il suo "alias". La costruzione costa O(n) e viene fatta una sola volta.
+ * Un esito può essere {@code null} (es. "nessun evento oggi").
+ * Le istanze sono immutabili e possono essere condivise tra thread.
+ *
+ * @param <T> Il tipo degli esiti.
+ */
+public final class AliasTable<T> {
+
+    private final List<T> outcomes;
+    private final double[] probabilities;
+    private final double[] threshold;
+    private final int[] alias;
+
+    /**
+     * Costruisce la tabella a partire da esiti e relativi pesi.
+     * I pesi vengono normalizzati, quindi possono avere qualsiasi scala purché non negativi.
+     *
+     * @param outcomes Gli esiti possibili.
+     * @param weights  Il peso di ogni esito, nello stesso ordine.
+     * @throws IllegalArgumentException se le liste hanno lunghezze diverse, sono vuote,
+     *                                  contengono pesi negativi o hanno somma nulla.
+     */
+    public AliasTable(List<T> outcomes, double[] weights) {
+        int n = outcomes.size();
+        if (n == 0 || weights.length != n) {
+            throw new IllegalArgumentException("Esiti e pesi devono essere non vuoti e della stessa lunghezza");
+        }
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) throw new IllegalArgumentException("Peso non valido: " + weight);
+            total += weight;
+        }
+        if (total <= 0) throw new IllegalArgumentException("La somma dei pesi deve essere positiva");
+
+        this.outcomes = Collections.unmodifiableList(new ArrayList<>(outcomes));
+        this.probabilities = new double[n];
+        this.threshold = new double[n];
+        this.alias = new int[n];
+
+        // Ogni colonna ha "capienza" 1: le probabilità vengono scalate di n.
+        double[] scaled = new double[n];
+        ArrayDeque<Integer> small = new ArrayDeque<>();
+        ArrayDeque<Integer> large = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            probabilities[i] = weights[i] / total;
+            scaled[i] = probabilities[i] * n;
+            (scaled[i] < 1.0 ? small : large).add(i);
+        }
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.poll();
+            int more = large.poll();
+            threshold[less] = scaled[less];
+            alias[less] = more;
+            // La colonna "grande" cede la parte mancante alla colonna "piccola".
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            (scaled[more] < 1.0 ? small : large).add(more);
+        }
+        // Gli avanzi sono pieni a meno di errori di arrotondamento.
+        while (!large.isEmpty()) threshold[large.poll()] = 1.0;
+        while (!small.isEmpty()) threshold[small.poll()] = 1.0;
+    }
+
+    /**
+     * Estrae un esito in tempo costante.
+     *
+     * @param random La sorgente di numeri casuali.
+     * @return L'esito estratto (può essere {@code null} se tra gli esiti c'è {@code null}).
+     */
+    public T sample(Random random) {
+        int column = random.nextInt(threshold.length);
+        return outcomes.get(random.nextDouble() < threshold[column] ? column : alias[column]);
+    }
+
+    /**
+     * Restituisce gli esiti della tabella.
+     * @return La lista non modificabile degli esiti, nell'ordine di costruzione.
+     */
+    public List<T> getOutcomes() {
+        return outcomes;
+    }
+
+    /**
+     * Restituisce la probabilità esatta di un esito, dopo la normalizzazione dei pesi.
+     *
+     * @param index L'indice dell'esito in {@link #getOutcomes()}.
+     * @return La probabilità dell'esito (tra 0 e 1).
+     */
+    public double getProbability(int index) {
+        return probabilities[index];
+    }
+}
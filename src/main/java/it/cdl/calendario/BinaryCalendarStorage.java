@@ -0,0 +1,134 @@
+package it.cdl.calendario;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Salvataggio del calendario in un formato binario compatto ({@code data.bin}).
+ * Struttura: numero magico, versione, data, tempo del mondo, sequenza del registro degli eventi,
+ * eventi in corso, dati storici degli eventi e infine un CRC32 del contenuto, così che un file danneggiato venga riconosciuto invece di essere letto male.
+ * Il file viene sostituito con una rinomina atomica.
+ */
+public class BinaryCalendarStorage implements CalendarStorage {
+
+    private static final int MAGIC = 0x43414C44; // "CALD"
+    private static final int VERSION = 1;
+    /**
+     * Dimensione minima di un evento in corso e di una voce dei dati storici (ID vuoto più i campi numerici),
+     * usata per rifiutare conteggi impossibili prima di allocare.
+     */
+    private static final int MIN_ACTIVE_EVENT_BYTES = 2 + 2 * Long.BYTES;
+    private static final int MIN_BOOKKEEPING_BYTES = 2 + 3 * Long.BYTES;
+
+    private final File file;
+
+    /**
+     * @param file Il file binario in cui salvare il calendario.
+     */
+    public BinaryCalendarStorage(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public CalendarState load() throws IOException {
+        if (!file.exists()) return null;
+        byte[] content = Files.readAllBytes(file.toPath());
+        if (content.length < Long.BYTES) {
+            throw new IOException("File " + file.getName() + " troncato");
+        }
+        int payloadLength = content.length - Long.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, payloadLength);
+        // Il CRC viene verificato prima di leggere qualsiasi campo: un file danneggiato non deve produrre conteggi assurdi.
+        if (ByteBuffer.wrap(content, payloadLength, Long.BYTES).getLong() != crc.getValue()) {
+            throw new IOException("File " + file.getName() + " danneggiato (CRC non valido)");
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, payloadLength));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("File " + file.getName() + " non riconosciuto");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Versione " + version + " di " + file.getName() + " non supportata");
+        }
+        int anno = in.readInt();
+        int mese = in.readInt();
+        int giorno = in.readInt();
+        long fullTime = in.readLong();
+        long journalSequence = in.readLong();
+
+        int activeCount = readCount(in, MIN_ACTIVE_EVENT_BYTES);
+        List<CalendarState.StoredEvent> active = new ArrayList<>(activeCount);
+        for (int i = 0; i < activeCount; i++) {
+            active.add(new CalendarState.StoredEvent(in.readUTF(), in.readLong(), in.readLong()));
+        }
+        int bookkeepingCount = readCount(in, MIN_BOOKKEEPING_BYTES);
+        Map<String, CalendarState.EventBookkeeping> bookkeeping = new HashMap<>(bookkeepingCount * 2);
+        for (int i = 0; i < bookkeepingCount; i++) {
+            bookkeeping.put(in.readUTF(), new CalendarState.EventBookkeeping(in.readLong(), in.readLong(), in.readLong()));
+        }
+        if (in.available() != 0) {
+            throw new IOException("File " + file.getName() + " danneggiato (dati in eccesso)");
+        }
+        return new CalendarState(anno, mese, giorno, fullTime, active, bookkeeping, journalSequence);
+    }
+
+    /**
+     * Legge il numero di elementi di una lista, rifiutando valori negativi o che non possono stare nei byte rimanenti.
+     */
+    private int readCount(DataInputStream in, int minBytesPerEntry) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available() / minBytesPerEntry) {
+            throw new IOException("File " + file.getName() + " danneggiato (numero di elementi " + count + " non valido)");
+        }
+        return count;
+    }
+
+    @Override
+    public void save(CalendarState state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(state.anno());
+        out.writeInt(state.mese());
+        out.writeInt(state.giorno());
+        out.writeLong(state.fullTime());
+        out.writeLong(state.journalSequence());
+        out.writeInt(state.activeEvents().size());
+        for (CalendarState.StoredEvent event : state.activeEvents()) {
+            out.writeUTF(event.eventId());
+            out.writeLong(event.startDay());
+            out.writeLong(event.daysRemaining());
+        }
+        out.writeInt(state.bookkeeping().size());
+        for (Map.Entry<String, CalendarState.EventBookkeeping> entry : state.bookkeeping().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().timesStarted());
+            out.writeLong(entry.getValue().lastStartDay());
+            out.writeLong(entry.getValue().lastEndDay());
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        CalendarPersistence.writeAtomically(file.toPath(), bytes.toByteArray());
+    }
+
+    @Override
+    public String getName() {
+        return "BINARY";
+    }
+}
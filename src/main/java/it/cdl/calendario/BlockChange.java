@@ -0,0 +1,28 @@
+package it.cdl.calendario;
+
+import org.bukkit.Material;
+
+import java.util.UUID;
+
+/**
+ * Record che rappresenta una singola modifica di blocco decisa dagli effetti stagionali.
+ * Viene calcolata fuori dal thread principale a partire da uno snapshot e applicata
+ * in seguito solo se il blocco è ancora del tipo atteso.
+ *
+ * @param worldId     L'UUID del mondo in cui si trova il blocco.
+ * @param x           La coordinata X assoluta del blocco.
+ * @param y           La coordinata Y assoluta del blocco.
+ * @param z           La coordinata Z assoluta del blocco.
+ * @param expected    Il materiale osservato nello snapshot; se è cambiato, la modifica viene scartata.
+ * @param replacement Il materiale da impostare.
+ * @param actionKey   La chiave di traduzione dell'azione, usata per il log di debug.
+ */
+public record BlockChange(
+        UUID worldId,
+        int x,
+        int y,
+        int z,
+        Material expected,
+        Material replacement,
+        String actionKey
+) {}
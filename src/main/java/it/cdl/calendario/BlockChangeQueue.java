@@ -0,0 +1,267 @@
+package it.cdl.calendario;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Coda centrale delle modifiche di blocco prodotte dagli effetti stagionali.
+ * Le modifiche vengono raggruppate per chunk e applicate sul thread principale
+ * da un task eseguito a ogni tick, che si ferma non appena esaurisce il budget
+ * di tempo configurato. In questo modo il costo per tick resta limitato
+ * indipendentemente da quanti effetti vengono generati.
+ */
+public class BlockChangeQueue extends BukkitRunnable {
+
+    private final CalendarioPlugin plugin;
+
+    /**
+     * Modifiche in attesa, raggruppate per chunk nell'ordine di arrivo.
+     */
+    private final Map<ChunkPos, ArrayDeque<BlockChange>> pendingByChunk = new LinkedHashMap<>();
+    /**
+     * Azioni da eseguire quando tutte le modifiche in coda per un chunk sono state elaborate.
+     */
+    private final Map<ChunkPos, List<Runnable>> completions = new HashMap<>();
+
+    /**
+     * Callback notificata per ogni modifica applicata o scartata (es. Log di debug, registro dei chunk).
+     */
+    private final ChangeListener listener;
+
+    /**
+     * Budget di tempo per tick, in nanosecondi, letto da config.yml in microsecondi.
+     */
+    private final long tickBudgetNanos;
+    /**
+     * Se {@code true}, le modifiche vengono applicate aggiornando la fisica dei blocchi vicini.
+     */
+    private final boolean applyPhysics;
+    /**
+     * Numero massimo di modifiche in coda; le eccedenti vengono scartate.
+     */
+    private final int maxQueuedChanges;
+
+    // --- Contatori per le statistiche ---
+    private int queueDepth = 0;
+    private long totalApplied = 0;
+    private long totalSkipped = 0;
+    private long totalDropped = 0;
+    private long appliedSinceLastSample = 0;
+    private int ticksSinceLastSample = 0;
+    private long drainRatePerSecond = 0;
+
+    /**
+     * Costruttore della coda.
+     * Legge budget, fisica e capacità dal config.yml.
+     *
+     * @param plugin   L'istanza principale del plugin.
+     * @param listener La callback da notificare per ogni modifica applicata o scartata.
+     */
+    public BlockChangeQueue(CalendarioPlugin plugin, ChangeListener listener) {
+        this.plugin = plugin;
+        this.listener = listener;
+        this.tickBudgetNanos = Math.max(50L, plugin.getConfig().getLong("visual-effects.performance.tick-budget-micros", 2000L)) * 1000L;
+        this.applyPhysics = plugin.getConfig().getBoolean("visual-effects.performance.apply-physics", false);
+        this.maxQueuedChanges = Math.max(1, plugin.getConfig().getInt("visual-effects.performance.max-queued-changes", 50000));
+    }
+
+    /**
+     * Avvia il task di svuotamento della coda, eseguito a ogni tick.
+     */
+    public void start() {
+        runTaskTimer(plugin, 1L, 1L);
+    }
+
+    /**
+     * Ferma il task e scarta tutte le modifiche in attesa, insieme alle azioni di completamento.
+     */
+    public void stop() {
+        if (!isCancelled()) {
+            cancel();
+        }
+        pendingByChunk.clear();
+        completions.clear();
+        queueDepth = 0;
+    }
+
+    /**
+     * Accoda un gruppo di modifiche. Deve essere chiamato dal thread principale.
+     *
+     * @param changes Le modifiche da accodare.
+     * @return {@code false} se almeno una modifica è stata scartata perché la coda era piena.
+     */
+    public boolean enqueueAll(Collection<BlockChange> changes) {
+        boolean accepted = true;
+        for (BlockChange change : changes) {
+            accepted &= enqueue(change);
+        }
+        return accepted;
+    }
+
+    /**
+     * Accoda una singola modifica, raggruppandola con quelle dello stesso chunk.
+     * Deve essere chiamato dal thread principale.
+     *
+     * @param change La modifica da accodare.
+     * @return {@code false} se la modifica è stata scartata perché la coda era piena.
+     */
+    public boolean enqueue(BlockChange change) {
+        if (queueDepth >= maxQueuedChanges) {
+            totalDropped++;
+            return false;
+        }
+        ChunkPos pos = new ChunkPos(change.worldId(), change.x() >> 4, change.z() >> 4);
+        pendingByChunk.computeIfAbsent(pos, p -> new ArrayDeque<>()).add(change);
+        queueDepth++;
+        return true;
+    }
+
+    /**
+     * Registra un'azione da eseguire quando tutte le modifiche in coda per un chunk sono state elaborate
+     * (applicate o scartate perché il blocco era cambiato). Se il chunk viene scaricato prima, o la coda
+     * viene fermata, l'azione non viene eseguita. Senza modifiche in coda l'azione viene eseguita subito.
+     * Deve essere chiamato dal thread principale.
+     *
+     * @param worldId L'UUID del mondo.
+     * @param chunkX  La coordinata X del chunk.
+     * @param chunkZ  La coordinata Z del chunk.
+     * @param action  L'azione da eseguire sul thread principale, con il chunk ancora caricato.
+     */
+    public void whenApplied(UUID worldId, int chunkX, int chunkZ, Runnable action) {
+        ChunkPos pos = new ChunkPos(worldId, chunkX, chunkZ);
+        if (!pendingByChunk.containsKey(pos)) {
+            action.run();
+            return;
+        }
+        completions.computeIfAbsent(pos, p -> new ArrayList<>()).add(action);
+    }
+
+    /**
+     * Svuota la coda fino all'esaurimento del budget del tick corrente.
+     * Viene sempre applicata almeno una modifica per garantire l'avanzamento.
+     */
+    @Override
+    public void run() {
+        sampleDrainRate();
+        if (queueDepth == 0) return;
+        try {
+            drain();
+        } finally {
+            listener.onDrainFinished();
+        }
+    }
+
+    /**
+     * Applica le modifiche gruppo per gruppo finché la coda non è vuota o il budget è esaurito.
+     */
+    private void drain() {
+        long deadline = System.nanoTime() + tickBudgetNanos;
+        boolean first = true;
+        Iterator<Map.Entry<ChunkPos, ArrayDeque<BlockChange>>> groups = pendingByChunk.entrySet().iterator();
+
+        while (groups.hasNext()) {
+            Map.Entry<ChunkPos, ArrayDeque<BlockChange>> group = groups.next();
+            ChunkPos pos = group.getKey();
+            ArrayDeque<BlockChange> changes = group.getValue();
+
+            World world = Bukkit.getWorld(pos.worldId());
+            if (world == null || !world.isChunkLoaded(pos.x(), pos.z())) {
+                // Il chunk non è più disponibile: le modifiche non sono più valide.
+                totalSkipped += changes.size();
+                queueDepth -= changes.size();
+                groups.remove();
+                completions.remove(pos);
+                continue;
+            }
+
+            while (!changes.isEmpty()) {
+                if (!first && System.nanoTime() >= deadline) return;
+                first = false;
+                applyChange(world, changes.poll());
+                queueDepth--;
+            }
+            groups.remove();
+            List<Runnable> actions = completions.remove(pos);
+            if (actions != null) {
+                actions.forEach(Runnable::run);
+            }
+        }
+    }
+
+    /**
+     * Applica una modifica se il blocco è ancora del tipo osservato nello snapshot.
+     */
+    private void applyChange(World world, BlockChange change) {
+        Block block = world.getBlockAt(change.x(), change.y(), change.z());
+        if (block.getType() != change.expected()) {
+            totalSkipped++;
+            listener.onSkipped(block, change);
+            return;
+        }
+        block.setType(change.replacement(), applyPhysics);
+        totalApplied++;
+        appliedSinceLastSample++;
+        listener.onApplied(block, change);
+    }
+
+    /**
+     * Indica se ci sono ancora modifiche in attesa per il chunk specificato.
+     *
+     * @param worldId L'UUID del mondo.
+     * @param chunkX  La coordinata X del chunk.
+     * @param chunkZ  La coordinata Z del chunk.
+     * @return {@code true} se almeno una modifica per quel chunk è ancora in coda.
+     */
+    public boolean hasPending(UUID worldId, int chunkX, int chunkZ) {
+        return pendingByChunk.containsKey(new ChunkPos(worldId, chunkX, chunkZ));
+    }
+
+    /**
+     * Aggiorna la velocità di svuotamento (modifiche al secondo) ogni 20 tick.
+     */
+    private void sampleDrainRate() {
+        if (++ticksSinceLastSample >= 20) {
+            drainRatePerSecond = appliedSinceLastSample;
+            appliedSinceLastSample = 0;
+            ticksSinceLastSample = 0;
+        }
+    }
+
+    // --- Metodi Getter per le statistiche ---
+
+    public int getQueueDepth() { return queueDepth; }
+    public long getDrainRatePerSecond() { return drainRatePerSecond; }
+    public long getTotalApplied() { return totalApplied; }
+    public long getTotalSkipped() { return totalSkipped; }
+    public long getTotalDropped() { return totalDropped; }
+
+    /**
+     * Callback con cui la coda notifica l'esito delle modifiche.
+     * Tutti i metodi vengono invocati dal thread principale.
+     */
+    public interface ChangeListener {
+        /** Chiamato dopo che una modifica è stata applicata al blocco. */
+        void onApplied(Block block, BlockChange change);
+        /** Chiamato quando una modifica viene scartata perché il blocco non è più del tipo atteso. */
+        void onSkipped(Block block, BlockChange change);
+        /** Chiamato al termine di ogni svuotamento, per eventuali scritture raggruppate. */
+        void onDrainFinished();
+    }
+
+    /**
+     * Identifica un chunk all'interno di un mondo.
+     */
+    private record ChunkPos(UUID worldId, int x, int z) {}
+}
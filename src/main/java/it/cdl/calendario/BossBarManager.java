@@ -1,26 +1,73 @@
 package it.cdl.calendario;
 
+import net.kyori.adventure.bossbar.BossBar;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
-import org.bukkit.boss.BarColor;
-import org.bukkit.boss.BarStyle;
-import org.bukkit.boss.BossBar;
 import org.bukkit.entity.Player;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
 import java.util.UUID;
 
 /**
  * Gestisce la creazione, l'aggiornamento e la rimozione delle Boss Bar per i giocatori.
  * La Boss Bar mostra informazioni dinamiche come data, stagione, meteo e orario del gioco.
- * Utilizza un sistema di caching per ottimizzare le performance, aggiornando solo le parti
- * necessarie del testo quando i dati cambiano.
+ * <p>
+ * I giocatori che vedrebbero lo stesso titolo (stesso mondo, per il meteo, e stesso file di lingua)
+ * sono spettatori di un'unica {@link BossBar} Adventure: l'aggiornamento periodico costa quindi in
+ * proporzione ai titoli diversi, non ai giocatori online. Ingressi, uscite e cambi di mondo o di lingua
+ * aggiungono o rimuovono soltanto uno spettatore. Data, stagione ed eventi vengono ricalcolati solo quando
+ * cambiano, e tradotti una volta per lingua; l'orario è quello del mondo principale, che scandisce il calendario.
+ * Il formato {@code bossbar.format} viene compilato una volta in un {@link BossBarTemplate} e ogni titolo
+ * viene scritto in un buffer riutilizzato.
+ * <p>
+ * Ogni modifica di una barra invia un pacchetto a tutti i suoi spettatori: titolo e progresso vengono quindi
+ * inviati solo quando il valore visibile cambia. Il titolo viene ricostruito solo al cambio del minuto di gioco
+ * o del prefisso, e il progresso è arrotondato a {@code bossbar.progress-resolution} gradini.
  */
 public class BossBarManager {
 
+    /**
+     * Chiave che individua un titolo condiviso.
+     *
+     * @param worldId L'UUID del mondo, da cui dipende il meteo mostrato.
+     * @param locale  La lingua del file di traduzione usato per il client (vedi {@link LanguageManager#resolve(Locale)}).
+     */
+    private record BarKey(UUID worldId, Locale locale) {}
+
+    /**
+     * Barra condivisa da tutti i giocatori con la stessa {@link BarKey}, con i testi tradotti nella sua lingua.
+     */
+    private static final class SharedBar {
+        private final BossBar bar;
+        private final Set<UUID> viewers = new HashSet<>();
+        private String datePart = "";
+        private String seasonPart = "";
+        private String weatherPart = "";
+        private boolean wasThundering = false;
+        private boolean wasRaining = false;
+        private int partsVersion = -1;
+        /**
+         * Ultimo titolo e ultimo gradino di progresso inviati ai client, per inviare solo le modifiche.
+         */
+        private String lastTitle = null;
+        private int lastProgressStep = -1;
+
+        private SharedBar(BossBar bar) {
+            this.bar = bar;
+        }
+    }
+
     private final CalendarioPlugin plugin;
-    private final Map<UUID, BossBar> playerBossBars = new HashMap<>();
+    private final Map<BarKey, SharedBar> bars = new HashMap<>();
+    private final Map<UUID, BarKey> viewerKeys = new HashMap<>();
 
     /**
      * Flag per abilitare o disabilitare completamente la funzionalità della Boss Bar.
@@ -35,22 +82,46 @@ public class BossBarManager {
     private final boolean showProgressBar;
 
     /**
-     * Cache per la parte statica del titolo della Boss Bar (data, stagione, meteo).
-     * Viene ricalcolata solo quando uno di questi elementi cambia, per evitare
-     * di ricostruire la stringa a ogni tick.
+     * Colore e stile delle barre, letti una volta da config.yml.
+     */
+    private final BossBar.Color color;
+    private final BossBar.Overlay overlay;
+    /**
+     * Numero di gradini in cui è divisa la barra di progresso, letto da config.yml.
+     */
+    private final int progressResolution;
+
+    /**
+     * Il formato del titolo compilato, il buffer in cui viene scritto e i valori dei segnaposto,
+     * indicizzati per {@link BossBarTemplate.Placeholder#ordinal()}.
      */
-    private String cachedTitlePrefix = "";
+    private final BossBarTemplate template;
+    private final StringBuilder titleBuffer = new StringBuilder(128);
+    private final String[] values = new String[BossBarTemplate.Placeholder.values().length];
 
     /**
-     * Variabili di stato per tracciare l'ultimo stato noto del mondo di gioco.
+     * Versione delle parti comuni a tutte le barre (data, stagione, eventi): viene incrementata quando
+     * una di esse cambia, per avvisare le barre che il titolo va riscritto.
+     */
+    private int sharedVersion = 0;
+
+    /**
+     * Variabili di stato per tracciare l'ultimo stato noto del calendario.
      * Servono a determinare quando è necessario aggiornare la cache del titolo.
      */
     private int lastCheckedDay = -1;
     private int lastCheckedMonth = -1;
     private int lastCheckedYear = -1;
-    private boolean wasThundering = false;
-    private boolean wasRaining = false;
-    private String cachedActiveEventId = "";
+    private int cachedActiveEventsVersion = -1;
+    /**
+     * Ultimo minuto di gioco (0-1439) per cui è stato preparato l'orario del titolo.
+     */
+    private int lastMinuteOfDay = -1;
+
+    // Statistiche
+    private long emittedUpdates = 0;
+    private long skippedUpdates = 0;
+
     /**
      * Costruttore del manager della Boss Bar.
      * Inizializza le impostazioni leggendole dal file di configurazione del plugin.
@@ -61,134 +132,222 @@ public class BossBarManager {
         this.plugin = plugin;
         this.isBossBarEnabled = plugin.getConfig().getBoolean("bossbar.enabled", true);
         this.showProgressBar = plugin.getConfig().getBoolean("bossbar.show-progress-bar", true);
+        this.color = parseColor(plugin.getConfig().getString("bossbar.bar-color", "BLUE"));
+        this.overlay = parseOverlay(plugin.getConfig().getString("bossbar.bar-style", "SOLID"));
+        this.progressResolution = Math.max(1, plugin.getConfig().getInt("bossbar.progress-resolution", 100));
+        this.template = BossBarTemplate.compile(plugin.getConfig().getString("bossbar.format", "&a{data} &8| {stagione} &8| {meteo} &8| &e{ora}"));
     }
 
     /**
      * Metodo principale per l'aggiornamento, chiamato periodicamente dal task principale.
-     * Controlla se i dati visualizzati (data, meteo) sono cambiati. Se lo sono,
-     * rigenera il prefisso del titolo. Successivamente, aggiorna la parte dinamica (orario)
-     * e applica il titolo finale e la progressione a tutte le Boss Bar attive.
+     * Controlla se i dati comuni (data, eventi) sono cambiati e, per ogni barra condivisa, il meteo del suo mondo:
+     * solo in quel caso prepara i nuovi valori dei segnaposto. Successivamente aggiunge l'orario e invia titolo e
+     * progressione di ogni barra condivisa, una volta sola per tutti i suoi spettatori e solo se sono cambiati.
      */
     public void updateBossBars() {
-        if (!isBossBarEnabled) return;
+        if (!isBossBarEnabled || bars.isEmpty()) return;
 
         TimeManager tm = plugin.getTimeManager();
-        World world = Bukkit.getWorlds().getFirst();
-        if (world == null) return; // Prevenzione errori se il mondo non è caricato
+        World mainWorld = Bukkit.getWorlds().getFirst();
+        if (mainWorld == null) return; // Prevenzione errori se il mondo non è caricato
 
-        boolean needsPrefixUpdate = false;
         int currentDay = tm.getGiornoCorrente();
         int currentMonth = tm.getMeseCorrente();
         int currentYear = tm.getAnnoCorrente();
-        boolean isThundering = world.isThundering();
-        boolean isRaining = world.hasStorm();
+        boolean needsSharedUpdate = sharedVersion == 0;
 
         if (currentDay != lastCheckedDay || currentMonth != lastCheckedMonth || currentYear != lastCheckedYear) {
             lastCheckedDay = currentDay;
             lastCheckedMonth = currentMonth;
             lastCheckedYear = currentYear;
-            needsPrefixUpdate = true;
+            needsSharedUpdate = true;
         }
 
-        if (isThundering != wasThundering || isRaining != wasRaining || cachedTitlePrefix.isEmpty()) {
-            wasThundering = isThundering;
-            wasRaining = isRaining;
-            needsPrefixUpdate = true;
+        // Controlla se l'insieme degli eventi attivi è cambiato dall'ultimo aggiornamento
+        EventManager eventManager = plugin.getEventManager();
+        if (eventManager.getActiveEventsVersion() != this.cachedActiveEventsVersion) {
+            this.cachedActiveEventsVersion = eventManager.getActiveEventsVersion();
+            needsSharedUpdate = true;
         }
 
-        // Controlla se l'evento è cambiato dall'ultimo tick
-        CustomEvent activeEvent = plugin.getEventManager().getActiveEvent();
-        String activeEventId = (activeEvent != null) ? activeEvent.id() : "";
-
-        if (!activeEventId.equals(this.cachedActiveEventId)) {
-            // Aggiorna la cache
-            this.cachedActiveEventId = activeEventId;
-            // Forza l'aggiornamento del prefisso
-            needsPrefixUpdate = true;
-        }
-
-        if (needsPrefixUpdate) {
-            LanguageManager lang = plugin.getLanguageManager();
-            String datePart = "§a" + currentDay + " " + tm.getNomeMese(currentMonth) + " " + currentYear;
-            String seasonPart = tm.getStagioneCorrente();
-            String weatherPart = isThundering ? lang.getString("bossbar.weather-storm") : (isRaining ? lang.getString("bossbar.weather-rain") : lang.getString("bossbar.weather-clear"));
+        if (needsSharedUpdate) {
             String eventPart;
-            if (activeEvent != null) {
-                eventPart = activeEvent.displayName().replace('&', '§');
+            if (!eventManager.getActiveEvents().isEmpty()) {
+                // Tutti gli eventi attivi, nell'ordine in cui sono iniziati
+                StringJoiner joiner = new StringJoiner(plugin.getConfig().getString("bossbar.event-separator", "&7, &d"));
+                for (ActiveEvent active : eventManager.getActiveEvents()) {
+                    joiner.add(active.event().displayName());
+                }
+                eventPart = joiner.toString();
             } else {
                 eventPart = plugin.getConfig().getString("bossbar.no-event-text", "");
             }
 
-            String format = plugin.getConfig().getString("bossbar.format", "&a{data} &8| {stagione} &8| {meteo} &8| &e{ora}");
-            this.cachedTitlePrefix = format
-                    .replace("{data}", datePart)
-                    .replace("{stagione}", seasonPart)
-                    .replace("{meteo}", weatherPart)
-                    .replace("{evento}", eventPart)
-                    .replace('&', '§');
+            values[BossBarTemplate.Placeholder.EVENTO.ordinal()] = eventPart.replace('&', '§');
+            sharedVersion++;
         }
 
-        long time = world.getTime();
-        String orarioPart = String.format("%02d:%02d", (time / 1000 + 6) % 24, (long) ((time % 1000) / 1000.0 * 60));
-        String titoloFinale = this.cachedTitlePrefix.replace("{ora}", orarioPart);
+        long time = mainWorld.getTime();
+        int minuteOfDay = (int) (((time / 1000 + 6) % 24) * 60 + (time % 1000) * 60 / 1000);
+        boolean clockChanged = minuteOfDay != lastMinuteOfDay && template.uses(BossBarTemplate.Placeholder.ORA);
+        if (minuteOfDay != lastMinuteOfDay) {
+            lastMinuteOfDay = minuteOfDay;
+            values[BossBarTemplate.Placeholder.ORA.ordinal()] = BossBarTemplate.clock(minuteOfDay);
+        }
+        int progressStep = showProgressBar ? (int) Math.round(Math.max(0, Math.min(1, time / 24000.0)) * progressResolution) : 0;
 
-        double progress = showProgressBar ? (time / 24000.0) : 0.0;
+        LanguageManager lang = plugin.getLanguageManager();
+        for (Map.Entry<BarKey, SharedBar> entry : bars.entrySet()) {
+            SharedBar shared = entry.getValue();
+            World world = Bukkit.getWorld(entry.getKey().worldId());
+            boolean isThundering = world != null && world.isThundering();
+            boolean isRaining = world != null && world.hasStorm();
+            boolean partsChanged = shared.partsVersion != sharedVersion || isThundering != shared.wasThundering || isRaining != shared.wasRaining;
+            if (partsChanged) {
+                shared.wasThundering = isThundering;
+                shared.wasRaining = isRaining;
+                shared.partsVersion = sharedVersion;
+                Locale locale = entry.getKey().locale();
+                shared.datePart = ("§a" + currentDay + " " + tm.getNomeMese(currentMonth, locale) + " " + currentYear).replace('&', '§');
+                shared.seasonPart = tm.getStagioneCorrente(locale).replace('&', '§');
+                shared.weatherPart = lang.getString(locale, isThundering ? "bossbar.weather-storm" : (isRaining ? "bossbar.weather-rain" : "bossbar.weather-clear"));
+            }
 
-        for (BossBar bossBar : playerBossBars.values()) {
-            bossBar.setTitle(titoloFinale);
-            bossBar.setProgress(Math.max(0, Math.min(1, progress)));
+            if (partsChanged || clockChanged || shared.lastTitle == null) {
+                values[BossBarTemplate.Placeholder.DATA.ordinal()] = shared.datePart;
+                values[BossBarTemplate.Placeholder.STAGIONE.ordinal()] = shared.seasonPart;
+                values[BossBarTemplate.Placeholder.METEO.ordinal()] = shared.weatherPart;
+                titleBuffer.setLength(0);
+                template.render(titleBuffer, values);
+                // Il confronto avviene sul buffer: la stringa viene creata solo se il titolo è davvero cambiato.
+                if (shared.lastTitle == null || !shared.lastTitle.contentEquals(titleBuffer)) {
+                    String titoloFinale = titleBuffer.toString();
+                    shared.lastTitle = titoloFinale;
+                    shared.bar.name(LegacyComponentSerializer.legacySection().deserialize(titoloFinale));
+                    emittedUpdates++;
+                } else {
+                    skippedUpdates++;
+                }
+            } else {
+                skippedUpdates++;
+            }
+
+            if (progressStep != shared.lastProgressStep) {
+                shared.lastProgressStep = progressStep;
+                shared.bar.progress((float) progressStep / progressResolution);
+                emittedUpdates++;
+            } else {
+                skippedUpdates++;
+            }
         }
     }
 
     /**
-     * Aggiunge un giocatore al sistema della Boss Bar.
-     * Crea una nuova Boss Bar personalizzata per il giocatore e la visualizza.
+     * Aggiunge un giocatore al sistema della Boss Bar come spettatore della barra condivisa
+     * del suo mondo e della sua lingua, creandola se è il primo.
      * Viene tipicamente chiamato all'evento di join del giocatore.
      *
      * @param player Il giocatore a cui mostrare la Boss Bar.
      */
     public void addPlayer(Player player) {
-        if (!isBossBarEnabled) return;
-
-        BarColor color;
-        BarStyle style;
-        try {
-            color = BarColor.valueOf(plugin.getConfig().getString("bossbar.bar-color", "BLUE").toUpperCase());
-        } catch (IllegalArgumentException e) {
-            color = BarColor.BLUE;
-        }
-        try {
-            style = BarStyle.valueOf(plugin.getConfig().getString("bossbar.bar-style", "SOLID").toUpperCase());
-        } catch (IllegalArgumentException e) {
-            style = BarStyle.SOLID;
-        }
+        addViewer(player, new BarKey(player.getWorld().getUID(), plugin.getLanguageManager().resolve(player)));
+    }
 
-        BossBar bossBar = Bukkit.createBossBar("", color, style);
-        bossBar.addPlayer(player);
-        playerBossBars.put(player.getUniqueId(), bossBar);
+    /**
+     * Sposta un giocatore sulla barra condivisa corrispondente al suo nuovo mondo o alla sua nuova lingua.
+     * Se la barra non cambia, non fa nulla.
+     *
+     * @param player Il giocatore.
+     * @param world  Il mondo in cui si trova ora il giocatore.
+     * @param locale La lingua del client del giocatore, anche se non ancora aggiornata in {@link Player#locale()}.
+     */
+    public void movePlayer(Player player, World world, Locale locale) {
+        BarKey current = viewerKeys.get(player.getUniqueId());
+        if (current == null) return;
+        BarKey target = new BarKey(world.getUID(), plugin.getLanguageManager().resolve(locale));
+        if (target.equals(current)) return;
+        removePlayer(player);
+        addViewer(player, target);
     }
 
     /**
      * Rimuove un giocatore dal sistema della Boss Bar.
-     * Nasconde e distrugge la Boss Bar associata al giocatore.
+     * Il giocatore smette di vedere la barra condivisa, che viene scartata se non ha più spettatori.
      * Viene tipicamente chiamato all'evento di quit del giocatore.
      *
      * @param player Il giocatore da cui rimuovere la Boss Bar.
      */
     public void removePlayer(Player player) {
-        BossBar bossBar = playerBossBars.remove(player.getUniqueId());
-        if (bossBar != null) {
-            bossBar.removeAll();
+        BarKey key = viewerKeys.remove(player.getUniqueId());
+        if (key == null) return;
+        SharedBar shared = bars.get(key);
+        if (shared == null) return;
+        player.hideBossBar(shared.bar);
+        shared.viewers.remove(player.getUniqueId());
+        if (shared.viewers.isEmpty()) {
+            bars.remove(key);
         }
     }
 
     /**
-     * Rimuove tutti i giocatori e distrugge tutte le Boss Bar attive.
+     * Rimuove tutti i giocatori e scarta tutte le Boss Bar condivise.
      * Utilizzato durante la disabilitazione o il ricaricamento del plugin
      * per garantire una pulizia completa.
      */
     public void removeAllPlayers() {
-        playerBossBars.values().forEach(BossBar::removeAll);
-        playerBossBars.clear();
+        for (Iterator<SharedBar> iterator = bars.values().iterator(); iterator.hasNext(); ) {
+            SharedBar shared = iterator.next();
+            for (UUID viewer : shared.viewers) {
+                Player player = Bukkit.getPlayer(viewer);
+                if (player != null) {
+                    player.hideBossBar(shared.bar);
+                }
+            }
+            iterator.remove();
+        }
+        viewerKeys.clear();
+    }
+
+    private void addViewer(Player player, BarKey key) {
+        if (!isBossBarEnabled || viewerKeys.containsKey(player.getUniqueId())) return;
+        SharedBar shared = bars.get(key);
+        if (shared == null) {
+            shared = new SharedBar(BossBar.bossBar(Component.empty(), 0.0f, color, overlay));
+            bars.put(key, shared);
+        }
+        shared.viewers.add(player.getUniqueId());
+        viewerKeys.put(player.getUniqueId(), key);
+        player.showBossBar(shared.bar);
     }
-}
\ No newline at end of file
+
+    /**
+     * Converte il colore di config.yml (stessi nomi di Bukkit) in quello di Adventure.
+     */
+    private static BossBar.Color parseColor(String name) {
+        try {
+            return BossBar.Color.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return BossBar.Color.BLUE;
+        }
+    }
+
+    /**
+     * Converte lo stile di config.yml (nomi di Bukkit, es. SEGMENTED_10) in quello di Adventure.
+     */
+    private static BossBar.Overlay parseOverlay(String name) {
+        return switch (name.toUpperCase(Locale.ROOT)) {
+            case "SEGMENTED_6" -> BossBar.Overlay.NOTCHED_6;
+            case "SEGMENTED_10" -> BossBar.Overlay.NOTCHED_10;
+            case "SEGMENTED_12" -> BossBar.Overlay.NOTCHED_12;
+            case "SEGMENTED_20" -> BossBar.Overlay.NOTCHED_20;
+            default -> BossBar.Overlay.PROGRESS;
+        };
+    }
+
+    // --- Metodi Getter per le statistiche ---
+
+    public int getSharedBarCount() { return bars.size(); }
+    public int getViewerCount() { return viewerKeys.size(); }
+    public long getEmittedUpdates() { return emittedUpdates; }
+    public long getSkippedUpdates() { return skippedUpdates; }
+}
@@ -0,0 +1,128 @@
+package it.cdl.calendario;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formato del titolo della Boss Bar ({@code bossbar.format}) compilato una volta sola in una sequenza di
+ * segmenti: testo fisso (con i codici colore già convertiti da {@code &} a {@code §}) e segnaposto.
+ * Il titolo viene poi scritto in uno {@link StringBuilder} riutilizzato, senza le catene di
+ * {@link String#replace} e senza {@link String#format} per l'orario, che viene preso da una tabella
+ * con tutti i 1440 orari {@code HH:MM} del giorno.
+ */
+public final class BossBarTemplate {
+
+    /**
+     * Segnaposto riconosciuti nel formato. L'ordinale è l'indice del valore passato a {@link #render}.
+     */
+    public enum Placeholder {
+        DATA("{data}"),
+        STAGIONE("{stagione}"),
+        METEO("{meteo}"),
+        ORA("{ora}"),
+        EVENTO("{evento}");
+
+        private final String token;
+
+        Placeholder(String token) {
+            this.token = token;
+        }
+    }
+
+    private static final Placeholder[] PLACEHOLDERS = Placeholder.values();
+    private static final String[] CLOCK = new String[24 * 60];
+
+    static {
+        for (int minute = 0; minute < CLOCK.length; minute++) {
+            int hours = minute / 60;
+            int minutes = minute % 60;
+            CLOCK[minute] = new String(new char[]{
+                    (char) ('0' + hours / 10), (char) ('0' + hours % 10), ':',
+                    (char) ('0' + minutes / 10), (char) ('0' + minutes % 10)});
+        }
+    }
+
+    /**
+     * Segmenti del formato: una {@link String} per il testo fisso o un {@link Placeholder}.
+     */
+    private final Object[] segments;
+    private final boolean[] used = new boolean[PLACEHOLDERS.length];
+
+    private BossBarTemplate(Object[] segments) {
+        this.segments = segments;
+        for (Object segment : segments) {
+            if (segment instanceof Placeholder placeholder) {
+                used[placeholder.ordinal()] = true;
+            }
+        }
+    }
+
+    /**
+     * Compila un formato del titolo.
+     *
+     * @param format Il formato, es. {@code "&a{data} &8| {stagione} &8| {meteo} &8| &e{ora}"}.
+     * @return Il modello compilato.
+     */
+    public static BossBarTemplate compile(String format) {
+        List<Object> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        scan:
+        while (i < format.length()) {
+            if (format.charAt(i) == '{') {
+                for (Placeholder placeholder : PLACEHOLDERS) {
+                    if (format.startsWith(placeholder.token, i)) {
+                        if (!literal.isEmpty()) {
+                            segments.add(literal.toString().replace('&', '§'));
+                            literal.setLength(0);
+                        }
+                        segments.add(placeholder);
+                        i += placeholder.token.length();
+                        continue scan;
+                    }
+                }
+            }
+            literal.append(format.charAt(i++));
+        }
+        if (!literal.isEmpty()) {
+            segments.add(literal.toString().replace('&', '§'));
+        }
+        return new BossBarTemplate(segments.toArray());
+    }
+
+    /**
+     * Scrive il titolo in coda a un buffer.
+     *
+     * @param out    Il buffer, tipicamente svuotato e riutilizzato a ogni aggiornamento.
+     * @param values I valori dei segnaposto, indicizzati per {@link Placeholder#ordinal()}.
+     */
+    public void render(StringBuilder out, String[] values) {
+        for (Object segment : segments) {
+            if (segment instanceof String text) {
+                out.append(text);
+            } else {
+                out.append(values[((Placeholder) segment).ordinal()]);
+            }
+        }
+    }
+
+    /**
+     * Indica se il formato contiene un segnaposto: se manca, il titolo non dipende dal suo valore.
+     *
+     * @param placeholder Il segnaposto.
+     * @return {@code true} se il formato lo contiene.
+     */
+    public boolean uses(Placeholder placeholder) {
+        return used[placeholder.ordinal()];
+    }
+
+    /**
+     * Restituisce l'orario {@code HH:MM} di un minuto del giorno, dalla tabella precalcolata.
+     *
+     * @param minuteOfDay Il minuto del giorno (0-1439).
+     * @return L'orario, es. {@code "06:00"}.
+     */
+    public static String clock(int minuteOfDay) {
+        return CLOCK[minuteOfDay];
+    }
+}
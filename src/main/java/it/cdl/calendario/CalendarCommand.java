@@ -1,11 +1,16 @@
 package it.cdl.calendario;
 
+import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
+import java.time.DateTimeException;
+import java.time.Year;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -18,6 +23,11 @@ public class CalendarCommand implements CommandExecutor, TabCompleter {
     private final CalendarioPlugin plugin;
     private final LanguageManager lang;
 
+    /**
+     * Numero massimo di voci dello storico mostrate da un singolo comando.
+     */
+    private static final int HISTORY_LIMIT = 50;
+
     public CalendarCommand(CalendarioPlugin plugin) {
         this.plugin = plugin;
         this.lang = plugin.getLanguageManager();
@@ -37,6 +47,9 @@ public class CalendarCommand implements CommandExecutor, TabCompleter {
             case "reload" -> handleReload(sender);
             case "set" -> handleSet(sender, args);
             case "event" -> handleEvent(sender, args);
+            case "stats" -> handleStats(sender);
+            case "seasonal" -> handleSeasonal(sender, args);
+            case "history" -> handleHistory(sender, args);
             default -> {
                 // Messaggio di comando non valido
                 sender.sendMessage(lang.getString("commands.invalid-subcommand"));
@@ -51,6 +64,9 @@ public class CalendarCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(lang.getString("commands.help-set"));
         sender.sendMessage(lang.getString("commands.help-reload"));
         sender.sendMessage(lang.getString("commands.help-event"));
+        sender.sendMessage(lang.getString("commands.help-stats"));
+        sender.sendMessage(lang.getString("commands.help-seasonal"));
+        sender.sendMessage(lang.getString("commands.help-history"));
     }
 
     private void handleReload(CommandSender sender) {
@@ -99,8 +115,8 @@ public class CalendarCommand implements CommandExecutor, TabCompleter {
                 tm.setMese(value);
             }
             case "anno" -> {
-                if (value < 1) {
-                    sender.sendMessage(lang.getString("commands.invalid-value-year"));
+                if (value < 1 || value > Year.MAX_VALUE) {
+                    sender.sendMessage(lang.getString("commands.invalid-value-year", "{maxYear}", String.valueOf(Year.MAX_VALUE)));
                     return;
                 }
                 tm.setAnno(value);
@@ -111,7 +127,9 @@ public class CalendarCommand implements CommandExecutor, TabCompleter {
             }
         }
 
+        plugin.getHistory().record(CalendarHistory.Type.DATE_SET, tm.getGiornoAssoluto(), sender.getName() + ": " + type + " " + value);
         plugin.getEventManager().handleDateChange();
+        plugin.getTimeManager().saveDataAsync();
         plugin.getMainTaskInstance().forceUpdate();
         sender.sendMessage(lang.getString("commands.date-updated"));
     }
@@ -144,43 +162,281 @@ public class CalendarCommand implements CommandExecutor, TabCompleter {
                     return;
                 }
 
-                // Termina l'evento corrente prima di avviarne uno nuovo
-                if (em.getActiveEvent() != null) {
-                    em.endActiveEvent();
-                }
-
+                // Eventuali istanze dello stesso evento o del suo gruppo vengono terminate prima dell'avvio
                 em.startEvent(event);
                 plugin.getMainTaskInstance().forceUpdate();
                 sender.sendMessage(lang.getString("commands.event-started", "{eventName}", event.displayName()));
             }
             case "end" -> {
-                if (em.getActiveEvent() == null) {
+                if (em.getActiveEvents().isEmpty()) {
                     sender.sendMessage(lang.getString("commands.event-none-active"));
                     return;
                 }
-                em.endActiveEvent();
+                if (args.length >= 3) {
+                    // Termina solo l'evento indicato
+                    if (!em.endEvent(args[2])) {
+                        sender.sendMessage(lang.getString("commands.event-not-active", "{eventName}", args[2]));
+                        return;
+                    }
+                } else {
+                    em.endAllEvents();
+                }
                 plugin.getMainTaskInstance().forceUpdate();
                 sender.sendMessage(lang.getString("commands.event-ended"));
             }
             case "status" -> {
-                CustomEvent activeEvent = em.getActiveEvent();
-                if (activeEvent == null) {
+                if (em.getActiveEvents().isEmpty()) {
                     sender.sendMessage(lang.getString("commands.event-status-none"));
-                } else {
-                    sender.sendMessage(lang.getString("commands.event-status-active", "{eventName}", activeEvent.displayName()));
+                    return;
+                }
+                long today = plugin.getTimeManager().getGiornoAssoluto();
+                for (ActiveEvent active : em.getActiveEvents()) {
+                    long remaining = active.daysRemaining(today);
+                    sender.sendMessage(lang.getString("commands.event-status-active",
+                            "{eventName}", active.event().displayName(),
+                            "{days}", remaining < 0 ? "∞" : String.valueOf(remaining)));
                 }
             }
+            case "odds" -> handleEventOdds(sender, args, em);
             default -> sender.sendMessage(lang.getString("commands.event-usage"));
         }
     }
 
+    /**
+     * Mostra le probabilità giornaliere effettive degli eventi RANDOM per la stagione corrente o indicata.
+     * Uso: /calendario event odds [stagione]
+     */
+    private void handleEventOdds(CommandSender sender, String[] args, EventManager em) {
+        TimeManager.Stagione season;
+        if (args.length >= 3) {
+            try {
+                season = TimeManager.Stagione.valueOf(args[2].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                sender.sendMessage(lang.getString("commands.event-odds-usage"));
+                return;
+            }
+        } else {
+            season = plugin.getTimeManager().getEnumStagioneCorrente();
+        }
+
+        String seasonName = lang.getString("seasons." + season.name());
+        AliasTable<CustomEvent> table = em.getRandomEventTable(season);
+        if (table == null) {
+            sender.sendMessage(lang.getString("commands.event-odds-empty", "{season}", seasonName));
+            return;
+        }
+        sender.sendMessage(lang.getString("commands.event-odds-header", "{season}", seasonName));
+        List<CustomEvent> outcomes = table.getOutcomes();
+        for (int i = 0; i < outcomes.size(); i++) {
+            String odds = String.format("%.2f%%", table.getProbability(i) * 100);
+            CustomEvent event = outcomes.get(i);
+            if (event == null) {
+                sender.sendMessage(lang.getString("commands.event-odds-none", "{odds}", odds));
+            } else {
+                sender.sendMessage(lang.getString("commands.event-odds-line",
+                        "{eventName}", event.displayName(), "{id}", event.id(), "{odds}", odds));
+            }
+        }
+    }
+
+
+    /**
+     * Mostra le voci dello storico comprese tra due date.
+     * Uso: /calendario history <giorno/mese/anno> <giorno/mese/anno>
+     * La ricerca avviene sul thread dello storico; i risultati vengono inviati dal thread principale.
+     */
+    private void handleHistory(CommandSender sender, String[] args) {
+        if (!sender.isOp()) {
+            sender.sendMessage(lang.getString("commands.no-permission"));
+            return;
+        }
+        if (args.length < 3) {
+            sender.sendMessage(lang.getString("commands.history-usage"));
+            return;
+        }
+        long from = parseDate(args[1]);
+        long to = parseDate(args[2]);
+        if (from < 0 || to < 0) {
+            sender.sendMessage(lang.getString("commands.history-usage"));
+            return;
+        }
+        if (from > to) {
+            long swap = from;
+            from = to;
+            to = swap;
+        }
+
+        String fromText = formatDate(from);
+        String toText = formatDate(to);
+        plugin.getHistory().query(from, to, HISTORY_LIMIT).thenAccept(entries -> Bukkit.getScheduler().runTask(plugin, () -> {
+            if (entries.isEmpty()) {
+                sender.sendMessage(lang.getString("commands.history-empty", "{from}", fromText, "{to}", toText));
+                return;
+            }
+            sender.sendMessage(lang.getString("commands.history-header", "{from}", fromText, "{to}", toText));
+            for (int i = 0; i < Math.min(entries.size(), HISTORY_LIMIT); i++) {
+                CalendarHistory.Entry entry = entries.get(i);
+                sender.sendMessage(lang.getString("commands.history-line",
+                        "{date}", formatDate(entry.day()),
+                        "{type}", lang.getString("history-types." + entry.type().name()),
+                        "{detail}", entry.detail()));
+            }
+            if (entries.size() > HISTORY_LIMIT) {
+                sender.sendMessage(lang.getString("commands.history-truncated", "{limit}", String.valueOf(HISTORY_LIMIT)));
+            }
+        }));
+    }
+
+    /**
+     * Converte una data nel formato giorno/mese/anno nel giorno assoluto corrispondente.
+     *
+     * @return Il giorno assoluto, o -1 se la data non è valida.
+     */
+    private static long parseDate(String text) {
+        String[] parts = text.split("/");
+        if (parts.length != 3) return -1;
+        try {
+            int year = Integer.parseInt(parts[2]);
+            if (year < 1) return -1;
+            return CalendarEngine.toEpochDay(year, Integer.parseInt(parts[1]), Integer.parseInt(parts[0]));
+        } catch (NumberFormatException | DateTimeException e) {
+            return -1;
+        }
+    }
+
+    private String formatDate(long day) {
+        CalendarEngine.CalendarDate date = CalendarEngine.fromEpochDay(day);
+        return date.day() + " " + plugin.getTimeManager().getNomeMese(date.month()) + " " + date.year();
+    }
+
+    private void handleSeasonal(CommandSender sender, String[] args) {
+        if (!sender.isOp()) {
+            sender.sendMessage(lang.getString("commands.no-permission"));
+            return;
+        }
+        // Uso: /calendario seasonal rollback <raggio> [mondo x z]
+        if (args.length < 3 || !args[1].equalsIgnoreCase("rollback")) {
+            sender.sendMessage(lang.getString("commands.seasonal-usage"));
+            return;
+        }
+
+        int radius;
+        World world;
+        int blockX;
+        int blockZ;
+        try {
+            radius = Integer.parseInt(args[2]);
+            if (args.length >= 6) {
+                world = Bukkit.getWorld(args[3]);
+                blockX = Integer.parseInt(args[4]);
+                blockZ = Integer.parseInt(args[5]);
+            } else if (sender instanceof Player player) {
+                world = player.getWorld();
+                blockX = player.getLocation().getBlockX();
+                blockZ = player.getLocation().getBlockZ();
+            } else {
+                sender.sendMessage(lang.getString("commands.seasonal-usage"));
+                return;
+            }
+        } catch (NumberFormatException e) {
+            sender.sendMessage(lang.getString("commands.invalid-value-number"));
+            return;
+        }
+        if (world == null) {
+            sender.sendMessage(lang.getString("commands.invalid-world", "{world}", args[3]));
+            return;
+        }
+        if (radius < 0) {
+            sender.sendMessage(lang.getString("commands.seasonal-usage"));
+            return;
+        }
+        int maxRadius = Math.max(0, plugin.getConfig().getInt("visual-effects.rollback.max-radius", 64));
+        if (radius > maxRadius) {
+            sender.sendMessage(lang.getString("commands.rollback-radius-too-large", "{max}", String.valueOf(maxRadius)));
+            return;
+        }
+
+        long chunks = plugin.getSeasonalEffectsManager().startRollback(sender, world, blockX >> 4, blockZ >> 4, radius);
+        if (chunks < 0) {
+            sender.sendMessage(lang.getString("commands.rollback-running"));
+        } else {
+            sender.sendMessage(lang.getString("commands.rollback-started", "{chunks}", String.valueOf(chunks)));
+        }
+    }
+
+    private void handleStats(CommandSender sender) {
+        if (!sender.isOp()) {
+            sender.sendMessage(lang.getString("commands.no-permission"));
+            return;
+        }
+        BlockChangeQueue queue = plugin.getSeasonalEffectsManager().getBlockChangeQueue();
+        sender.sendMessage(lang.getString("commands.stats-header"));
+        sender.sendMessage(lang.getString("commands.stats-block-queue",
+                "{depth}", String.valueOf(queue.getQueueDepth()),
+                "{rate}", String.valueOf(queue.getDrainRatePerSecond()),
+                "{applied}", String.valueOf(queue.getTotalApplied()),
+                "{skipped}", String.valueOf(queue.getTotalSkipped()),
+                "{dropped}", String.valueOf(queue.getTotalDropped())));
+        sender.sendMessage(lang.getString("commands.stats-active-chunks",
+                "{count}", String.valueOf(plugin.getSeasonalEffectsManager().getChunkSampler().getActiveChunkCount())));
+        SeasonalEffectsManager effects = plugin.getSeasonalEffectsManager();
+        sender.sendMessage(lang.getString("commands.stats-catch-up",
+                "{pending}", String.valueOf(effects.getCatchUpPending()),
+                "{rate}", String.valueOf(effects.getCatchUpRatePerSecond()),
+                "{processed}", String.valueOf(effects.getCatchUpProcessed()),
+                "{dropped}", String.valueOf(effects.getCatchUpDropped())));
+        CalendarPersistence persistence = plugin.getTimeManager().getPersistence();
+        sender.sendMessage(lang.getString("commands.stats-persistence",
+                "{storage}", persistence.getStorageName(),
+                "{saves}", String.valueOf(persistence.getTotalSaves()),
+                "{coalesced}", String.valueOf(persistence.getCoalescedSaves()),
+                "{journal}", String.valueOf(persistence.getJournalEntries()),
+                "{failed}", String.valueOf(persistence.getFailedSaves()),
+                "{last}", String.format("%.2f", persistence.getLastLatencyMillis()),
+                "{avg}", String.format("%.2f", persistence.getAverageLatencyMillis()),
+                "{max}", String.format("%.2f", persistence.getMaxLatencyMillis())));
+        CalendarHistory history = plugin.getHistory();
+        sender.sendMessage(lang.getString("commands.stats-history",
+                "{records}", String.valueOf(history.getRecordsWritten()),
+                "{segments}", String.valueOf(history.getSegmentCount()),
+                "{size}", String.format("%.1f", history.getTotalBytes() / 1024.0),
+                "{query}", String.format("%.2f", history.getLastQueryMicros() / 1000.0)));
+        EventManager events = plugin.getEventManager();
+        sender.sendMessage(lang.getString("commands.stats-conditions",
+                "{compiled}", String.valueOf(events.getCompiledConditions()),
+                "{checks}", String.valueOf(events.getConditionChecks()),
+                "{avg}", String.format("%.2f", events.getAverageConditionMicros())));
+        TimingWheel clock = events.getClock();
+        sender.sendMessage(lang.getString("commands.stats-clock",
+                "{timers}", String.valueOf(clock.getSize()),
+                "{fired}", String.valueOf(clock.getTotalFired()),
+                "{cascaded}", String.valueOf(clock.getTotalCascaded())));
+        RewardLedger rewards = events.getRewardLedger();
+        sender.sendMessage(lang.getString("commands.stats-rewards",
+                "{claims}", String.valueOf(rewards.getTotalClaims()),
+                "{duplicates}", String.valueOf(rewards.getTotalDuplicatesPrevented()),
+                "{ledgers}", String.valueOf(rewards.getOpenLedgers())));
+        BossBarManager bossBars = plugin.getBossBarManager();
+        sender.sendMessage(lang.getString("commands.stats-bossbar",
+                "{bars}", String.valueOf(bossBars.getSharedBarCount()),
+                "{viewers}", String.valueOf(bossBars.getViewerCount()),
+                "{emitted}", String.valueOf(bossBars.getEmittedUpdates()),
+                "{skipped}", String.valueOf(bossBars.getSkippedUpdates())));
+        CommandDispatchQueue commands = events.getCommandQueue();
+        sender.sendMessage(lang.getString("commands.stats-command-queue",
+                "{pending}", String.valueOf(commands.getPending()),
+                "{rate}", String.valueOf(commands.getExecutedPerSecond()),
+                "{executed}", String.valueOf(commands.getTotalExecuted()),
+                "{failed}", String.valueOf(commands.getTotalFailed())));
+    }
+
 
     @Override
     public List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String alias, @NotNull String[] args) {
         if (!sender.isOp()) return null;
 
         if (args.length == 1) {
-            return List.of("set", "reload", "event", "help");
+            return List.of("set", "reload", "event", "stats", "seasonal", "history", "help");
         }
 
         if (args.length == 2 && args[0].equalsIgnoreCase("set")) {
@@ -188,7 +444,27 @@ public class CalendarCommand implements CommandExecutor, TabCompleter {
         }
 
         if (args.length == 2 && args[0].equalsIgnoreCase("event")) {
-            return List.of("start", "end", "status");
+            return List.of("start", "end", "status", "odds");
+        }
+
+        if (args.length == 3 && args[0].equalsIgnoreCase("event") && args[1].equalsIgnoreCase("end")) {
+            List<String> ids = new ArrayList<>();
+            for (ActiveEvent active : plugin.getEventManager().getActiveEvents()) {
+                ids.add(active.event().id());
+            }
+            return ids;
+        }
+
+        if (args.length == 3 && args[0].equalsIgnoreCase("event") && args[1].equalsIgnoreCase("odds")) {
+            List<String> seasons = new ArrayList<>();
+            for (TimeManager.Stagione season : TimeManager.Stagione.values()) {
+                seasons.add(season.name().toLowerCase());
+            }
+            return seasons;
+        }
+
+        if (args.length == 2 && args[0].equalsIgnoreCase("seasonal")) {
+            return List.of("rollback");
         }
 
         return new ArrayList<>();
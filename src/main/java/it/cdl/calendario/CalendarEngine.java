@@ -0,0 +1,98 @@
+package it.cdl.calendario;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * Motore aritmetico del calendario, senza stato e indipendente dal server.
+ * Converte in tempo costante una data (anno, mese, giorno) in un "giorno assoluto"
+ * (numero di giorni trascorsi dal 1 gennaio dell'anno 1) e viceversa, seguendo le regole
+ * del calendario gregoriano già usate da {@link TimeManager#getGiorniNelMese()}.
+ * Grazie a questa rappresentazione, un salto di migliaia di giorni si risolve con una
+ * somma invece che con un ciclo giorno per giorno.
+ */
+public final class CalendarEngine {
+
+    /**
+     * Giorno epocale ISO (giorni dal 1970-01-01) corrispondente al giorno assoluto 0 (01/01/0001).
+     */
+    private static final long EPOCH_OFFSET = LocalDate.of(1, 1, 1).toEpochDay();
+
+    private CalendarEngine() {}
+
+    /**
+     * Data del calendario risolta da un giorno assoluto.
+     *
+     * @param year  L'anno (1 o superiore).
+     * @param month Il mese (1-12).
+     * @param day   Il giorno del mese.
+     */
+    public record CalendarDate(int year, int month, int day) {
+        /**
+         * Restituisce la stagione a cui appartiene la data.
+         * @return La stagione della data.
+         */
+        public TimeManager.Stagione season() {
+            return seasonOf(month);
+        }
+    }
+
+    /**
+     * Converte una data nel giorno assoluto corrispondente.
+     *
+     * @param year  L'anno.
+     * @param month Il mese (1-12).
+     * @param day   Il giorno del mese.
+     * @return Il numero di giorni trascorsi dal 01/01/0001.
+     */
+    public static long toEpochDay(int year, int month, int day) {
+        return LocalDate.of(year, month, day).toEpochDay() - EPOCH_OFFSET;
+    }
+
+    /**
+     * Converte un giorno assoluto nella data corrispondente.
+     *
+     * @param epochDay Il numero di giorni trascorsi dal 01/01/0001.
+     * @return La data risolta.
+     */
+    public static CalendarDate fromEpochDay(long epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay + EPOCH_OFFSET);
+        return new CalendarDate(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+    }
+
+    /**
+     * Restituisce il giorno della settimana di un giorno assoluto.
+     *
+     * @param epochDay Il giorno assoluto.
+     * @return Il giorno della settimana.
+     */
+    public static DayOfWeek dayOfWeek(long epochDay) {
+        return LocalDate.ofEpochDay(epochDay + EPOCH_OFFSET).getDayOfWeek();
+    }
+
+    /**
+     * Indica se un anno è bisestile.
+     *
+     * @param year L'anno da controllare.
+     * @return {@code true} se l'anno è bisestile.
+     */
+    public static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || (year % 400 == 0);
+    }
+
+    /**
+     * Determina la stagione a cui appartiene un mese.
+     *
+     * @param month Il mese (1-12).
+     * @return La stagione del mese; primavera come fallback per valori non validi.
+     */
+    public static TimeManager.Stagione seasonOf(int month) {
+        return switch (month) {
+            case 12, 1, 2 -> TimeManager.Stagione.INVERNO;
+            case 3, 4, 5 -> TimeManager.Stagione.PRIMAVERA;
+            case 6, 7, 8 -> TimeManager.Stagione.ESTATE;
+            case 9, 10, 11 -> TimeManager.Stagione.AUTUNNO;
+            default -> TimeManager.Stagione.PRIMAVERA; // Fallback
+        };
+    }
+}
@@ -0,0 +1,453 @@
+package it.cdl.calendario;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Storico in sola aggiunta di ciò che accade nel calendario (cambi di giorno e di stagione,
+ * eventi, modifiche manuali della data, notti saltate dormendo), salvato in formato binario
+ * nella cartella {@code history}.
+ * <p>
+ * Lo storico è diviso in segmenti ({@code history-N.log}); all'interno di un segmento i giorni
+ * non decrescono mai: una voce con un giorno precedente all'ultimo (es. dopo {@code /calendario set}
+ * nel passato) apre un nuovo segmento, così come il raggiungimento della dimensione massima.
+ * Per ogni segmento viene tenuto in memoria un indice sparso giorno → posizione (una voce ogni
+ * {@value #INDEX_INTERVAL_DAYS} giorni): una ricerca legge solo i segmenti che coprono l'intervallo,
+ * a partire dalla posizione indicizzata, invece di scorrere tutto lo storico.
+ * Alla chiusura di un segmento, i segmenti piccoli e consecutivi vengono uniti e le voci più vecchie
+ * del periodo di conservazione configurato vengono eliminate.
+ * <p>
+ * Tutte le operazioni sui file avvengono su un thread dedicato; i metodi pubblici possono essere
+ * chiamati dal thread principale senza bloccarlo.
+ */
+public class CalendarHistory {
+
+    /**
+     * Tipo di voce dello storico.
+     */
+    public enum Type { DAY_CHANGE, SEASON_CHANGE, EVENT_START, EVENT_END, DATE_SET, SLEEP_SKIP }
+
+    /**
+     * Voce dello storico.
+     *
+     * @param day    Il giorno assoluto (vedi {@link CalendarEngine}) a cui si riferisce la voce.
+     * @param type   Il tipo di voce.
+     * @param detail Un dettaglio libero (es. l'ID dell'evento o la nuova stagione).
+     */
+    public record Entry(long day, Type type, String detail) {}
+
+    private static final Type[] TYPES = Type.values();
+    private static final int INDEX_INTERVAL_DAYS = 16;
+    private static final String PREFIX = "history-";
+    private static final String SUFFIX = ".log";
+
+    private final CalendarioPlugin plugin;
+    private final File folder;
+    private final long segmentMaxBytes;
+    private final long retentionDays;
+    private final ExecutorService executor;
+
+    // --- Stato usato solo dal thread dello storico ---
+    private final List<Segment> segments = new ArrayList<>();
+    private FileChannel activeChannel;
+    private int nextSegmentId = 1;
+
+    // --- Statistiche ---
+    private volatile long recordsWritten = 0;
+    private volatile int segmentCount = 0;
+    private volatile long totalBytes = 0;
+    private volatile long lastQueryMicros = 0;
+
+    /**
+     * Costruttore dello storico. Legge la dimensione dei segmenti e il periodo di conservazione dal config.yml.
+     *
+     * @param plugin L'istanza principale del plugin.
+     */
+    public CalendarHistory(CalendarioPlugin plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "history");
+        this.segmentMaxBytes = Math.max(4L, plugin.getConfig().getLong("history.segment-size-kb", 256L)) * 1024L;
+        this.retentionDays = plugin.getConfig().getLong("history.retention-days", 0L);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Calendario-History");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Apre in background i segmenti esistenti e ne ricostruisce gli indici.
+     */
+    public void start() {
+        executor.execute(() -> {
+            try {
+                openSegments();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Impossibile aprire lo storico del calendario!", e);
+            }
+        });
+    }
+
+    /**
+     * Accoda una voce allo storico. La scrittura avviene in background.
+     *
+     * @param type   Il tipo di voce.
+     * @param day    Il giorno assoluto a cui si riferisce.
+     * @param detail Il dettaglio della voce.
+     */
+    public void record(Type type, long day, String detail) {
+        if (executor.isShutdown()) return;
+        Entry entry = new Entry(day, type, detail);
+        executor.execute(() -> {
+            try {
+                append(entry);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Impossibile scrivere nello storico del calendario!", e);
+            }
+        });
+    }
+
+    /**
+     * Cerca le voci comprese tra due giorni assoluti, in ordine di scrittura.
+     *
+     * @param fromDay Il primo giorno (incluso).
+     * @param toDay   L'ultimo giorno (incluso).
+     * @param limit   Il numero massimo di voci da restituire; ne viene letta una in più per segnalare che ce ne sono altre.
+     * @return Un future con le voci trovate (al massimo {@code limit + 1}).
+     */
+    public CompletableFuture<List<Entry>> query(long fromDay, long toDay, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            List<Entry> result = new ArrayList<>();
+            try {
+                for (Segment segment : segments) {
+                    if (segment.maxDay < fromDay || segment.minDay > toDay) continue;
+                    if (!scan(segment, fromDay, toDay, limit + 1, result)) break;
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Impossibile leggere lo storico del calendario!", e);
+            }
+            lastQueryMicros = (System.nanoTime() - start) / 1000L;
+            return result;
+        }, executor);
+    }
+
+    /**
+     * Chiude il segmento attivo e attende il completamento delle scritture in coda.
+     */
+    public void close() {
+        executor.execute(this::closeActiveChannel);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Scrittura dello storico non completata entro 10 secondi.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Operazioni eseguite sul thread dello storico ---
+
+    private void openSegments() throws IOException {
+        Files.createDirectories(folder.toPath());
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingInt(CalendarHistory::segmentId));
+        for (File file : files) {
+            int id = segmentId(file);
+            if (id < 0) continue;
+            Segment segment = new Segment(file);
+            long validBytes = rebuildIndex(segment);
+            if (validBytes < file.length()) {
+                // Coda troncata da un crash: viene tagliata per non corrompere le voci successive.
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(validBytes);
+                }
+            }
+            segments.add(segment);
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+        }
+        updateStats();
+    }
+
+    private void append(Entry entry) throws IOException {
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        boolean rotate = active == null || active.size >= segmentMaxBytes || (active.size > 0 && entry.day() < active.maxDay);
+        if (rotate) {
+            if (active != null) {
+                closeActiveChannel();
+                compact(entry.day());
+            }
+            active = new Segment(new File(folder, PREFIX + nextSegmentId++ + SUFFIX));
+            segments.add(active);
+        }
+        if (activeChannel == null) {
+            Files.createDirectories(folder.toPath());
+            activeChannel = FileChannel.open(active.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+
+        ByteBuffer record = encode(entry);
+        long offset = active.size;
+        while (record.hasRemaining()) {
+            offset += activeChannel.write(record, offset);
+        }
+        active.add(entry.day(), active.size);
+        active.size = offset;
+        recordsWritten++;
+        updateStats();
+    }
+
+    /**
+     * Legge le voci di un segmento a partire dalla posizione indicizzata più vicina a {@code fromDay}.
+     *
+     * @return {@code false} se è stato raggiunto il limite di voci.
+     */
+    private boolean scan(Segment segment, long fromDay, long toDay, int limit, List<Entry> result) throws IOException {
+        Map.Entry<Long, Long> seek = segment.index.floorEntry(fromDay);
+        long offset = seek != null ? seek.getValue() : 0L;
+        ByteBuffer buffer = read(segment.file, offset, segment.size - offset);
+        while (buffer.hasRemaining()) {
+            Entry entry = decode(buffer);
+            if (entry == null || entry.day() > toDay) break;
+            if (entry.day() < fromDay) continue;
+            result.add(entry);
+            if (result.size() >= limit) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Unisce i segmenti chiusi piccoli e consecutivi ed elimina le voci più vecchie del periodo di conservazione.
+     *
+     * @param today Il giorno della voce più recente, usato per il periodo di conservazione.
+     */
+    private void compact(long today) throws IOException {
+        long cutoff = retentionDays > 0 ? today - retentionDays : Long.MIN_VALUE;
+        List<Segment> compacted = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.maxDay < cutoff) {
+                Files.deleteIfExists(segment.file.toPath());
+                continue;
+            }
+            Segment previous = compacted.isEmpty() ? null : compacted.get(compacted.size() - 1);
+            boolean mergeable = previous != null && previous.maxDay <= segment.minDay
+                    && previous.size + segment.size <= segmentMaxBytes;
+            if (mergeable || segment.minDay < cutoff) {
+                List<Entry> entries = new ArrayList<>();
+                if (mergeable) readAll(previous, cutoff, entries);
+                readAll(segment, cutoff, entries);
+                Segment target = mergeable ? previous : segment;
+                rewrite(target, entries);
+                if (mergeable) {
+                    Files.deleteIfExists(segment.file.toPath());
+                    continue;
+                }
+            }
+            compacted.add(segment);
+        }
+        segments.clear();
+        segments.addAll(compacted);
+    }
+
+    private void readAll(Segment segment, long cutoff, List<Entry> into) throws IOException {
+        ByteBuffer buffer = read(segment.file, 0, segment.size);
+        Entry entry;
+        while (buffer.hasRemaining() && (entry = decode(buffer)) != null) {
+            if (entry.day() >= cutoff) into.add(entry);
+        }
+    }
+
+    /**
+     * Riscrive un segmento con le voci indicate: file temporaneo, fsync e rinomina atomica.
+     */
+    private void rewrite(Segment segment, List<Entry> entries) throws IOException {
+        Path target = segment.file.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        segment.reset();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Entry entry : entries) {
+                ByteBuffer record = encode(entry);
+                long offset = segment.size;
+                while (record.hasRemaining()) {
+                    offset += channel.write(record, offset);
+                }
+                segment.add(entry.day(), segment.size);
+                segment.size = offset;
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Ricostruisce l'indice di un segmento leggendone le voci.
+     *
+     * @return Il numero di byte validi del segmento.
+     */
+    private long rebuildIndex(Segment segment) throws IOException {
+        ByteBuffer buffer = read(segment.file, 0, segment.file.length());
+        segment.reset();
+        while (buffer.hasRemaining()) {
+            int position = buffer.position();
+            Entry entry = decode(buffer);
+            if (entry == null) break;
+            segment.add(entry.day(), position);
+            segment.size = buffer.position();
+        }
+        return segment.size;
+    }
+
+    private void closeActiveChannel() {
+        if (activeChannel == null) return;
+        try {
+            activeChannel.force(false);
+            activeChannel.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Impossibile chiudere lo storico del calendario!", e);
+        }
+        activeChannel = null;
+    }
+
+    private void updateStats() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.size;
+        }
+        totalBytes = bytes;
+        segmentCount = segments.size();
+    }
+
+    // --- Formato delle voci: lunghezza (short), contenuto, CRC32 del contenuto (int) ---
+
+    private static ByteBuffer encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeLong(entry.day());
+        data.writeByte(entry.type().ordinal());
+        data.writeUTF(entry.detail());
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(Short.BYTES + payload.length + Integer.BYTES);
+        record.putShort((short) payload.length).put(payload).putInt((int) crc.getValue()).flip();
+        return record;
+    }
+
+    /**
+     * Legge la voce successiva del buffer.
+     *
+     * @return La voce, o {@code null} se il resto del buffer è troncato o danneggiato.
+     */
+    private static Entry decode(ByteBuffer buffer) {
+        if (buffer.remaining() < Short.BYTES) return null;
+        int length = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < length + Integer.BYTES) return null;
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if (buffer.getInt() != (int) crc.getValue()) return null;
+        try {
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+            long day = data.readLong();
+            int type = data.readByte();
+            if (type < 0 || type >= TYPES.length) return null;
+            return new Entry(day, TYPES[type], data.readUTF());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer read(File file, long offset, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, length));
+        if (length <= 0) return buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                // Legge finché il buffer non è pieno o il file non finisce.
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int segmentId(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // --- Metodi Getter per le statistiche ---
+
+    public long getRecordsWritten() { return recordsWritten; }
+    public int getSegmentCount() { return segmentCount; }
+    public long getTotalBytes() { return totalBytes; }
+    public long getLastQueryMicros() { return lastQueryMicros; }
+
+    /**
+     * Segmento dello storico, con i giorni coperti e l'indice sparso.
+     */
+    private static final class Segment {
+        private final File file;
+        private final TreeMap<Long, Long> index = new TreeMap<>();
+        private long minDay;
+        private long maxDay;
+        private long size;
+        private long lastIndexedDay;
+
+        private Segment(File file) {
+            this.file = file;
+            reset();
+        }
+
+        private void reset() {
+            index.clear();
+            minDay = Long.MAX_VALUE;
+            maxDay = Long.MIN_VALUE;
+            size = 0;
+            lastIndexedDay = Long.MIN_VALUE;
+        }
+
+        /**
+         * Registra una voce scritta alla posizione indicata, aggiornando l'indice sparso.
+         */
+        private void add(long day, long offset) {
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+            if (index.isEmpty() || day >= lastIndexedDay + INDEX_INTERVAL_DAYS) {
+                index.put(day, offset);
+                lastIndexedDay = day;
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package it.cdl.calendario;
+
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Salvataggio del calendario resistente ai crash e senza costi sul thread principale.
+ * Il thread principale si limita a catturare un {@link CalendarState} immutabile;
+ * la scrittura avviene su un thread dedicato tramite il {@link CalendarStorage} configurato.
+ * <p>
+ * Le scritture sono "write-behind" con accorpamento: finché un salvataggio è in attesa,
+ * i salvataggi successivi sostituiscono lo stato in attesa invece di accodare altre scritture,
+ * quindi una raffica di cambi di giorno produce al massimo una scrittura in corso e una in attesa.
+ * Oltre ai salvataggi espliciti, un task salva periodicamente lo stato con l'intervallo configurato.
+ * <p>
+ * Lo stesso thread scrive anche il registro degli eventi ({@link EventJournal}): le voci e gli stati
+ * vengono quindi scritti nell'ordine in cui sono stati richiesti, e dopo ogni salvataggio che include
+ * tutte le voci scritte il registro viene svuotato.
+ */
+public class CalendarPersistence {
+
+    private final CalendarioPlugin plugin;
+    private final CalendarStorage storage;
+    private final EventJournal journal;
+    private final ExecutorService writer;
+    private BukkitRunnable autosaveTask;
+
+    /**
+     * Stato in attesa di scrittura e future condiviso da tutti i salvataggi accorpati in esso.
+     * Protetti dal lock dell'istanza.
+     */
+    private CalendarState pendingState;
+    private CompletableFuture<Void> pendingFuture;
+    /**
+     * Sequenza dell'ultima voce scritta nel registro. Usata solo dal thread di scrittura, dopo il caricamento.
+     */
+    private long lastJournalSequence = 0;
+
+    // --- Statistiche dei salvataggi, aggiornate dal thread di scrittura ---
+    private volatile long coalescedSaves = 0;
+    private volatile long journalEntries = 0;
+    private volatile long totalSaves = 0;
+    private volatile long failedSaves = 0;
+    private volatile long lastLatencyNanos = 0;
+    private volatile long maxLatencyNanos = 0;
+    private volatile long totalLatencyNanos = 0;
+
+    /**
+     * Costruttore del sistema di salvataggio.
+     *
+     * @param plugin  L'istanza principale del plugin.
+     * @param storage Il formato in cui salvare il calendario.
+     * @param journal Il registro degli avvii e delle conclusioni degli eventi.
+     */
+    public CalendarPersistence(CalendarioPlugin plugin, CalendarStorage storage, EventJournal journal) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.journal = journal;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Calendario-Persistence");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Avvia il salvataggio automatico periodico, se l'intervallo configurato è maggiore di zero.
+     *
+     * @param snapshotSupplier Fornisce lo stato corrente; viene chiamato sul thread principale.
+     */
+    public void startAutosave(Supplier<CalendarState> snapshotSupplier) {
+        long intervalSeconds = plugin.getConfig().getLong("persistence.autosave-interval-seconds", 300L);
+        if (intervalSeconds <= 0) return;
+        long intervalTicks = intervalSeconds * 20L;
+        this.autosaveTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                saveAsync(snapshotSupplier.get());
+            }
+        };
+        this.autosaveTask.runTaskTimer(plugin, intervalTicks, intervalTicks);
+    }
+
+    /**
+     * Accoda il salvataggio di uno stato. Se un salvataggio è già in attesa, il suo stato viene
+     * sostituito da quello nuovo, più recente, e le due richieste condividono la stessa scrittura.
+     *
+     * @param state Lo stato da salvare.
+     * @return Un future completato al termine della scrittura (anche in caso di errore, già registrato nel log).
+     */
+    public synchronized CompletableFuture<Void> saveAsync(CalendarState state) {
+        pendingState = state;
+        if (pendingFuture != null) {
+            coalescedSaves++;
+            return pendingFuture;
+        }
+        pendingFuture = new CompletableFuture<>();
+        CompletableFuture<Void> future = pendingFuture;
+        writer.execute(this::flush);
+        return future;
+    }
+
+    /**
+     * Carica lo stato salvato dal formato configurato. Chiamato all'avvio, prima di qualsiasi salvataggio.
+     *
+     * @return Lo stato salvato, o {@code null} se non è ancora stato salvato nulla.
+     * @throws IOException Se i dati esistono ma non possono essere letti.
+     */
+    public CalendarState load() throws IOException {
+        return storage.load();
+    }
+
+    /**
+     * Legge le voci del registro degli eventi. Chiamato all'avvio, prima di qualsiasi scrittura.
+     * In caso di errore il registro viene ignorato: restano valide le informazioni dello stato salvato.
+     *
+     * @return Le voci valide del registro, nell'ordine in cui sono state scritte.
+     */
+    public List<EventJournal.Entry> readJournal() {
+        try {
+            List<EventJournal.Entry> entries = journal.readAll();
+            if (!entries.isEmpty()) {
+                lastJournalSequence = entries.get(entries.size() - 1).sequence();
+            }
+            return entries;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Impossibile leggere il registro degli eventi!", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Accoda la scrittura di una voce del registro degli eventi.
+     * Il future viene completato quando la voce è su disco (o quando la scrittura è fallita,
+     * errore già registrato nel log), così che le azioni dell'evento non restino bloccate.
+     *
+     * @param entry La voce da scrivere.
+     * @return Un future completato al termine della scrittura.
+     */
+    public CompletableFuture<Void> appendJournal(EventJournal.Entry entry) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                journal.append(entry);
+                lastJournalSequence = entry.sequence();
+                journalEntries++;
+            } catch (IOException e) {
+                failedSaves++;
+                plugin.getLogger().log(Level.SEVERE, "Impossibile scrivere il registro degli eventi!", e);
+            }
+        }, writer);
+    }
+
+    /**
+     * Ferma il salvataggio automatico e attende il completamento di tutte le scritture in coda.
+     * Chiamato alla disabilitazione o al ricaricamento del plugin, dopo l'ultimo salvataggio.
+     */
+    public void close() {
+        if (autosaveTask != null && !autosaveTask.isCancelled()) {
+            autosaveTask.cancel();
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Salvataggio del calendario non completato entro 10 secondi.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        storage.close();
+        journal.close();
+    }
+
+    /**
+     * Estrae lo stato in attesa e lo scrive. Eseguito solo dal thread di scrittura.
+     */
+    private void flush() {
+        CalendarState state;
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            state = pendingState;
+            future = pendingFuture;
+            pendingState = null;
+            pendingFuture = null;
+        }
+        write(state);
+        future.complete(null);
+    }
+
+    /**
+     * Scrive lo stato su disco tramite il formato configurato, misurandone la latenza.
+     */
+    private void write(CalendarState state) {
+        long start = System.nanoTime();
+        try {
+            storage.save(state);
+            recordLatency(System.nanoTime() - start);
+            // Lo stato salvato include già tutte le voci scritte: il registro non serve più.
+            if (state.journalSequence() >= lastJournalSequence) {
+                journal.truncate();
+            }
+        } catch (IOException | RuntimeException e) {
+            failedSaves++;
+            plugin.getLogger().log(Level.SEVERE, "Impossibile salvare i dati del calendario (" + storage.getName() + ")!", e);
+        }
+    }
+
+    /**
+     * Sostituisce il contenuto di un file in modo atomico: il file viene scritto in una copia temporanea,
+     * forzato su disco con fsync e poi rinominato, così che contenga sempre la versione precedente
+     * completa oppure quella nuova completa, anche dopo un crash. Usato dai formati basati su file.
+     *
+     * @param target  Il file di destinazione.
+     * @param content Il nuovo contenuto.
+     * @throws IOException Se la scrittura o la rinomina falliscono.
+     */
+    static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = parent.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // File system senza rinomina atomica: si ripiega su una sostituzione normale.
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        lastLatencyNanos = nanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, nanos);
+        totalLatencyNanos += nanos;
+        totalSaves++;
+    }
+
+    // --- Metodi Getter per le statistiche ---
+
+    public String getStorageName() { return storage.getName(); }
+    public long getTotalSaves() { return totalSaves; }
+    public long getCoalescedSaves() { return coalescedSaves; }
+    public long getJournalEntries() { return journalEntries; }
+    public long getFailedSaves() { return failedSaves; }
+    public double getLastLatencyMillis() { return lastLatencyNanos / 1_000_000.0; }
+    public double getMaxLatencyMillis() { return maxLatencyNanos / 1_000_000.0; }
+    public double getAverageLatencyMillis() {
+        long saves = totalSaves;
+        return saves == 0 ? 0 : totalLatencyNanos / 1_000_000.0 / saves;
+    }
+}
@@ -0,0 +1,30 @@
+package it.cdl.calendario;
+
+import java.time.DayOfWeek;
+import java.util.Set;
+
+/**
+ * Fotografia in sola lettura del calendario e del mondo principale, su cui vengono valutate
+ * le condizioni degli eventi ({@link EventCondition}). Viene catturata una volta sola prima di
+ * controllare gli eventi di una giornata, così ogni condizione legge semplici campi invece
+ * di interrogare il server.
+ *
+ * @param year          L'anno.
+ * @param month         Il mese (1-12).
+ * @param day           Il giorno del mese.
+ * @param epochDay      Il giorno assoluto (vedi {@link CalendarEngine}).
+ * @param season        La stagione.
+ * @param dayOfWeek     Il giorno della settimana.
+ * @param moonPhase     La fase lunare del mondo principale (0 = luna piena ... 7), come in Minecraft.
+ * @param weather       Il meteo del mondo principale.
+ * @param onlinePlayers Il numero di giocatori online.
+ * @param activeEvents  Gli ID degli eventi in corso.
+ */
+public record CalendarSnapshot(int year, int month, int day, long epochDay, TimeManager.Stagione season,
+                               DayOfWeek dayOfWeek, int moonPhase, EventAction.Weather weather,
+                               int onlinePlayers, Set<String> activeEvents) {
+
+    public CalendarSnapshot {
+        activeEvents = Set.copyOf(activeEvents);
+    }
+}
@@ -0,0 +1,58 @@
+package it.cdl.calendario;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stato persistente del calendario, catturato sul thread principale e salvato da un {@link CalendarStorage}.
+ * Essendo immutabile, può essere passato senza rischi al thread di scrittura.
+ *
+ * @param anno         L'anno corrente.
+ * @param mese         Il mese corrente.
+ * @param giorno       Il giorno corrente.
+ * @param fullTime     Il tempo totale del mondo principale, in tick, o -1 se nessun mondo è caricato.
+ * @param activeEvents Gli eventi in corso, nell'ordine in cui sono iniziati.
+ * @param bookkeeping  I dati storici di ogni evento già avviato almeno una volta, per ID.
+ * @param journalSequence Il numero di sequenza dell'ultima voce di {@link EventJournal} inclusa in questo stato.
+ */
+public record CalendarState(int anno, int mese, int giorno, long fullTime,
+                            List<StoredEvent> activeEvents, Map<String, EventBookkeeping> bookkeeping,
+                            long journalSequence) {
+
+    public CalendarState {
+        activeEvents = List.copyOf(activeEvents);
+        bookkeeping = Map.copyOf(bookkeeping);
+    }
+
+    /**
+     * Evento in corso salvato su disco. Al caricamento la fine viene ricalcolata dai giorni rimanenti.
+     *
+     * @param eventId       L'ID dell'evento.
+     * @param startDay      Il giorno assoluto in cui l'evento è iniziato.
+     * @param daysRemaining I giorni rimanenti, o -1 se la durata è infinita.
+     */
+    public record StoredEvent(String eventId, long startDay, long daysRemaining) {}
+
+    /**
+     * Dati storici di un evento.
+     *
+     * @param timesStarted Quante volte l'evento è stato avviato.
+     * @param lastStartDay Il giorno assoluto dell'ultimo avvio, o -1 se mai avviato.
+     * @param lastEndDay   Il giorno assoluto dell'ultima conclusione, o -1 se mai concluso.
+     */
+    public record EventBookkeeping(long timesStarted, long lastStartDay, long lastEndDay) {
+
+        /**
+         * Dati di un evento mai avviato.
+         */
+        public static final EventBookkeeping NONE = new EventBookkeeping(0, -1, -1);
+
+        public EventBookkeeping started(long day) {
+            return new EventBookkeeping(timesStarted + 1, day, lastEndDay);
+        }
+
+        public EventBookkeeping ended(long day) {
+            return new EventBookkeeping(timesStarted, lastStartDay, day);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package it.cdl.calendario;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Formato di salvataggio dello stato del calendario ({@link CalendarState}).
+ * Le implementazioni vengono usate da un solo thread alla volta: il caricamento avviene
+ * all'avvio sul thread principale, i salvataggi sul thread di {@link CalendarPersistence}.
+ * Il formato si sceglie con l'opzione {@code persistence.storage} del config.yml.
+ */
+public interface CalendarStorage {
+
+    /**
+     * Carica l'ultimo stato salvato.
+     *
+     * @return Lo stato salvato, o {@code null} se non è ancora stato salvato nulla.
+     * @throws IOException Se i dati esistono ma non possono essere letti.
+     */
+    CalendarState load() throws IOException;
+
+    /**
+     * Salva uno stato sostituendo completamente quello precedente.
+     * Al termine del metodo i dati devono essere al sicuro su disco.
+     *
+     * @param state Lo stato da salvare.
+     * @throws IOException Se la scrittura fallisce; lo stato precedente resta intatto.
+     */
+    void save(CalendarState state) throws IOException;
+
+    /**
+     * Rilascia le risorse del formato (es. la connessione al database).
+     */
+    default void close() {}
+
+    /**
+     * Restituisce il nome del formato, usato nei log e nelle statistiche.
+     * @return Il nome del formato.
+     */
+    String getName();
+
+    /**
+     * Crea il formato configurato in {@code persistence.storage}: {@code YAML} (predefinito),
+     * {@code SQLITE} o {@code BINARY}. Un valore sconosciuto ricade su YAML con un avviso.
+     *
+     * @param plugin L'istanza principale del plugin.
+     * @return Il formato di salvataggio.
+     */
+    static CalendarStorage create(CalendarioPlugin plugin) {
+        File folder = plugin.getDataFolder();
+        String type = plugin.getConfig().getString("persistence.storage", "YAML").toUpperCase(Locale.ROOT);
+        return switch (type) {
+            case "SQLITE" -> new SqliteCalendarStorage(new File(folder, "data.db"));
+            case "BINARY" -> new BinaryCalendarStorage(new File(folder, "data.bin"));
+            case "YAML" -> new YamlCalendarStorage(new File(folder, "data.yml"));
+            default -> {
+                plugin.getLogger().warning(plugin.getLanguageManager().getString("logs.invalid-storage", "{storage}", type));
+                yield new YamlCalendarStorage(new File(folder, "data.yml"));
+            }
+        };
+    }
+}
@@ -99,6 +99,7 @@ public class CalendarTask extends BukkitRunnable {
         TimeManager.Stagione newSeason = timeManager.getEnumStagioneCorrente();
         if (newSeason != lastCheckedSeason) {
             plugin.getLogger().info("Stagione cambiata manualmente a " + newSeason.name() + "!");
+            plugin.getHistory().record(CalendarHistory.Type.SEASON_CHANGE, timeManager.getGiornoAssoluto(), newSeason.name());
             seasonalEffectsManager.handleSeasonChange(newSeason);
             lastCheckedSeason = newSeason;
         }
@@ -149,11 +150,15 @@ public class CalendarTask extends BukkitRunnable {
         long currentTotalDays = world.getFullTime() / DAY_CYCLE_TICKS;
         if (currentTotalDays > lastCheckedTotalDays) {
             long daysPassed = currentTotalDays - lastCheckedTotalDays;
-            for (int i = 0; i < daysPassed; i++) {
-                timeManager.advanceDayWithBroadcast();
-                plugin.getEventManager().onNewDay();
-            }
+            // Anche per salti enormi (es. /time add) la data salta direttamente al giorno finale
+            // e l'EventManager riceve l'intero intervallo in una sola chiamata.
+            long firstNewDay = timeManager.getGiornoAssoluto() + 1;
+            timeManager.advanceDaysWithBroadcast(daysPassed);
+            plugin.getEventManager().onDaysPassed(firstNewDay, timeManager.getGiornoAssoluto());
             lastCheckedTotalDays = currentTotalDays;
+            plugin.getHistory().record(CalendarHistory.Type.DAY_CHANGE, timeManager.getGiornoAssoluto(), "+" + daysPassed);
+            // Salvataggio in background a ogni cambio di giorno, per non perdere giorni in caso di crash.
+            timeManager.saveDataAsync();
 
             int newMonth = timeManager.getMeseCorrente();
             if (newMonth != cachedMonth) {
@@ -161,11 +166,14 @@ public class CalendarTask extends BukkitRunnable {
                 TimeManager.Stagione newSeason = timeManager.getEnumStagioneCorrente();
                 if (newSeason != lastCheckedSeason) {
                     plugin.getLogger().info("La stagione è cambiata da " + lastCheckedSeason.name() + " a " + newSeason.name() + "!");
+                    plugin.getHistory().record(CalendarHistory.Type.SEASON_CHANGE, timeManager.getGiornoAssoluto(), newSeason.name());
                     seasonalEffectsManager.handleSeasonChange(newSeason);
                     lastCheckedSeason = newSeason;
                 }
             }
         }
+        // Dopo il cambio di giorno, così i clock-triggers degli eventi appena avviati partono già da questo tick.
+        plugin.getEventManager().advanceClock(world.getFullTime());
         bossBarManager.updateBossBars();
     }
 }
\ No newline at end of file
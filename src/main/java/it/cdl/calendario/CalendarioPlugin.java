@@ -4,6 +4,7 @@ import org.bukkit.GameRule;
 import org.bukkit.World;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
@@ -21,6 +22,7 @@ public final class CalendarioPlugin extends JavaPlugin {
     private SeasonalEffectsManager seasonalEffectsManager;
     private EventManager eventManager;
     private LanguageManager languageManager;
+    private CalendarHistory history;
     private CalendarTask mainTaskInstance;
 
     private boolean debugMode;
@@ -112,10 +114,14 @@ public final class CalendarioPlugin extends JavaPlugin {
      * Imposta la gamerule per prendere il controllo del ciclo giorno/notte.
      */
     public void startupPluginSystems() {
+        this.history = new CalendarHistory(this);
+        this.history.start();
         this.timeManager = new TimeManager(this);
         // Caricherà i dati da data.yml
         this.bossBarManager = new BossBarManager(this);
         this.seasonalEffectsManager = new SeasonalEffectsManager(this);
+        // Il manager viene ricreato a ogni reload: i suoi listener vanno registrati sull'istanza attiva.
+        this.getServer().getPluginManager().registerEvents(this.seasonalEffectsManager, this);
         this.eventManager = new EventManager(this);
 
         // Disabilita il ciclo giorno/notte di default per prenderne il controllo.
@@ -144,8 +150,18 @@ public final class CalendarioPlugin extends JavaPlugin {
         if (mainTaskInstance != null && !mainTaskInstance.isCancelled()) {
             mainTaskInstance.cancel();
         }
+        if (eventManager != null) {
+            eventManager.shutdown();
+        }
+        if (timeManager != null) {
+            timeManager.shutdown();
+        }
+        if (history != null) {
+            history.close();
+        }
         if (seasonalEffectsManager != null) {
-            seasonalEffectsManager.stopAllEffects();
+            seasonalEffectsManager.shutdown();
+            HandlerList.unregisterAll(seasonalEffectsManager);
         }
         if (bossBarManager != null) {
             bossBarManager.removeAllPlayers();
@@ -164,7 +180,6 @@ public final class CalendarioPlugin extends JavaPlugin {
         this.getServer().getPluginManager().registerEvents(new PlayerConnectionListener(this), this);
         this.getServer().getPluginManager().registerEvents(new CropGrowthListener(this), this);
         this.getServer().getPluginManager().registerEvents(new SleepListener(this), this);
-        this.getServer().getPluginManager().registerEvents(this.seasonalEffectsManager, this);
 
         PluginCommand calendarCommand = this.getCommand("calendario");
         if (calendarCommand != null) {
@@ -203,6 +218,7 @@ public final class CalendarioPlugin extends JavaPlugin {
     public EventManager getEventManager() { return eventManager; }
     public LanguageManager getLanguageManager() { return languageManager;
     }
+    public CalendarHistory getHistory() { return history; }
     public CalendarTask getMainTaskInstance() { return mainTaskInstance; }
     public boolean isDebugMode() { return this.debugMode;
     }
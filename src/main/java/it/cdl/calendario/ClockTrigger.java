@@ -0,0 +1,104 @@
+package it.cdl.calendario;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Azioni da eseguire a un orario del giorno di gioco o a intervalli regolari, compilate da
+ * {@code events.yml} (voci {@code clock-triggers}) e pianificate nella {@link TimingWheel}
+ * dell'{@link EventManager}. Le esecuzioni cadono sui tick {@code t} con
+ * {@code t % periodTicks == offsetTicks}, contati sul tempo totale del mondo principale:
+ * sono quindi allineate all'orologio del gioco e sopravvivono ai riavvii.
+ *
+ * @param id          Un nome per i messaggi e per la corsia dei comandi.
+ * @param offsetTicks Lo scostamento all'interno del periodo (es. l'orario di {@code at}).
+ * @param periodTicks Il periodo in tick (almeno 1).
+ * @param condition   La condizione da verificare al momento dell'esecuzione.
+ * @param actions     Le azioni compilate.
+ */
+public record ClockTrigger(String id, long offsetTicks, long periodTicks, EventCondition condition,
+                           List<EventAction.Scheduled> actions) {
+
+    /**
+     * Tick in un giorno di gioco.
+     */
+    public static final long TICKS_PER_DAY = 24000L;
+    /**
+     * Tick in un'ora di gioco.
+     */
+    public static final long TICKS_PER_HOUR = 1000L;
+
+    public ClockTrigger {
+        if (periodTicks < 1) {
+            throw new IllegalArgumentException("the period must be at least 1 tick");
+        }
+        offsetTicks = Math.floorMod(offsetTicks, periodTicks);
+        actions = List.copyOf(actions);
+    }
+
+    /**
+     * Calcola il primo tick di esecuzione successivo a un tick dato.
+     *
+     * @param tick Il tick assoluto di partenza (escluso).
+     * @return Il primo tick assoluto di esecuzione dopo {@code tick}.
+     */
+    public long nextTickAfter(long tick) {
+        long candidate = tick - Math.floorMod(tick, periodTicks) + offsetTicks;
+        return candidate > tick ? candidate : candidate + periodTicks;
+    }
+
+    /**
+     * Converte un orario di gioco {@code HH:MM} nel tick corrispondente all'interno del giorno.
+     * In Minecraft il tick 0 corrisponde alle 06:00.
+     *
+     * @param time L'orario, es. {@code "18:00"}.
+     * @return Il tick del giorno (0-23999).
+     * @throws IllegalArgumentException Se l'orario non è valido.
+     */
+    public static long parseTimeOfDay(String time) {
+        String[] parts = time.trim().split(":");
+        try {
+            int hours = Integer.parseInt(parts[0]);
+            int minutes = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            if (parts.length > 2 || hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+                throw new IllegalArgumentException("invalid time '" + time + "' (expected HH:MM)");
+            }
+            return Math.floorMod(hours - 6, 24) * TICKS_PER_HOUR + minutes * TICKS_PER_HOUR / 60;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid time '" + time + "' (expected HH:MM)");
+        }
+    }
+
+    /**
+     * Converte una durata di gioco in tick: un numero seguito da {@code d} (giorni), {@code h} (ore),
+     * {@code m} (minuti) o {@code t} (tick), es. {@code "3h"}.
+     *
+     * @param duration La durata.
+     * @return La durata in tick (almeno 1).
+     * @throws IllegalArgumentException Se la durata non è valida.
+     */
+    public static long parseDuration(String duration) {
+        String text = duration.trim().toLowerCase(Locale.ROOT);
+        if (text.length() < 2) {
+            throw new IllegalArgumentException("invalid duration '" + duration + "' (e.g. 3h, 30m, 2d, 500t)");
+        }
+        long unit = switch (text.charAt(text.length() - 1)) {
+            case 'd' -> TICKS_PER_DAY;
+            case 'h' -> TICKS_PER_HOUR;
+            case 'm' -> -1;
+            case 't' -> 1;
+            default -> throw new IllegalArgumentException("invalid duration '" + duration + "' (e.g. 3h, 30m, 2d, 500t)");
+        };
+        long amount;
+        try {
+            amount = Long.parseLong(text.substring(0, text.length() - 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid duration '" + duration + "' (e.g. 3h, 30m, 2d, 500t)");
+        }
+        long ticks = unit == -1 ? amount * TICKS_PER_HOUR / 60 : amount * unit;
+        if (ticks < 1) {
+            throw new IllegalArgumentException("duration '" + duration + "' must be at least 1 tick");
+        }
+        return ticks;
+    }
+}
@@ -0,0 +1,194 @@
+package it.cdl.calendario;
+
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Coda delle azioni di inizio e fine degli eventi (comandi e azioni tipizzate, vedi {@link EventAction}).
+ * Invece di eseguire tutte le azioni nello stesso tick del cambio di giorno, le distribuisce
+ * su più tick: un task eseguito a ogni tick le esegue finché non esaurisce il budget di tempo configurato.
+ * <p>
+ * Le azioni di ogni evento formano una "corsia" separata ed eseguita rigorosamente in ordine:
+ * le azioni di fine di un evento non partono mai prima di quelle di inizio ancora in coda.
+ * Un'azione con un ritardo attende il numero di tick indicato dopo l'azione precedente
+ * della stessa corsia; l'attesa non blocca le corsie degli altri eventi.
+ * Una corsia può inoltre attendere una condizione esterna (la scrittura su disco della voce
+ * di {@link EventJournal} corrispondente) prima di eseguire qualsiasi azione.
+ * <p>
+ * Un'azione può a sua volta accodarne altre (es. {@code calendario set day} avvia nuovi eventi):
+ * le corsie vengono quindi scorse su una copia delle chiavi e quelle nuove vengono servite dal giro successivo.
+ */
+public class CommandDispatchQueue extends BukkitRunnable {
+
+    private final CalendarioPlugin plugin;
+
+    /**
+     * Corsie delle azioni in attesa, per ID dell'evento, nell'ordine di arrivo.
+     */
+    private final Map<String, Lane> lanes = new LinkedHashMap<>();
+
+    /**
+     * Budget di tempo per tick, in nanosecondi, letto da config.yml in microsecondi.
+     */
+    private final long tickBudgetNanos;
+
+    private long currentTick = 0;
+
+    // --- Contatori per le statistiche ---
+    private int pending = 0;
+    private long totalExecuted = 0;
+    private long totalFailed = 0;
+    private long executedSinceLastSample = 0;
+    private int ticksSinceLastSample = 0;
+    private long executedPerSecond = 0;
+
+    /**
+     * Costruttore della coda. Legge il budget per tick dal config.yml.
+     *
+     * @param plugin L'istanza principale del plugin.
+     */
+    public CommandDispatchQueue(CalendarioPlugin plugin) {
+        this.plugin = plugin;
+        this.tickBudgetNanos = Math.max(50L, plugin.getConfig().getLong("events.dispatch.tick-budget-micros", 2000L)) * 1000L;
+    }
+
+    /**
+     * Avvia il task di esecuzione delle azioni, eseguito a ogni tick.
+     */
+    public void start() {
+        runTaskTimer(plugin, 1L, 1L);
+    }
+
+    /**
+     * Ferma il task ed esegue subito tutte le azioni rimaste, ignorando le attese,
+     * così che le azioni di fine degli eventi non vadano perse durante un reload o lo spegnimento.
+     * Vengono eseguite anche le azioni accodate nel frattempo dalle azioni stesse.
+     */
+    public void stop() {
+        if (!isCancelled()) {
+            cancel();
+        }
+        while (!lanes.isEmpty()) {
+            for (String eventId : List.copyOf(lanes.keySet())) {
+                Lane lane = lanes.remove(eventId);
+                if (lane == null) continue;
+                lane.barrier.join();
+                while (!lane.actions.isEmpty()) {
+                    dispatch(lane.actions.poll().action());
+                }
+            }
+        }
+        pending = 0;
+    }
+
+    /**
+     * Accoda le azioni di un evento in fondo alla sua corsia.
+     * Deve essere chiamato dal thread principale.
+     *
+     * @param eventId L'ID dell'evento, che identifica la corsia.
+     * @param actions Le azioni compilate da accodare, con i rispettivi ritardi.
+     * @param barrier Condizione da attendere prima di eseguire le azioni della corsia; le condizioni
+     *                successive devono completarsi dopo le precedenti, come le scritture del registro.
+     */
+    public void enqueue(String eventId, List<EventAction.Scheduled> actions, CompletableFuture<?> barrier) {
+        if (actions.isEmpty()) return;
+        Lane lane = lanes.computeIfAbsent(eventId, id -> new Lane());
+        lane.actions.addAll(actions);
+        lane.barrier = barrier;
+        pending += actions.size();
+    }
+
+    /**
+     * Esegue le azioni pronte fino all'esaurimento del budget del tick corrente.
+     * Viene sempre eseguita almeno un'azione pronta per garantire l'avanzamento.
+     */
+    @Override
+    public void run() {
+        currentTick++;
+        sampleRate();
+        if (pending == 0) return;
+
+        long deadline = System.nanoTime() + tickBudgetNanos;
+        boolean first = true;
+        for (String eventId : List.copyOf(lanes.keySet())) {
+            Lane lane = lanes.get(eventId);
+            // La corsia può essere stata svuotata da un'azione che ha fermato la coda (es. un reload).
+            if (lane == null) continue;
+            // La voce del registro non è ancora su disco: la corsia riprova al prossimo tick.
+            if (!lane.barrier.isDone()) continue;
+            while (!lane.actions.isEmpty()) {
+                EventAction.Scheduled next = lane.actions.peek();
+                if (next.delayTicks() > 0) {
+                    // L'attesa parte quando l'azione arriva in testa alla corsia.
+                    if (lane.readyAtTick < 0) {
+                        lane.readyAtTick = currentTick + next.delayTicks();
+                    }
+                    if (currentTick < lane.readyAtTick) break;
+                }
+                if (!first && System.nanoTime() >= deadline) return;
+                first = false;
+
+                lane.actions.poll();
+                lane.readyAtTick = -1;
+                pending--;
+                dispatch(next.action());
+            }
+            if (lane.actions.isEmpty()) {
+                lanes.remove(eventId, lane);
+            }
+        }
+    }
+
+    private void dispatch(EventAction action) {
+        try {
+            action.execute();
+            totalExecuted++;
+            executedSinceLastSample++;
+        } catch (Exception e) {
+            // Un'azione fallita non deve bloccare il resto della corsia.
+            totalFailed++;
+            String description = action instanceof EventAction.CommandAction command
+                    ? command.command() : action.getClass().getSimpleName();
+            plugin.getLogger().warning(plugin.getLanguageManager().getString("logs.action-failed",
+                    "{action}", description, "{error}", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * Aggiorna la velocità di esecuzione (azioni al secondo) ogni 20 tick.
+     */
+    private void sampleRate() {
+        if (++ticksSinceLastSample >= 20) {
+            executedPerSecond = executedSinceLastSample;
+            executedSinceLastSample = 0;
+            ticksSinceLastSample = 0;
+        }
+    }
+
+    // --- Metodi Getter per le statistiche ---
+
+    public int getPending() { return pending; }
+    public long getExecutedPerSecond() { return executedPerSecond; }
+    public long getTotalExecuted() { return totalExecuted; }
+    public long getTotalFailed() { return totalFailed; }
+
+    /**
+     * Corsia delle azioni di un evento.
+     */
+    private static final class Lane {
+        private final ArrayDeque<EventAction.Scheduled> actions = new ArrayDeque<>();
+        /**
+         * Tick a partire dal quale l'azione in testa può essere eseguita, o -1 se l'attesa non è ancora iniziata.
+         */
+        private long readyAtTick = -1;
+        /**
+         * Condizione da attendere prima di eseguire le azioni della corsia.
+         */
+        private CompletableFuture<?> barrier = CompletableFuture.completedFuture(null);
+    }
+}
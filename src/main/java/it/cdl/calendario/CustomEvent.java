@@ -6,6 +6,13 @@ import java.util.Set;
 /**
  * Record che rappresenta un singolo evento personalizzato caricato da events.yml.
  * Essendo immutabile, è un modo sicuro per contenere i dati di un evento.
+ * Le azioni di inizio e fine sono già compilate da {@link EventActionParser}.
+ * Il campo {@code group} è vuoto se l'evento non appartiene a un gruppo di mutua esclusione.
+ * Le stagioni ammesse sono già convertite in enum e la condizione {@code conditions.when} è già
+ * compilata da {@link EventConditionParser} ({@link EventCondition#ALWAYS} se assente).
+ * I {@code clockTriggers} vengono eseguiti solo mentre l'evento è in corso.
+ * Le {@code rewards} contengono solo azioni per singolo giocatore e vengono consegnate una volta
+ * a ogni giocatore presente durante l'evento, anche se entra a evento già iniziato (vedi {@link RewardLedger}).
  */
 public record CustomEvent(
         String id,
@@ -13,8 +20,12 @@ public record CustomEvent(
         String type,
         String triggerDate,
         int chance,
-        Set<String> seasons,
+        Set<TimeManager.Stagione> seasons,
+        EventCondition condition,
+        List<ClockTrigger> clockTriggers,
         int durationDays,
-        List<String> startCommands,
-        List<String> endCommands
+        List<EventAction.Scheduled> startActions,
+        List<EventAction.Scheduled> endActions,
+        List<EventAction.Scheduled> rewards,
+        String group
 ) {}
\ No newline at end of file
@@ -0,0 +1,297 @@
+package it.cdl.calendario;
+
+import net.kyori.adventure.sound.Sound;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.title.Title;
+import org.bukkit.Bukkit;
+import org.bukkit.GameRule;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+
+import java.util.List;
+
+/**
+ * Azione di un evento, compilata una sola volta al caricamento di {@code events.yml}
+ * da {@link EventActionParser} ed eseguita direttamente con le API di Paper,
+ * senza passare dal parsing dei comandi della console.
+ * Tutte le implementazioni sono immutabili e vanno eseguite sul thread principale.
+ */
+public sealed interface EventAction {
+
+    /**
+     * Esegue l'azione.
+     */
+    void execute();
+
+    /**
+     * Esegue l'azione per un solo giocatore, ad esempio per consegnare una ricompensa a chi entra
+     * durante un evento. Le azioni che riguardano il mondo (meteo, game rule) non fanno nulla.
+     *
+     * @param player Il giocatore destinatario.
+     */
+    default void executeFor(Player player) {
+    }
+
+    /**
+     * Indica se l'azione può essere eseguita per un singolo giocatore con {@link #executeFor(Player)}.
+     * @return {@code true} per le azioni che riguardano i giocatori.
+     */
+    default boolean isPerPlayer() {
+        return false;
+    }
+
+    /**
+     * Comando della console, usato per tutto ciò che non ha un'azione dedicata.
+     * Se contiene {@value #PLAYER_PLACEHOLDER}, viene eseguito una volta per ogni giocatore online
+     * con il suo nome al posto del segnaposto.
+     *
+     * @param command Il comando da eseguire, senza la barra iniziale.
+     */
+    record CommandAction(String command) implements EventAction {
+
+        /**
+         * Segnaposto sostituito con il nome del giocatore.
+         */
+        public static final String PLAYER_PLACEHOLDER = "{player}";
+
+        @Override
+        public void execute() {
+            if (!isPerPlayer()) {
+                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+                return;
+            }
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                executeFor(player);
+            }
+        }
+
+        @Override
+        public void executeFor(Player player) {
+            if (isPerPlayer()) {
+                Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command.replace(PLAYER_PLACEHOLDER, player.getName()));
+            }
+        }
+
+        @Override
+        public boolean isPerPlayer() {
+            return command.contains(PLAYER_PLACEHOLDER);
+        }
+    }
+
+    /**
+     * Messaggio inviato a tutti i giocatori e alla console.
+     *
+     * @param message Il messaggio già convertito in componente.
+     */
+    record BroadcastAction(Component message) implements EventAction {
+        @Override
+        public void execute() {
+            Bukkit.broadcast(message);
+        }
+
+        @Override
+        public void executeFor(Player player) {
+            player.sendMessage(message);
+        }
+
+        @Override
+        public boolean isPerPlayer() {
+            return true;
+        }
+    }
+
+    /**
+     * Titolo mostrato a tutti i giocatori online.
+     *
+     * @param title Il titolo già compilato, con sottotitolo e tempi.
+     */
+    record TitleAction(Title title) implements EventAction {
+        @Override
+        public void execute() {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                executeFor(player);
+            }
+        }
+
+        @Override
+        public void executeFor(Player player) {
+            player.showTitle(title);
+        }
+
+        @Override
+        public boolean isPerPlayer() {
+            return true;
+        }
+    }
+
+    /**
+     * Oggetto dato a tutti i giocatori online. Ciò che non entra nell'inventario viene lasciato a terra.
+     *
+     * @param material Il materiale dell'oggetto.
+     * @param amount   La quantità.
+     */
+    record GiveItemAction(Material material, int amount) implements EventAction {
+        @Override
+        public void execute() {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                executeFor(player);
+            }
+        }
+
+        @Override
+        public void executeFor(Player player) {
+            for (ItemStack leftover : player.getInventory().addItem(new ItemStack(material, amount)).values()) {
+                player.getWorld().dropItemNaturally(player.getLocation(), leftover);
+            }
+        }
+
+        @Override
+        public boolean isPerPlayer() {
+            return true;
+        }
+    }
+
+    /**
+     * Effetto di pozione applicato a tutti i giocatori online.
+     *
+     * @param type          Il tipo di effetto.
+     * @param durationTicks La durata in tick.
+     * @param amplifier     Il livello dell'effetto (0 = livello I).
+     * @param particles     Se {@code false}, le particelle dell'effetto vengono nascoste.
+     */
+    record PotionAction(PotionEffectType type, int durationTicks, int amplifier, boolean particles) implements EventAction {
+        @Override
+        public void execute() {
+            PotionEffect effect = new PotionEffect(type, durationTicks, amplifier, false, particles);
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                player.addPotionEffect(effect);
+            }
+        }
+
+        @Override
+        public void executeFor(Player player) {
+            player.addPotionEffect(new PotionEffect(type, durationTicks, amplifier, false, particles));
+        }
+
+        @Override
+        public boolean isPerPlayer() {
+            return true;
+        }
+    }
+
+    /**
+     * Rimozione di un effetto di pozione da tutti i giocatori online.
+     *
+     * @param type Il tipo di effetto da rimuovere.
+     */
+    record ClearPotionAction(PotionEffectType type) implements EventAction {
+        @Override
+        public void execute() {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                executeFor(player);
+            }
+        }
+
+        @Override
+        public void executeFor(Player player) {
+            player.removePotionEffect(type);
+        }
+
+        @Override
+        public boolean isPerPlayer() {
+            return true;
+        }
+    }
+
+    /**
+     * Cambio del meteo nel mondo principale, come il comando {@code weather} eseguito dalla console.
+     *
+     * @param weather       Il meteo da impostare.
+     * @param durationTicks La durata in tick, o 0 per lasciarla decidere al gioco.
+     */
+    record WeatherAction(Weather weather, int durationTicks) implements EventAction {
+        @Override
+        public void execute() {
+            List<World> worlds = Bukkit.getWorlds();
+            if (worlds.isEmpty()) return;
+            World world = worlds.get(0);
+            switch (weather) {
+                case CLEAR -> {
+                    world.setStorm(false);
+                    world.setThundering(false);
+                    if (durationTicks > 0) world.setClearWeatherDuration(durationTicks);
+                }
+                case RAIN -> {
+                    world.setStorm(true);
+                    world.setThundering(false);
+                    if (durationTicks > 0) world.setWeatherDuration(durationTicks);
+                }
+                case THUNDER -> {
+                    world.setStorm(true);
+                    world.setThundering(true);
+                    if (durationTicks > 0) {
+                        world.setWeatherDuration(durationTicks);
+                        world.setThunderDuration(durationTicks);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Tipi di meteo supportati da {@link WeatherAction}.
+     */
+    enum Weather { CLEAR, RAIN, THUNDER }
+
+    /**
+     * Modifica di una game rule in tutti i mondi.
+     *
+     * @param rule  La game rule.
+     * @param value Il valore, già convertito nel tipo della regola.
+     * @param <T>   Il tipo dei valori della regola.
+     */
+    record GameRuleAction<T>(GameRule<T> rule, T value) implements EventAction {
+        @Override
+        public void execute() {
+            for (World world : Bukkit.getWorlds()) {
+                world.setGameRule(rule, value);
+            }
+        }
+    }
+
+    /**
+     * Suono riprodotto a tutti i giocatori online, nella loro posizione.
+     *
+     * @param sound Il suono già compilato, con volume e tono.
+     */
+    record SoundAction(Sound sound) implements EventAction {
+        @Override
+        public void execute() {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                executeFor(player);
+            }
+        }
+
+        @Override
+        public void executeFor(Player player) {
+            player.playSound(sound);
+        }
+
+        @Override
+        public boolean isPerPlayer() {
+            return true;
+        }
+    }
+
+    /**
+     * Azione da eseguire dopo un certo numero di tick dall'azione precedente dello stesso evento.
+     *
+     * @param action     L'azione da eseguire.
+     * @param delayTicks Il ritardo in tick (0 = subito).
+     */
+    record Scheduled(EventAction action, long delayTicks) {}
+}
@@ -0,0 +1,205 @@
+package it.cdl.calendario;
+
+import net.kyori.adventure.key.Key;
+import net.kyori.adventure.sound.Sound;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import net.kyori.adventure.title.Title;
+import org.bukkit.GameRule;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.potion.PotionEffectType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compila le azioni degli eventi definite in {@code events.yml} in oggetti {@link EventAction} immutabili.
+ * Ogni azione della lista {@code start-actions}/{@code end-actions} è una mappa con una chiave che ne
+ * indica il tipo ({@code broadcast}, {@code title}, {@code give}, {@code potion}, {@code clear-potion},
+ * {@code weather}, {@code gamerule}, {@code sound}, {@code command}) più eventuali opzioni, tra cui
+ * {@code delay} (in tick). Le stringhe di {@code start-commands}/{@code end-commands} diventano azioni
+ * di tipo comando, con l'eventuale prefisso {@code [delay:N]}.
+ * Le azioni non valide vengono scartate con un avviso, così l'errore emerge al caricamento
+ * e non durante l'esecuzione dell'evento.
+ */
+public class EventActionParser {
+
+    private static final String DELAY_PREFIX = "[delay:";
+    private static final LegacyComponentSerializer LEGACY = LegacyComponentSerializer.legacyAmpersand();
+
+    private final CalendarioPlugin plugin;
+
+    /**
+     * Costruttore del parser.
+     * @param plugin L'istanza principale del plugin, usata per segnalare le azioni non valide.
+     */
+    public EventActionParser(CalendarioPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Compila le azioni e i comandi di una fase (inizio o fine) di un evento.
+     * Le azioni tipizzate vengono eseguite prima dei comandi, nell'ordine in cui sono scritte.
+     *
+     * @param eventId  L'ID dell'evento, per i messaggi di errore.
+     * @param actions  Le mappe della lista {@code start-actions} o {@code end-actions}.
+     * @param commands Le stringhe della lista {@code start-commands} o {@code end-commands}.
+     * @return La lista immutabile delle azioni compilate.
+     */
+    public List<EventAction.Scheduled> compile(String eventId, List<Map<?, ?>> actions, List<String> commands) {
+        List<EventAction.Scheduled> compiled = new ArrayList<>(actions.size() + commands.size());
+        for (Map<?, ?> action : actions) {
+            try {
+                compiled.add(compileAction(action));
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning(plugin.getLanguageManager().getString("logs.invalid-action",
+                        "{event}", eventId, "{action}", String.valueOf(action), "{error}", String.valueOf(e.getMessage())));
+            }
+        }
+        for (String command : commands) {
+            compiled.add(compileCommand(command));
+        }
+        return List.copyOf(compiled);
+    }
+
+    /**
+     * Compila la lista {@code rewards} di un evento: le stesse azioni di {@code start-actions}, ma solo
+     * quelle che possono essere consegnate a un singolo giocatore (i comandi devono contenere
+     * {@value EventAction.CommandAction#PLAYER_PLACEHOLDER}). Le altre vengono scartate con un avviso.
+     *
+     * @param eventId L'ID dell'evento, per i messaggi di errore.
+     * @param rewards Le mappe della lista {@code rewards}.
+     * @return La lista immutabile delle ricompense compilate.
+     */
+    public List<EventAction.Scheduled> compileRewards(String eventId, List<Map<?, ?>> rewards) {
+        List<EventAction.Scheduled> compiled = new ArrayList<>(rewards.size());
+        for (EventAction.Scheduled reward : compile(eventId, rewards, List.of())) {
+            if (reward.action().isPerPlayer()) {
+                compiled.add(reward);
+            } else {
+                plugin.getLogger().warning(plugin.getLanguageManager().getString("logs.invalid-reward",
+                        "{event}", eventId, "{action}", String.valueOf(reward.action())));
+            }
+        }
+        return List.copyOf(compiled);
+    }
+
+    /**
+     * Compila una stringa di {@code start-commands}/{@code end-commands}, separando l'eventuale
+     * prefisso {@code [delay:N]}. Un prefisso malformato viene lasciato nel comando.
+     */
+    private static EventAction.Scheduled compileCommand(String raw) {
+        String command = raw.trim();
+        if (command.regionMatches(true, 0, DELAY_PREFIX, 0, DELAY_PREFIX.length())) {
+            int end = command.indexOf(']');
+            if (end > DELAY_PREFIX.length()) {
+                try {
+                    long delay = Long.parseLong(command.substring(DELAY_PREFIX.length(), end).trim());
+                    return new EventAction.Scheduled(new EventAction.CommandAction(command.substring(end + 1).trim()), Math.max(0, delay));
+                } catch (NumberFormatException ignored) {
+                    // Ritardo non numerico: il comando viene inviato così com'è.
+                }
+            }
+        }
+        return new EventAction.Scheduled(new EventAction.CommandAction(command), 0);
+    }
+
+    private static EventAction.Scheduled compileAction(Map<?, ?> map) {
+        long delay = Math.max(0, getInt(map, "delay", 0));
+        EventAction action;
+        if (map.containsKey("broadcast")) {
+            action = new EventAction.BroadcastAction(LEGACY.deserialize(getString(map, "broadcast")));
+        } else if (map.containsKey("title")) {
+            Component subtitle = map.containsKey("subtitle") ? LEGACY.deserialize(getString(map, "subtitle")) : Component.empty();
+            Title.Times times = Title.Times.times(
+                    ticks(getInt(map, "fade-in", 10)), ticks(getInt(map, "stay", 70)), ticks(getInt(map, "fade-out", 20)));
+            action = new EventAction.TitleAction(Title.title(LEGACY.deserialize(getString(map, "title")), subtitle, times));
+        } else if (map.containsKey("give")) {
+            Material material = Material.matchMaterial(getString(map, "give"));
+            if (material == null || !material.isItem()) {
+                throw new IllegalArgumentException("unknown item '" + getString(map, "give") + "'");
+            }
+            action = new EventAction.GiveItemAction(material, Math.max(1, getInt(map, "amount", 1)));
+        } else if (map.containsKey("potion")) {
+            action = new EventAction.PotionAction(potionType(getString(map, "potion")),
+                    getInt(map, "duration-seconds", 30) * 20, Math.max(0, getInt(map, "amplifier", 0)),
+                    !Boolean.parseBoolean(String.valueOf(map.get("hide-particles"))));
+        } else if (map.containsKey("clear-potion")) {
+            action = new EventAction.ClearPotionAction(potionType(getString(map, "clear-potion")));
+        } else if (map.containsKey("weather")) {
+            EventAction.Weather weather = EventAction.Weather.valueOf(getString(map, "weather").toUpperCase(Locale.ROOT));
+            action = new EventAction.WeatherAction(weather, getInt(map, "duration-seconds", 0) * 20);
+        } else if (map.containsKey("gamerule")) {
+            GameRule<?> rule = GameRule.getByName(getString(map, "gamerule"));
+            if (rule == null) {
+                throw new IllegalArgumentException("unknown game rule '" + getString(map, "gamerule") + "'");
+            }
+            action = gameRuleAction(rule, getString(map, "value"));
+        } else if (map.containsKey("sound")) {
+            Key key = Key.key(getString(map, "sound").toLowerCase(Locale.ROOT));
+            float volume = (float) getDouble(map, "volume", 1.0);
+            float pitch = (float) getDouble(map, "pitch", 1.0);
+            action = new EventAction.SoundAction(Sound.sound(key, Sound.Source.MASTER, volume, pitch));
+        } else if (map.containsKey("command")) {
+            action = new EventAction.CommandAction(getString(map, "command").trim());
+        } else {
+            throw new IllegalArgumentException("unknown action type");
+        }
+        return new EventAction.Scheduled(action, delay);
+    }
+
+    private static <T> EventAction.GameRuleAction<T> gameRuleAction(GameRule<T> rule, String rawValue) {
+        Object value;
+        if (rule.getType() == Boolean.class) {
+            if (!rawValue.equalsIgnoreCase("true") && !rawValue.equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException("value '" + rawValue + "' is not true/false");
+            }
+            value = Boolean.parseBoolean(rawValue);
+        } else if (rule.getType() == Integer.class) {
+            value = Integer.parseInt(rawValue);
+        } else {
+            throw new IllegalArgumentException("unsupported game rule type");
+        }
+        return new EventAction.GameRuleAction<>(rule, rule.getType().cast(value));
+    }
+
+    private static PotionEffectType potionType(String name) {
+        NamespacedKey key = NamespacedKey.fromString(name.toLowerCase(Locale.ROOT));
+        PotionEffectType type = key != null ? Registry.EFFECT.get(key) : null;
+        if (type == null) {
+            throw new IllegalArgumentException("unknown potion effect '" + name + "'");
+        }
+        return type;
+    }
+
+    private static Duration ticks(int ticks) {
+        return Duration.ofMillis(Math.max(0, ticks) * 50L);
+    }
+
+    private static String getString(Map<?, ?> map, String key) {
+        Object value = map.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("missing '" + key + "'");
+        }
+        return String.valueOf(value);
+    }
+
+    private static int getInt(Map<?, ?> map, String key, int def) {
+        Object value = map.get(key);
+        if (value == null) return def;
+        if (value instanceof Number number) return number.intValue();
+        return Integer.parseInt(String.valueOf(value).trim());
+    }
+
+    private static double getDouble(Map<?, ?> map, String key, double def) {
+        Object value = map.get(key);
+        if (value == null) return def;
+        if (value instanceof Number number) return number.doubleValue();
+        return Double.parseDouble(String.valueOf(value).trim());
+    }
+}
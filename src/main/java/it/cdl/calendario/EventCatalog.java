@@ -0,0 +1,321 @@
+package it.cdl.calendario;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Insieme immutabile delle definizioni degli eventi lette da {@code events.yml}, con l'indice delle
+ * date e le tabelle alias degli eventi RANDOM già costruiti. Può essere compilato su un thread
+ * qualsiasi e viene sostituito in blocco da {@link EventManager}, così chi lo legge vede sempre
+ * la versione precedente o quella nuova, mai uno stato intermedio.
+ * <p>
+ * Le definizioni identiche a quelle del catalogo precedente vengono riutilizzate così come sono:
+ * dopo un ricaricamento cambiano solo gli oggetti degli eventi effettivamente modificati.
+ */
+public final class EventCatalog {
+
+    /**
+     * Catalogo senza eventi, usato come base per il primo caricamento.
+     */
+    public static final EventCatalog EMPTY = new EventCatalog(Map.of(), new EventDateIndex(), Map.of(), List.of(), 0, 0);
+
+    /**
+     * Differenza tra due cataloghi.
+     *
+     * @param added     Gli ID degli eventi nuovi.
+     * @param changed   Gli ID degli eventi con una definizione diversa.
+     * @param removed   Gli ID degli eventi non più presenti.
+     */
+    public record Diff(List<String> added, List<String> changed, List<String> removed) {
+        /**
+         * Indica se i due cataloghi hanno le stesse definizioni.
+         * @return {@code true} se non è cambiato nulla.
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private final Map<String, CustomEvent> events;
+    private final EventDateIndex dateIndex;
+    private final Map<TimeManager.Stagione, AliasTable<CustomEvent>> randomTables;
+    private final List<ClockTrigger> globalTriggers;
+    private final int compiledConditions;
+    private final long checksum;
+
+    private EventCatalog(Map<String, CustomEvent> events, EventDateIndex dateIndex,
+                         Map<TimeManager.Stagione, AliasTable<CustomEvent>> randomTables, List<ClockTrigger> globalTriggers,
+                         int compiledConditions, long checksum) {
+        this.events = events;
+        this.dateIndex = dateIndex;
+        this.randomTables = randomTables;
+        this.globalTriggers = globalTriggers;
+        this.compiledConditions = compiledConditions;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Compila tutti gli eventi della sezione {@code events} di un file già letto.
+     * Gli eventi con una data o una condizione non valida vengono scartati con un avviso, così come
+     * le singole voci {@code clock-triggers} non valide.
+     * Non modifica nessuno stato condiviso, quindi può essere chiamato fuori dal thread principale.
+     *
+     * @param plugin   L'istanza principale del plugin, usata per i messaggi.
+     * @param config   Il contenuto di {@code events.yml}.
+     * @param previous Il catalogo in uso, di cui vengono riutilizzate le definizioni invariate.
+     * @param checksum Il CRC32 del contenuto del file, per riconoscere i salvataggi senza modifiche.
+     * @return Il nuovo catalogo.
+     */
+    public static EventCatalog compile(CalendarioPlugin plugin, YamlConfiguration config, EventCatalog previous, long checksum) {
+        Map<String, CustomEvent> events = new LinkedHashMap<>();
+        EventDateIndex dateIndex = new EventDateIndex();
+        int compiledConditions = 0;
+        EventActionParser actionParser = new EventActionParser(plugin);
+        EventConditionParser conditionParser = new EventConditionParser();
+        LanguageManager lang = plugin.getLanguageManager();
+        List<ClockTrigger> globalTriggers = compileClockTriggers(plugin, "clock-triggers", config.getMapList("clock-triggers"),
+                actionParser, conditionParser);
+        ConfigurationSection eventsSection = config.getConfigurationSection("events");
+        if (eventsSection == null) {
+            return new EventCatalog(Map.of(), dateIndex, Map.of(), globalTriggers, 0, checksum);
+        }
+
+        for (String eventId : eventsSection.getKeys(false)) {
+            ConfigurationSection eventData = eventsSection.getConfigurationSection(eventId);
+            if (eventData == null) continue;
+
+            String expression = eventData.getString("conditions.when", "").trim();
+            EventCondition condition = EventCondition.ALWAYS;
+            if (!expression.isEmpty()) {
+                try {
+                    condition = conditionParser.parse(expression);
+                } catch (IllegalArgumentException e) {
+                    plugin.getLogger().warning(lang.getString("logs.invalid-condition",
+                            "{event}", eventId, "{condition}", expression, "{error}", String.valueOf(e.getMessage())));
+                    continue;
+                }
+            }
+
+            CustomEvent event = new CustomEvent(
+                    eventId.toLowerCase(),
+                    eventData.getString("display-name", "Nameless Event"),
+                    eventData.getString("type", "RANDOM").toUpperCase(),
+                    eventData.getString("trigger-date", ""),
+
+                    eventData.getInt("conditions.chance", 0),
+                    parseSeasons(plugin, eventId, eventData.getStringList("conditions.seasons")),
+                    condition,
+                    compileClockTriggers(plugin, eventId, eventData.getMapList("clock-triggers"), actionParser, conditionParser),
+                    eventData.getInt("duration-days", 1),
+                    actionParser.compile(eventId, eventData.getMapList("start-actions"), eventData.getStringList("start-commands")),
+                    actionParser.compile(eventId, eventData.getMapList("end-actions"), eventData.getStringList("end-commands")),
+                    actionParser.compileRewards(eventId, eventData.getMapList("rewards")),
+                    eventData.getString("group", "").toLowerCase()
+
+            );
+            CustomEvent unchanged = previous.events.get(event.id());
+            if (event.equals(unchanged)) {
+                event = unchanged;
+            }
+            if (!dateIndex.add(event)) {
+                plugin.getLogger().warning(lang.getString("logs.invalid-trigger-date",
+                        "{event}", eventId, "{date}", event.triggerDate(), "{type}", event.type()));
+                continue;
+            }
+            events.put(event.id(), event);
+            if (condition != EventCondition.ALWAYS) {
+                compiledConditions++;
+            }
+        }
+        for (String referenced : conditionParser.getReferencedEvents()) {
+            if (!events.containsKey(referenced)) {
+                plugin.getLogger().warning(lang.getString("logs.unknown-condition-event", "{event}", referenced));
+            }
+        }
+        return new EventCatalog(Collections.unmodifiableMap(events), dateIndex,
+                buildRandomTables(events), globalTriggers, compiledConditions, checksum);
+    }
+
+    /**
+     * Compila le voci di una lista {@code clock-triggers}. Ogni voce ha {@code at} (orario {@code HH:MM}, ogni giorno)
+     * e/o {@code every} (periodo, es. {@code 3h}), più {@code when}, {@code actions} e {@code commands} facoltativi.
+     * Le voci non valide vengono scartate con un avviso.
+     */
+    private static List<ClockTrigger> compileClockTriggers(CalendarioPlugin plugin, String owner, List<Map<?, ?>> entries,
+                                                           EventActionParser actionParser, EventConditionParser conditionParser) {
+        List<ClockTrigger> triggers = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Map<?, ?> entry = entries.get(i);
+            String id = entry.containsKey("id") ? String.valueOf(entry.get("id")) : owner + "#" + (i + 1);
+            try {
+                if (!entry.containsKey("at") && !entry.containsKey("every")) {
+                    throw new IllegalArgumentException("'at' or 'every' is required");
+                }
+                long offset = entry.containsKey("at") ? ClockTrigger.parseTimeOfDay(String.valueOf(entry.get("at"))) : 0;
+                long period = entry.containsKey("every") ? ClockTrigger.parseDuration(String.valueOf(entry.get("every"))) : ClockTrigger.TICKS_PER_DAY;
+                EventCondition condition = entry.containsKey("when")
+                        ? conditionParser.parse(String.valueOf(entry.get("when"))) : EventCondition.ALWAYS;
+                triggers.add(new ClockTrigger(id, offset, period, condition,
+                        actionParser.compile(id, mapList(entry.get("actions")), stringList(entry.get("commands")))));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning(plugin.getLanguageManager().getString("logs.invalid-clock-trigger",
+                        "{trigger}", id, "{error}", String.valueOf(e.getMessage())));
+            }
+        }
+        return List.copyOf(triggers);
+    }
+
+    private static List<Map<?, ?>> mapList(Object value) {
+        List<Map<?, ?>> maps = new ArrayList<>();
+        if (value instanceof List<?> list) {
+            for (Object element : list) {
+                if (element instanceof Map<?, ?> map) maps.add(map);
+            }
+        }
+        return maps;
+    }
+
+    private static List<String> stringList(Object value) {
+        List<String> strings = new ArrayList<>();
+        if (value instanceof List<?> list) {
+            for (Object element : list) {
+                if (element != null) strings.add(String.valueOf(element));
+            }
+        }
+        return strings;
+    }
+
+    /**
+     * Converte la lista {@code conditions.seasons} in un insieme di stagioni.
+     * Una lista vuota ammette tutte le stagioni; i nomi sconosciuti vengono ignorati con un avviso.
+     */
+    private static Set<TimeManager.Stagione> parseSeasons(CalendarioPlugin plugin, String eventId, List<String> names) {
+        if (names.isEmpty()) return EnumSet.allOf(TimeManager.Stagione.class);
+        Set<TimeManager.Stagione> seasons = EnumSet.noneOf(TimeManager.Stagione.class);
+        for (String name : names) {
+            try {
+                seasons.add(TimeManager.Stagione.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning(plugin.getLanguageManager().getString("logs.invalid-season",
+                        "{event}", eventId, "{season}", name));
+            }
+        }
+        return seasons;
+    }
+
+    /**
+     * Costruisce una tabella alias per stagione con gli eventi RANDOM ammessi in quella stagione.
+     * <p>
+     * Le probabilità giornaliere sono esatte: se la somma delle {@code chance} della stagione
+     * è al massimo 100, ogni evento parte con probabilità {@code chance/100} e con la probabilità
+     * restante non parte nulla. Se la somma supera 100, un evento parte ogni giorno e le
+     * probabilità vengono scalate in proporzione alle {@code chance}. In ogni caso parte al
+     * massimo un evento RANDOM al giorno. Le condizioni {@code conditions.when} vengono verificate
+     * solo sull'evento estratto: se non sono soddisfatte, quel giorno non parte nessun evento RANDOM.
+     */
+    private static Map<TimeManager.Stagione, AliasTable<CustomEvent>> buildRandomTables(Map<String, CustomEvent> events) {
+        Map<TimeManager.Stagione, AliasTable<CustomEvent>> tables = new EnumMap<>(TimeManager.Stagione.class);
+        for (TimeManager.Stagione season : TimeManager.Stagione.values()) {
+            List<CustomEvent> outcomes = new ArrayList<>();
+            List<Double> weights = new ArrayList<>();
+            int totalChance = 0;
+            for (CustomEvent event : events.values()) {
+                if (!event.type().equals("RANDOM") || event.chance() <= 0) continue;
+                if (!event.seasons().contains(season)) continue;
+                outcomes.add(event);
+                weights.add((double) event.chance());
+                totalChance += event.chance();
+            }
+            if (outcomes.isEmpty()) continue;
+            if (totalChance < 100) {
+                outcomes.add(null);
+                weights.add((double) (100 - totalChance));
+            }
+            tables.put(season, new AliasTable<>(outcomes,
+                    weights.stream().mapToDouble(Double::doubleValue).toArray()));
+        }
+        return Collections.unmodifiableMap(tables);
+    }
+
+    /**
+     * Confronta questo catalogo con quello precedente.
+     *
+     * @param previous Il catalogo in uso.
+     * @return Gli eventi aggiunti, modificati e rimossi.
+     */
+    public Diff diff(EventCatalog previous) {
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (CustomEvent event : events.values()) {
+            CustomEvent old = previous.events.get(event.id());
+            if (old == null) {
+                added.add(event.id());
+            } else if (old != event) {
+                changed.add(event.id());
+            }
+        }
+        for (String id : previous.events.keySet()) {
+            if (!events.containsKey(id)) {
+                removed.add(id);
+            }
+        }
+        return new Diff(added, changed, removed);
+    }
+
+    /**
+     * Restituisce le definizioni degli eventi, per ID, nell'ordine in cui compaiono in {@code events.yml}.
+     * @return La mappa non modificabile degli eventi.
+     */
+    public Map<String, CustomEvent> getEvents() {
+        return events;
+    }
+
+    /**
+     * Restituisce l'indice delle date degli eventi ANNUAL e FIXED_DATE.
+     * @return L'indice, da non modificare.
+     */
+    public EventDateIndex getDateIndex() {
+        return dateIndex;
+    }
+
+    /**
+     * Restituisce la tabella alias degli eventi RANDOM di una stagione.
+     *
+     * @param season La stagione.
+     * @return La tabella, o {@code null} se nella stagione non ci sono eventi RANDOM.
+     */
+    public AliasTable<CustomEvent> getRandomTable(TimeManager.Stagione season) {
+        return randomTables.get(season);
+    }
+
+    /**
+     * Restituisce le voci {@code clock-triggers} di primo livello, attive indipendentemente dagli eventi.
+     * @return La lista immutabile dei trigger.
+     */
+    public List<ClockTrigger> getGlobalTriggers() {
+        return globalTriggers;
+    }
+
+    public int getCompiledConditions() {
+        return compiledConditions;
+    }
+
+    /**
+     * Restituisce il CRC32 del file da cui è stato compilato il catalogo.
+     * @return Il checksum del contenuto di {@code events.yml}.
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+}
@@ -0,0 +1,175 @@
+package it.cdl.calendario;
+
+import java.util.List;
+
+/**
+ * Condizione di attivazione di un evento, compilata una sola volta al caricamento di
+ * {@code events.yml} da {@link EventConditionParser} in un albero di predicati.
+ * La valutazione legge solo i campi di un {@link CalendarSnapshot}, senza parsing né accessi
+ * al server, e i nodi {@link All}/{@link Any} si fermano al primo figlio che decide il risultato.
+ * Gli insiemi di valori (stagioni, meteo, fasi lunari, giorni della settimana) sono maschere di bit.
+ */
+public sealed interface EventCondition {
+
+    /**
+     * Condizione sempre vera, usata per gli eventi senza {@code conditions.when}.
+     */
+    EventCondition ALWAYS = new Constant(true);
+
+    /**
+     * Valuta la condizione.
+     *
+     * @param snapshot Lo stato del calendario e del mondo.
+     * @return {@code true} se la condizione è soddisfatta.
+     */
+    boolean test(CalendarSnapshot snapshot);
+
+    /**
+     * Valore costante ({@code true} o {@code false}).
+     */
+    record Constant(boolean value) implements EventCondition {
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            return value;
+        }
+    }
+
+    /**
+     * Vera se tutti i figli sono veri ({@code &&}).
+     */
+    record All(List<EventCondition> children) implements EventCondition {
+        public All {
+            children = List.copyOf(children);
+        }
+
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            for (EventCondition child : children) {
+                if (!child.test(snapshot)) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Vera se almeno un figlio è vero ({@code ||}).
+     */
+    record Any(List<EventCondition> children) implements EventCondition {
+        public Any {
+            children = List.copyOf(children);
+        }
+
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            for (EventCondition child : children) {
+                if (child.test(snapshot)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Negazione ({@code !}).
+     */
+    record Not(EventCondition child) implements EventCondition {
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            return !child.test(snapshot);
+        }
+    }
+
+    /**
+     * Grandezza numerica confrontabile in una condizione.
+     */
+    enum Field {
+        PLAYERS, YEAR, MONTH, DAY;
+
+        long read(CalendarSnapshot snapshot) {
+            return switch (this) {
+                case PLAYERS -> snapshot.onlinePlayers();
+                case YEAR -> snapshot.year();
+                case MONTH -> snapshot.month();
+                case DAY -> snapshot.day();
+            };
+        }
+    }
+
+    /**
+     * Vera se una grandezza è compresa tra due estremi (inclusi). Ogni confronto
+     * ({@code <}, {@code >=}, {@code ==}, {@code in a..b}...) viene ridotto a un intervallo.
+     */
+    record InRange(Field field, long min, long max) implements EventCondition {
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            long value = field.read(snapshot);
+            return value >= min && value <= max;
+        }
+    }
+
+    /**
+     * Vera se la stagione corrente è tra quelle indicate.
+     *
+     * @param mask Un bit per ogni {@link TimeManager.Stagione}, in ordine di dichiarazione.
+     */
+    record SeasonIn(int mask) implements EventCondition {
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            return (mask & (1 << snapshot.season().ordinal())) != 0;
+        }
+    }
+
+    /**
+     * Vera se il meteo del mondo principale è tra quelli indicati.
+     *
+     * @param mask Un bit per ogni {@link EventAction.Weather}, in ordine di dichiarazione.
+     */
+    record WeatherIn(int mask) implements EventCondition {
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            return (mask & (1 << snapshot.weather().ordinal())) != 0;
+        }
+    }
+
+    /**
+     * Vera se la fase lunare è tra quelle indicate.
+     *
+     * @param mask Un bit per ogni fase (0 = luna piena ... 7).
+     */
+    record MoonPhaseIn(int mask) implements EventCondition {
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            return (mask & (1 << snapshot.moonPhase())) != 0;
+        }
+    }
+
+    /**
+     * Vera se il giorno della settimana è tra quelli indicati.
+     *
+     * @param mask Un bit per ogni {@link java.time.DayOfWeek}, dal lunedì (bit 0) alla domenica.
+     */
+    record DayOfWeekIn(int mask) implements EventCondition {
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            return (mask & (1 << snapshot.dayOfWeek().ordinal())) != 0;
+        }
+    }
+
+    /**
+     * Vera se almeno uno degli eventi indicati è in corso.
+     *
+     * @param eventIds Gli ID degli eventi, in minuscolo.
+     */
+    record EventActive(List<String> eventIds) implements EventCondition {
+        public EventActive {
+            eventIds = List.copyOf(eventIds);
+        }
+
+        @Override
+        public boolean test(CalendarSnapshot snapshot) {
+            for (String id : eventIds) {
+                if (snapshot.activeEvents().contains(id)) return true;
+            }
+            return false;
+        }
+    }
+}
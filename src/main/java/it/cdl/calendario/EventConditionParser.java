@@ -0,0 +1,362 @@
+package it.cdl.calendario;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Compila le espressioni {@code conditions.when} di {@code events.yml} in alberi {@link EventCondition}.
+ * <p>
+ * Sintassi: condizioni unite da {@code &&} (o {@code and}), {@code ||} (o {@code or}), negate con
+ * {@code !} (o {@code not}) e raggruppate con le parentesi. Condizioni disponibili:
+ * <ul>
+ *     <li>{@code players}, {@code year}, {@code month}, {@code day} seguiti da {@code < <= > >= == !=} e un numero,
+ *     oppure da {@code in a..b};</li>
+ *     <li>{@code season(ESTATE, ...)}, {@code weather(clear|rain|thunder, ...)},
+ *     {@code moon(full, new, ... | 0-7)}, {@code weekday(saturday, sun, ...)}, {@code active(id, ...)};</li>
+ *     <li>{@code true}, {@code false}.</li>
+ * </ul>
+ * L'albero viene semplificato durante la compilazione (costanti propagate, {@code &&}/{@code ||}
+ * annidati appiattiti, doppie negazioni rimosse). Un'espressione non valida genera una
+ * {@link IllegalArgumentException} con la posizione dell'errore.
+ * Un'istanza raccoglie gli ID usati in {@code active(...)}, così che possano essere verificati
+ * dopo aver caricato tutti gli eventi.
+ */
+public class EventConditionParser {
+
+    /**
+     * Nomi delle fasi lunari, nell'ordine di Minecraft (fase 0 = luna piena).
+     */
+    private static final List<String> MOON_PHASES = List.of("full", "waning_gibbous", "last_quarter",
+            "waning_crescent", "new", "waxing_crescent", "first_quarter", "waxing_gibbous");
+
+    private enum TokenType { IDENT, NUMBER, LPAREN, RPAREN, COMMA, AND, OR, NOT, COMPARE, RANGE, END }
+
+    private record Token(TokenType type, String text, int position) {}
+
+    private final Set<String> referencedEvents = new LinkedHashSet<>();
+
+    private List<Token> tokens;
+    private int index;
+
+    /**
+     * Compila un'espressione.
+     *
+     * @param expression Il testo della condizione.
+     * @return La condizione compilata.
+     * @throws IllegalArgumentException Se l'espressione non è valida.
+     */
+    public EventCondition parse(String expression) {
+        tokens = tokenize(expression);
+        index = 0;
+        EventCondition condition = parseOr();
+        if (peek().type() != TokenType.END) {
+            throw error(peek(), "unexpected '" + peek().text() + "'");
+        }
+        return condition;
+    }
+
+    /**
+     * Restituisce gli ID degli eventi citati in {@code active(...)} dalle espressioni compilate finora.
+     * @return Gli ID, in minuscolo.
+     */
+    public Set<String> getReferencedEvents() {
+        return referencedEvents;
+    }
+
+    // --- Analisi sintattica ---
+
+    private EventCondition parseOr() {
+        List<EventCondition> children = new ArrayList<>();
+        children.add(parseAnd());
+        while (accept(TokenType.OR) || acceptWord("or")) {
+            children.add(parseAnd());
+        }
+        return any(children);
+    }
+
+    private EventCondition parseAnd() {
+        List<EventCondition> children = new ArrayList<>();
+        children.add(parseUnary());
+        while (accept(TokenType.AND) || acceptWord("and")) {
+            children.add(parseUnary());
+        }
+        return all(children);
+    }
+
+    private EventCondition parseUnary() {
+        if (accept(TokenType.NOT) || acceptWord("not")) {
+            return not(parseUnary());
+        }
+        return parsePrimary();
+    }
+
+    private EventCondition parsePrimary() {
+        Token token = next();
+        if (token.type() == TokenType.LPAREN) {
+            EventCondition inner = parseOr();
+            expect(TokenType.RPAREN, "')'");
+            return inner;
+        }
+        if (token.type() != TokenType.IDENT) {
+            throw error(token, "expected a condition but found '" + token.text() + "'");
+        }
+        String name = token.text().toLowerCase(Locale.ROOT);
+        return switch (name) {
+            case "true" -> new EventCondition.Constant(true);
+            case "false" -> new EventCondition.Constant(false);
+            case "players" -> parseComparison(EventCondition.Field.PLAYERS);
+            case "year" -> parseComparison(EventCondition.Field.YEAR);
+            case "month" -> parseComparison(EventCondition.Field.MONTH);
+            case "day" -> parseComparison(EventCondition.Field.DAY);
+            case "season", "weather", "moon", "weekday", "active" -> parseFunction(name, token);
+            default -> throw error(token, "unknown condition '" + token.text() + "'");
+        };
+    }
+
+    private EventCondition parseComparison(EventCondition.Field field) {
+        if (acceptWord("in")) {
+            long min = number(next());
+            expect(TokenType.RANGE, "'..'");
+            long max = number(next());
+            return new EventCondition.InRange(field, Math.min(min, max), Math.max(min, max));
+        }
+        Token operator = expect(TokenType.COMPARE, "a comparison (<, <=, >, >=, ==, !=) or 'in'");
+        long value = number(next());
+        return switch (operator.text()) {
+            case "<" -> new EventCondition.InRange(field, Long.MIN_VALUE, value - 1);
+            case "<=" -> new EventCondition.InRange(field, Long.MIN_VALUE, value);
+            case ">" -> new EventCondition.InRange(field, value + 1, Long.MAX_VALUE);
+            case ">=" -> new EventCondition.InRange(field, value, Long.MAX_VALUE);
+            case "==" -> new EventCondition.InRange(field, value, value);
+            default -> new EventCondition.Not(new EventCondition.InRange(field, value, value));
+        };
+    }
+
+    private EventCondition parseFunction(String name, Token nameToken) {
+        expect(TokenType.LPAREN, "'(' after " + name);
+        List<Token> arguments = new ArrayList<>();
+        do {
+            Token argument = next();
+            if (argument.type() != TokenType.IDENT && argument.type() != TokenType.NUMBER) {
+                throw error(argument, "expected a value but found '" + argument.text() + "'");
+            }
+            arguments.add(argument);
+        } while (accept(TokenType.COMMA));
+        expect(TokenType.RPAREN, "')'");
+
+        if (name.equals("active")) {
+            List<String> ids = new ArrayList<>(arguments.size());
+            for (Token argument : arguments) {
+                String id = argument.text().toLowerCase(Locale.ROOT);
+                ids.add(id);
+                referencedEvents.add(id);
+            }
+            return new EventCondition.EventActive(ids);
+        }
+        int mask = 0;
+        for (Token argument : arguments) {
+            int bit = switch (name) {
+                case "season" -> season(argument).ordinal();
+                case "weather" -> weather(argument).ordinal();
+                case "moon" -> moonPhase(argument);
+                default -> dayOfWeek(argument).ordinal();
+            };
+            mask |= 1 << bit;
+        }
+        return switch (name) {
+            case "season" -> new EventCondition.SeasonIn(mask);
+            case "weather" -> new EventCondition.WeatherIn(mask);
+            case "moon" -> new EventCondition.MoonPhaseIn(mask);
+            case "weekday" -> new EventCondition.DayOfWeekIn(mask);
+            default -> throw error(nameToken, "unknown condition '" + name + "'");
+        };
+    }
+
+    // --- Valori ---
+
+    private TimeManager.Stagione season(Token token) {
+        try {
+            return TimeManager.Stagione.valueOf(token.text().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw error(token, "unknown season '" + token.text() + "'");
+        }
+    }
+
+    private EventAction.Weather weather(Token token) {
+        try {
+            return EventAction.Weather.valueOf(token.text().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw error(token, "unknown weather '" + token.text() + "' (clear, rain, thunder)");
+        }
+    }
+
+    private int moonPhase(Token token) {
+        if (token.type() == TokenType.NUMBER) {
+            long phase = number(token);
+            if (phase < 0 || phase >= MOON_PHASES.size()) {
+                throw error(token, "moon phase must be between 0 and 7");
+            }
+            return (int) phase;
+        }
+        int phase = MOON_PHASES.indexOf(token.text().toLowerCase(Locale.ROOT));
+        if (phase < 0) {
+            throw error(token, "unknown moon phase '" + token.text() + "'");
+        }
+        return phase;
+    }
+
+    private DayOfWeek dayOfWeek(Token token) {
+        String text = token.text().toUpperCase(Locale.ROOT);
+        if (text.length() >= 3) {
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (day.name().startsWith(text)) return day;
+            }
+        }
+        throw error(token, "unknown weekday '" + token.text() + "'");
+    }
+
+    private long number(Token token) {
+        if (token.type() != TokenType.NUMBER) {
+            throw error(token, "expected a number but found '" + token.text() + "'");
+        }
+        try {
+            return Long.parseLong(token.text());
+        } catch (NumberFormatException e) {
+            throw error(token, "number '" + token.text() + "' is too large");
+        }
+    }
+
+    // --- Semplificazione dell'albero ---
+
+    private static EventCondition all(List<EventCondition> children) {
+        List<EventCondition> flat = new ArrayList<>(children.size());
+        for (EventCondition child : children) {
+            if (child instanceof EventCondition.Constant constant) {
+                if (!constant.value()) return constant;
+            } else if (child instanceof EventCondition.All nested) {
+                flat.addAll(nested.children());
+            } else {
+                flat.add(child);
+            }
+        }
+        if (flat.isEmpty()) return new EventCondition.Constant(true);
+        return flat.size() == 1 ? flat.getFirst() : new EventCondition.All(flat);
+    }
+
+    private static EventCondition any(List<EventCondition> children) {
+        List<EventCondition> flat = new ArrayList<>(children.size());
+        for (EventCondition child : children) {
+            if (child instanceof EventCondition.Constant constant) {
+                if (constant.value()) return constant;
+            } else if (child instanceof EventCondition.Any nested) {
+                flat.addAll(nested.children());
+            } else {
+                flat.add(child);
+            }
+        }
+        if (flat.isEmpty()) return new EventCondition.Constant(false);
+        return flat.size() == 1 ? flat.getFirst() : new EventCondition.Any(flat);
+    }
+
+    private static EventCondition not(EventCondition child) {
+        if (child instanceof EventCondition.Constant constant) return new EventCondition.Constant(!constant.value());
+        if (child instanceof EventCondition.Not negated) return negated.child();
+        return new EventCondition.Not(child);
+    }
+
+    // --- Analisi lessicale ---
+
+    private Token peek() {
+        return tokens.get(index);
+    }
+
+    private Token next() {
+        Token token = tokens.get(index);
+        if (token.type() != TokenType.END) index++;
+        return token;
+    }
+
+    private boolean accept(TokenType type) {
+        if (peek().type() != type) return false;
+        index++;
+        return true;
+    }
+
+    private boolean acceptWord(String word) {
+        if (peek().type() != TokenType.IDENT || !peek().text().equalsIgnoreCase(word)) return false;
+        index++;
+        return true;
+    }
+
+    private Token expect(TokenType type, String description) {
+        Token token = next();
+        if (token.type() != type) {
+            throw error(token, "expected " + description + " but found '" + token.text() + "'");
+        }
+        return token;
+    }
+
+    private static IllegalArgumentException error(Token token, String message) {
+        return new IllegalArgumentException(message + " at position " + (token.position() + 1));
+    }
+
+    private static List<Token> tokenize(String expression) {
+        List<Token> result = new ArrayList<>();
+        int i = 0;
+        int length = expression.length();
+        while (i < length) {
+            char c = expression.charAt(i);
+            int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < length && (Character.isLetterOrDigit(expression.charAt(i))
+                        || expression.charAt(i) == '_' || expression.charAt(i) == '-')) {
+                    i++;
+                }
+                result.add(new Token(TokenType.IDENT, expression.substring(start, i), start));
+            } else if (Character.isDigit(c)) {
+                while (i < length && Character.isDigit(expression.charAt(i))) {
+                    i++;
+                }
+                result.add(new Token(TokenType.NUMBER, expression.substring(start, i), start));
+            } else if (expression.startsWith("&&", i)) {
+                result.add(new Token(TokenType.AND, "&&", start));
+                i += 2;
+            } else if (expression.startsWith("||", i)) {
+                result.add(new Token(TokenType.OR, "||", start));
+                i += 2;
+            } else if (expression.startsWith("..", i)) {
+                result.add(new Token(TokenType.RANGE, "..", start));
+                i += 2;
+            } else if (expression.startsWith("<=", i) || expression.startsWith(">=", i)
+                    || expression.startsWith("==", i) || expression.startsWith("!=", i)) {
+                result.add(new Token(TokenType.COMPARE, expression.substring(i, i + 2), start));
+                i += 2;
+            } else if (c == '<' || c == '>') {
+                result.add(new Token(TokenType.COMPARE, String.valueOf(c), start));
+                i++;
+            } else if (c == '!') {
+                result.add(new Token(TokenType.NOT, "!", start));
+                i++;
+            } else if (c == '(') {
+                result.add(new Token(TokenType.LPAREN, "(", start));
+                i++;
+            } else if (c == ')') {
+                result.add(new Token(TokenType.RPAREN, ")", start));
+                i++;
+            } else if (c == ',') {
+                result.add(new Token(TokenType.COMMA, ",", start));
+                i++;
+            } else {
+                throw new IllegalArgumentException("unexpected character '" + c + "' at position " + (i + 1));
+            }
+        }
+        result.add(new Token(TokenType.END, "end of expression", length));
+        return result;
+    }
+}
@@ -0,0 +1,172 @@
+package it.cdl.calendario;
+
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Indice precompilato delle date di attivazione degli eventi ANNUAL e FIXED_DATE.
+ * Le date vengono convertite una sola volta al caricamento di {@code events.yml}:
+ * <ul>
+ *     <li>gli eventi ANNUAL finiscono in un array di 366 liste indicizzato per giorno dell'anno
+ *     (con la disposizione di un anno bisestile, così il 29/02 ha sempre il suo posto);</li>
+ *     <li>gli eventi FIXED_DATE finiscono in una mappa ordinata per giorno assoluto (vedi {@link CalendarEngine}).</li>
+ * </ul>
+ * Il controllo di un nuovo giorno si riduce quindi a un accesso all'array e a una ricerca nella mappa.
+ * All'interno di ogni giorno gli eventi mantengono l'ordine in cui compaiono nel file.
+ */
+public class EventDateIndex {
+
+    /**
+     * Giorni che precedono ogni mese in un anno bisestile (indice 0 = gennaio).
+     */
+    private static final int[] LEAP_MONTH_OFFSETS = {0, 31, 60, 91, 121, 152, 182, 213, 244, 274, 305, 335};
+
+    @SuppressWarnings("unchecked")
+    private final List<CustomEvent>[] annualByDayOfYear = new List[366];
+    private final NavigableMap<Long, List<CustomEvent>> fixedByEpochDay = new TreeMap<>();
+    private final List<DateTrigger> triggers = new ArrayList<>();
+
+    /**
+     * Data di attivazione compilata di un evento ANNUAL ({@code year == 0}) o FIXED_DATE.
+     *
+     * @param event L'evento a cui appartiene la data.
+     * @param day   Il giorno del mese.
+     * @param month Il mese (1-12).
+     * @param year  L'anno, oppure 0 per gli eventi annuali.
+     */
+    public record DateTrigger(CustomEvent event, int day, int month, int year) {
+
+        /**
+         * Indica se la data si ripete ogni anno.
+         * @return {@code true} per gli eventi ANNUAL.
+         */
+        public boolean annual() {
+            return year == 0;
+        }
+
+        /**
+         * Restituisce l'ultimo giorno assoluto, non successivo a {@code lastDay}, in cui l'evento si attiva.
+         *
+         * @param lastDay Il giorno assoluto limite (incluso).
+         * @return Il giorno assoluto, o {@link Long#MIN_VALUE} se non esiste.
+         */
+        public long lastOccurrence(long lastDay) {
+            if (!annual()) {
+                long start = CalendarEngine.toEpochDay(year, month, day);
+                return start <= lastDay ? start : Long.MIN_VALUE;
+            }
+            // Si cerca all'indietro: il 29/02 esiste solo negli anni bisestili.
+            int lastYear = CalendarEngine.fromEpochDay(lastDay).year();
+            for (int y = lastYear; y >= Math.max(1, lastYear - 8); y--) {
+                if (month == 2 && day == 29 && !CalendarEngine.isLeapYear(y)) continue;
+                long start = CalendarEngine.toEpochDay(y, month, day);
+                if (start <= lastDay) return start;
+            }
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Prova a compilare la data di attivazione di un evento e ad aggiungerla all'indice.
+     * Gli eventi di tipo diverso da ANNUAL e FIXED_DATE vengono accettati senza essere indicizzati.
+     *
+     * @param event L'evento da indicizzare.
+     * @return {@code false} se la data dell'evento è malformata o inesistente (es. 31/02), altrimenti {@code true}.
+     */
+    public boolean add(CustomEvent event) {
+        boolean annual = event.type().equals("ANNUAL");
+        if (!annual && !event.type().equals("FIXED_DATE")) return true;
+
+        DateTrigger trigger = parse(event, annual);
+        if (trigger == null) return false;
+
+        if (annual) {
+            int slot = dayOfYearSlot(trigger.month(), trigger.day());
+            if (annualByDayOfYear[slot] == null) {
+                annualByDayOfYear[slot] = new ArrayList<>(1);
+            }
+            annualByDayOfYear[slot].add(event);
+        } else {
+            long epochDay = CalendarEngine.toEpochDay(trigger.year(), trigger.month(), trigger.day());
+            fixedByEpochDay.computeIfAbsent(epochDay, d -> new ArrayList<>(1)).add(event);
+        }
+        triggers.add(trigger);
+        return true;
+    }
+
+    /**
+     * Restituisce gli eventi ANNUAL e FIXED_DATE che si attivano in una data, nell'ordine del file
+     * (prima gli annuali, poi quelli a data fissa).
+     *
+     * @param year  L'anno.
+     * @param month Il mese (1-12).
+     * @param day   Il giorno del mese.
+     * @return Gli eventi della data; una lista vuota se non ce ne sono.
+     */
+    public List<CustomEvent> eventsOn(int year, int month, int day) {
+        List<CustomEvent> annual = annualByDayOfYear[dayOfYearSlot(month, day)];
+        List<CustomEvent> fixed = fixedByEpochDay.get(CalendarEngine.toEpochDay(year, month, day));
+        if (fixed == null) return annual != null ? annual : Collections.emptyList();
+        if (annual == null) return fixed;
+        List<CustomEvent> merged = new ArrayList<>(annual.size() + fixed.size());
+        merged.addAll(annual);
+        merged.addAll(fixed);
+        return merged;
+    }
+
+    /**
+     * Restituisce tutte le date compilate, annuali e fisse.
+     * @return La lista (non modificabile) delle date, in ordine di caricamento.
+     */
+    public List<DateTrigger> getTriggers() {
+        return Collections.unmodifiableList(triggers);
+    }
+
+    /**
+     * Restituisce gli eventi a data fissa compresi in un intervallo di giorni assoluti, in ordine crescente.
+     *
+     * @param fromDay Il primo giorno assoluto (incluso).
+     * @param toDay   L'ultimo giorno assoluto (incluso).
+     * @return La vista ordinata giorno assoluto → eventi.
+     */
+    public NavigableMap<Long, List<CustomEvent>> fixedBetween(long fromDay, long toDay) {
+        if (fromDay > toDay) return Collections.emptyNavigableMap();
+        return Collections.unmodifiableNavigableMap(fixedByEpochDay.subMap(fromDay, true, toDay, true));
+    }
+
+    /**
+     * Restituisce il numero di date compilate.
+     * @return Il numero di eventi ANNUAL e FIXED_DATE indicizzati.
+     */
+    public int size() {
+        return triggers.size();
+    }
+
+    /**
+     * Converte la data di un evento, verificando formato e validità del giorno.
+     * @return La data compilata, o {@code null} se non valida.
+     */
+    private static DateTrigger parse(CustomEvent event, boolean annual) {
+        String[] parts = event.triggerDate().trim().split("/");
+        if (parts.length != (annual ? 2 : 3)) return null;
+        try {
+            int day = Integer.parseInt(parts[0].trim());
+            int month = Integer.parseInt(parts[1].trim());
+            // Per gli annuali si valida su un anno bisestile, così il 29/02 è accettato.
+            int year = annual ? 4 : Integer.parseInt(parts[2].trim());
+            if (year < 1) return null;
+            CalendarEngine.toEpochDay(year, month, day);
+            return new DateTrigger(event, day, month, annual ? 0 : year);
+        } catch (NumberFormatException | DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static int dayOfYearSlot(int month, int day) {
+        return LEAP_MONTH_OFFSETS[month - 1] + day - 1;
+    }
+}
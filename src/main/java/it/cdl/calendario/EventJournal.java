@@ -0,0 +1,154 @@
+package it.cdl.calendario;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Registro in sola aggiunta degli avvii e delle conclusioni degli eventi ({@code events.journal}).
+ * Ogni voce viene scritta e forzata su disco prima che le azioni dell'evento vengano eseguite,
+ * così che dopo un crash il plugin sappia quali eventi erano in corso anche se lo stato completo
+ * del calendario non era ancora stato salvato.
+ * <p>
+ * Formato di una voce: lunghezza (int), poi il contenuto (numero di sequenza, tipo, ID, giorno
+ * di inizio, giorno di fine) e un CRC32 del contenuto. Una voce troncata o danneggiata,
+ * tipica di un crash durante la scrittura, chiude la lettura: le voci precedenti restano valide.
+ * I metodi vanno chiamati da un solo thread alla volta (il thread di {@link CalendarPersistence}).
+ */
+public class EventJournal {
+
+    /**
+     * Tipo di voce del registro.
+     */
+    public enum Type { START, END }
+
+    /**
+     * Voce del registro.
+     *
+     * @param sequence Il numero di sequenza, crescente; le voci già incluse in un {@link CalendarState} salvato vengono ignorate.
+     * @param type     Avvio o conclusione.
+     * @param eventId  L'ID dell'evento.
+     * @param startDay Il giorno assoluto di inizio dell'evento.
+     * @param endDay   Il giorno assoluto di fine ({@link Long#MAX_VALUE} se infinito) per un avvio,
+     *                 il giorno della conclusione per una fine.
+     */
+    public record Entry(long sequence, Type type, String eventId, long startDay, long endDay) {}
+
+    private static final Type[] TYPES = Type.values();
+
+    private final File file;
+    private FileChannel channel;
+
+    /**
+     * @param file Il file del registro.
+     */
+    public EventJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Aggiunge una voce in fondo al registro e la forza su disco.
+     *
+     * @param entry La voce da aggiungere.
+     * @throws IOException Se la scrittura fallisce.
+     */
+    public void append(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeLong(entry.sequence());
+        data.writeByte(entry.type().ordinal());
+        data.writeUTF(entry.eventId());
+        data.writeLong(entry.startDay());
+        data.writeLong(entry.endDay());
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + payload.length + Long.BYTES);
+        record.putInt(payload.length).put(payload).putLong(crc.getValue()).flip();
+        FileChannel out = channel();
+        while (record.hasRemaining()) {
+            out.write(record);
+        }
+        out.force(false);
+    }
+
+    /**
+     * Legge tutte le voci valide del registro, nell'ordine in cui sono state scritte.
+     * Un'eventuale coda danneggiata viene tagliata, così che le voci aggiunte in seguito restino leggibili.
+     *
+     * @return Le voci lette (vuota se il file non esiste).
+     * @throws IOException Se il file esiste ma non può essere letto.
+     */
+    public List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.exists()) return entries;
+        byte[] content = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int validBytes = 0;
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            if (length <= 0 || buffer.remaining() < length + Long.BYTES) break;
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (buffer.getLong() != crc.getValue()) break;
+
+            DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+            long sequence = data.readLong();
+            int type = data.readByte();
+            if (type < 0 || type >= TYPES.length) break;
+            entries.add(new Entry(sequence, TYPES[type], data.readUTF(), data.readLong(), data.readLong()));
+            validBytes = buffer.position();
+        }
+        if (validBytes < content.length) {
+            channel().truncate(validBytes);
+        }
+        return entries;
+    }
+
+    /**
+     * Svuota il registro, dopo che uno stato completo che include tutte le sue voci è stato salvato.
+     *
+     * @throws IOException Se il file non può essere troncato.
+     */
+    public void truncate() throws IOException {
+        if (channel == null && !file.exists()) return;
+        FileChannel out = channel();
+        out.truncate(0);
+        out.force(true);
+    }
+
+    /**
+     * Chiude il file del registro.
+     */
+    public void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Ogni voce è già stata forzata su disco al momento della scrittura.
+        }
+        channel = null;
+    }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            Files.createDirectories(file.toPath().toAbsolutePath().getParent());
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+}
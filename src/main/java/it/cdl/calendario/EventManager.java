@@ -1,16 +1,31 @@
 package it.cdl.calendario;
 
 import org.bukkit.Bukkit;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 
 /**
  * Gestisce il ciclo di vita degli eventi personalizzati del server.
@@ -21,18 +36,75 @@ import java.util.Random;
 public class EventManager {
 
     private final CalendarioPlugin plugin;
-    private final Map<String, CustomEvent> loadedEvents = new HashMap<>();
+    /**
+     * Definizioni degli eventi caricate da {@code events.yml}, con l'indice delle date e le tabelle
+     * alias degli eventi RANDOM. Viene sostituito in blocco quando il file cambia.
+     */
+    private volatile EventCatalog catalog = EventCatalog.EMPTY;
+    private final File eventsFile;
     private final Random random = new Random();
 
     /**
-     * L'evento attualmente attivo sul server.
-     * È {@code null} se nessun evento è in corso.
+     * Gli eventi attualmente in corso, per ID, nell'ordine in cui sono iniziati.
+     */
+    private final Map<String, ActiveEvent> activeEvents = new LinkedHashMap<>();
+    /**
+     * Coda delle scadenze (min-heap sul giorno assoluto di fine): a ogni nuovo giorno vengono
+     * estratti solo gli eventi scaduti. Gli eventi a durata infinita non vi compaiono.
+     */
+    private final PriorityQueue<ActiveEvent> expiryQueue = new PriorityQueue<>(Comparator.comparingLong(ActiveEvent::endDay));
+    private int activeEventsVersion = 0;
+    /**
+     * Dati storici di ogni evento già avviato almeno una volta, salvati insieme al calendario.
+     */
+    private final Map<String, CalendarState.EventBookkeeping> bookkeeping = new HashMap<>();
+    /**
+     * Sequenza dell'ultima voce scritta in {@link EventJournal}.
+     */
+    private long journalSequence;
+    /**
+     * Numero massimo di eventi attivi contemporaneamente, letto da config.yml.
+     */
+    private final int maxConcurrentEvents;
+    /**
+     * Coda che distribuisce su più tick i comandi di inizio e fine degli eventi.
+     */
+    private final CommandDispatchQueue commandQueue;
+    /**
+     * Osservatore di {@code events.yml}, o {@code null} se il ricaricamento automatico è disattivato.
+     */
+    private EventsFileWatcher eventsWatcher;
+    private volatile boolean closed = false;
+    /**
+     * Ruota temporale dei {@code clock-triggers}, portata avanti da {@link CalendarTask} con il tempo totale del mondo.
      */
-    private CustomEvent activeEvent = null;
+    private final TimingWheel clock;
     /**
-     * Il numero di giorni rimanenti prima della conclusione dell'evento attivo.
+     * Timer dei {@code clock-triggers} degli eventi in corso, per ID, annullati alla fine dell'evento.
      */
-    private int daysRemaining = 0;
+    private final Map<String, List<TimingWheel.Timer>> eventTimers = new HashMap<>();
+    /**
+     * Timer dei {@code clock-triggers} di primo livello di {@code events.yml}.
+     */
+    private final List<TimingWheel.Timer> globalTimers = new ArrayList<>();
+    /**
+     * Ultima scrittura accodata nel registro degli eventi: le azioni dei {@code clock-triggers}
+     * la attendono, così non superano mai le azioni di inizio di un evento.
+     */
+    private CompletableFuture<Void> lastJournaled = CompletableFuture.completedFuture(null);
+    /**
+     * Registro delle {@code rewards} già consegnate per ogni avvio, per premiare anche chi entra a evento in corso.
+     */
+    private final RewardLedger rewardLedger;
+    /**
+     * Consegne di ricompense assegnate nel registro ma non ancora concluse. Chi ne rimuove una si occupa
+     * di annullarne il resto nel registro, così nessuna ricompensa assegnata va persa.
+     */
+    private final Set<RewardDelivery> pendingDeliveries = ConcurrentHashMap.newKeySet();
+
+    // Statistiche delle condizioni degli eventi
+    private long conditionChecks = 0;
+    private long conditionNanos = 0;
 
     /**
      * Costruttore dell'EventManager.
@@ -42,170 +114,752 @@ public class EventManager {
      */
     public EventManager(CalendarioPlugin plugin) {
         this.plugin = plugin;
+        this.maxConcurrentEvents = Math.max(1, plugin.getConfig().getInt("events.max-concurrent-events", 3));
+        this.commandQueue = new CommandDispatchQueue(plugin);
+        this.commandQueue.start();
+        this.eventsFile = new File(plugin.getDataFolder(), "events.yml");
+        this.clock = new TimingWheel(Bukkit.getWorlds().stream().findFirst().map(World::getFullTime).orElse(0L));
+        this.rewardLedger = new RewardLedger(plugin);
         loadEvents();
+        installGlobalTriggers();
+        restoreState(plugin.getTimeManager().getLoadedState());
+        rewardLedger.retainOnly(activeEvents.values().stream()
+                .map(active -> RewardLedger.key(active.event().id(), active.startDay()))
+                .toList());
+        if (plugin.getConfig().getBoolean("events.hot-reload", true)) {
+            this.eventsWatcher = new EventsFileWatcher(plugin, eventsFile.toPath(), this::reloadChangedEvents);
+            this.eventsWatcher.start();
+        }
+    }
+
+    /**
+     * Ripristina gli eventi in corso e i dati storici salvati, senza eseguire alcuna azione:
+     * gli eventi erano già iniziati (o terminati) prima del riavvio. Allo stato salvato vengono
+     * applicate in ordine le voci di {@link EventJournal} successive, scritte dopo l'ultimo salvataggio.
+     * Il costo è proporzionale agli eventi in corso e alle voci del registro, e applicare più volte
+     * le stesse voci produce lo stesso risultato. Gli eventi non più definiti in {@code events.yml}
+     * vengono scartati con un avviso.
+     *
+     * @param state Lo stato letto all'avvio.
+     */
+    private void restoreState(CalendarState state) {
+        bookkeeping.putAll(state.bookkeeping());
+        journalSequence = state.journalSequence();
+        long today = plugin.getTimeManager().getGiornoAssoluto();
+        Map<String, ActiveEvent> restored = new LinkedHashMap<>();
+        for (CalendarState.StoredEvent stored : state.activeEvents()) {
+            CustomEvent event = resolveRestoredEvent(stored.eventId());
+            if (event == null) continue;
+            long endDay = stored.daysRemaining() < 0 ? Long.MAX_VALUE : today + stored.daysRemaining();
+            restored.put(event.id(), new ActiveEvent(event, stored.startDay(), endDay));
+        }
+
+        for (EventJournal.Entry entry : plugin.getTimeManager().getPersistence().readJournal()) {
+            if (entry.sequence() <= state.journalSequence()) continue;
+            journalSequence = Math.max(journalSequence, entry.sequence());
+            CalendarState.EventBookkeeping previous = bookkeeping.getOrDefault(entry.eventId(), CalendarState.EventBookkeeping.NONE);
+            if (entry.type() == EventJournal.Type.START) {
+                bookkeeping.put(entry.eventId(), previous.started(entry.startDay()));
+                CustomEvent event = resolveRestoredEvent(entry.eventId());
+                if (event != null) {
+                    restored.remove(event.id());
+                    restored.put(event.id(), new ActiveEvent(event, entry.startDay(), entry.endDay()));
+                }
+            } else {
+                bookkeeping.put(entry.eventId(), previous.ended(entry.endDay()));
+                restored.remove(entry.eventId());
+            }
+        }
+
+        for (ActiveEvent active : restored.values()) {
+            activeEvents.put(active.event().id(), active);
+            if (!active.isInfinite()) {
+                expiryQueue.add(active);
+            }
+            scheduleEventTriggers(active.event());
+        }
+        activeEventsVersion++;
+    }
+
+    /**
+     * Cerca la definizione di un evento ripristinato, avvisando se non esiste più.
+     */
+    private CustomEvent resolveRestoredEvent(String eventId) {
+        CustomEvent event = catalog.getEvents().get(eventId);
+        if (event == null) {
+            plugin.getLogger().warning(plugin.getLanguageManager().getString("logs.unknown-active-event", "{event}", eventId));
+        }
+        return event;
+    }
+
+    /**
+     * Ferma l'osservatore di {@code events.yml} e la coda dei comandi, eseguendo subito quelli ancora in attesa,
+     * e chiude il registro delle ricompense. Chiamato durante lo spegnimento o il ricaricamento del plugin.
+     */
+    public void shutdown() {
+        closed = true;
+        if (eventsWatcher != null) {
+            eventsWatcher.stop();
+        }
+        commandQueue.stop();
+        for (RewardDelivery delivery : List.copyOf(pendingDeliveries)) {
+            releaseDelivery(delivery);
+        }
+        rewardLedger.close();
     }
 
     /**
      * Carica e convalida tutti gli eventi definiti nel file {@code events.yml}.
      * Se il file non esiste, viene creato a partire dalle risorse del plugin.
-     * Ogni evento viene mappato in un oggetto {@link CustomEvent} e memorizzato.
+     * Ogni evento viene compilato in un oggetto {@link CustomEvent} all'interno di un {@link EventCatalog}.
      */
     private void loadEvents() {
-        File eventsFile = new File(plugin.getDataFolder(), "events.yml");
         if (!eventsFile.exists()) {
             plugin.saveResource("events.yml", false);
         }
-        FileConfiguration config = YamlConfiguration.loadConfiguration(eventsFile);
-        ConfigurationSection eventsSection = config.getConfigurationSection("events");
-        if (eventsSection == null) return;
+        EventCatalog loaded = readCatalog(EventCatalog.EMPTY);
+        if (loaded != null) {
+            catalog = loaded;
+        }
+
+        plugin.getLogger().info(plugin.getLanguageManager().getString(
+                "logs.events-loaded", "{count}", String.valueOf(catalog.getEvents().size())
+        ));
+    }
+
+    /**
+     * Legge e compila {@code events.yml}. Un file YAML non valido non produce un catalogo vuoto:
+     * viene segnalato e il catalogo in uso resta invariato.
+     *
+     * @param previous Il catalogo in uso, di cui vengono riutilizzate le definizioni invariate.
+     * @return Il nuovo catalogo, o {@code null} se il file non può essere letto.
+     */
+    private EventCatalog readCatalog(EventCatalog previous) {
+        try {
+            byte[] content = Files.readAllBytes(eventsFile.toPath());
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (previous != EventCatalog.EMPTY && crc.getValue() == previous.getChecksum()) {
+                return previous;
+            }
+            YamlConfiguration config = new YamlConfiguration();
+            config.loadFromString(new String(content, StandardCharsets.UTF_8));
+            return EventCatalog.compile(plugin, config, previous, crc.getValue());
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().warning(plugin.getLanguageManager().getString("logs.events-reload-failed",
+                    "{error}", String.valueOf(e.getMessage())));
+            return null;
+        }
+    }
 
-        for (String eventId : eventsSection.getKeys(false)) {
-            ConfigurationSection eventData = eventsSection.getConfigurationSection(eventId);
-            if (eventData == null) continue;
+    /**
+     * Chiamato dall'osservatore quando {@code events.yml} cambia. Il file viene letto, convalidato
+     * e confrontato con il catalogo in uso su questo thread; il nuovo catalogo viene poi installato
+     * sul thread principale con una sola assegnazione. Gli eventi in corso continuano con la
+     * definizione con cui sono partiti; le modifiche valgono dal loro prossimo avvio.
+     * Nessun altro sistema del plugin viene toccato.
+     */
+    private void reloadChangedEvents() {
+        EventCatalog base = catalog;
+        EventCatalog next = readCatalog(base);
+        if (next == null || next == base) return;
+        EventCatalog.Diff diff = next.diff(base);
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (closed) return;
+            catalog = next;
+            if (!next.getGlobalTriggers().equals(base.getGlobalTriggers())) {
+                installGlobalTriggers();
+            }
+            if (diff.isEmpty()) return;
+            plugin.getLogger().info(plugin.getLanguageManager().getString("logs.events-hot-reloaded",
+                    "{added}", describe(diff.added()), "{changed}", describe(diff.changed()), "{removed}", describe(diff.removed())));
+        });
+    }
 
-            CustomEvent event = new CustomEvent(
-                    eventId.toLowerCase(),
-                    eventData.getString("display-name", "Nameless Event"),
-                    eventData.getString("type", "RANDOM").toUpperCase(),
-                    eventData.getString("trigger-date", ""),
+    private static String describe(List<String> ids) {
+        return ids.isEmpty() ? "-" : String.join(", ", ids);
+    }
 
-                    eventData.getInt("conditions.chance", 0),
-                    new HashSet<>(eventData.getStringList("conditions.seasons")),
-                    eventData.getInt("duration-days", 1),
-                    eventData.getStringList("start-commands"),
-                    eventData.getStringList("end-commands")
+    /**
+     * Sostituisce i timer dei {@code clock-triggers} di primo livello con quelli del catalogo in uso.
+     */
+    private void installGlobalTriggers() {
+        for (TimingWheel.Timer timer : globalTimers) {
+            clock.cancel(timer);
+        }
+        globalTimers.clear();
+        for (ClockTrigger trigger : catalog.getGlobalTriggers()) {
+            globalTimers.add(scheduleClockTrigger("clock:" + trigger.id(), trigger));
+        }
+    }
 
-            );
-            loadedEvents.put(eventId.toLowerCase(), event);
+    /**
+     * Pianifica i {@code clock-triggers} di un evento appena avviato o ripristinato.
+     */
+    private void scheduleEventTriggers(CustomEvent event) {
+        if (event.clockTriggers().isEmpty()) return;
+        List<TimingWheel.Timer> timers = new ArrayList<>(event.clockTriggers().size());
+        for (ClockTrigger trigger : event.clockTriggers()) {
+            timers.add(scheduleClockTrigger(event.id(), trigger));
         }
+        eventTimers.put(event.id(), timers);
+    }
 
-        plugin.getLogger().info(plugin.getLanguageManager().getString(
-                "logs.events-loaded", "{count}", String.valueOf(loadedEvents.size())
-        ));
+    /**
+     * Annulla i {@code clock-triggers} di un evento concluso.
+     */
+    private void cancelEventTriggers(String eventId) {
+        List<TimingWheel.Timer> timers = eventTimers.remove(eventId);
+        if (timers == null) return;
+        for (TimingWheel.Timer timer : timers) {
+            clock.cancel(timer);
+        }
+    }
+
+    /**
+     * Pianifica un trigger a orario nella ruota temporale. Quando scatta, la sua condizione viene valutata
+     * sullo stato corrente e le sue azioni vengono accodate nella corsia indicata.
+     * Può essere usato anche da altri plugin; il timer restituito si annulla con {@link TimingWheel#cancel}.
+     *
+     * @param lane    La corsia di {@link CommandDispatchQueue} in cui accodare le azioni (es. l'ID di un evento).
+     * @param trigger Il trigger da pianificare.
+     * @return Il timer periodico del trigger.
+     */
+    public TimingWheel.Timer scheduleClockTrigger(String lane, ClockTrigger trigger) {
+        return clock.scheduleRepeating(trigger.nextTickAfter(clock.getNow()), trigger.periodTicks(), () -> {
+            if (trigger.condition() != EventCondition.ALWAYS
+                    && !testCondition(trigger.condition(), captureSnapshot(activeEvents.values()))) {
+                return;
+            }
+            commandQueue.enqueue(lane, trigger.actions(), lastJournaled);
+        });
+    }
+
+    /**
+     * Porta avanti la ruota dei {@code clock-triggers} al tempo totale del mondo principale.
+     * Chiamato da {@link CalendarTask} a ogni esecuzione; un salto di tempo in avanti esegue una
+     * sola volta ogni trigger scaduto nel frattempo.
+     *
+     * @param fullTime Il tempo totale del mondo principale, in tick.
+     */
+    public void advanceClock(long fullTime) {
+        clock.advanceTo(fullTime);
+    }
+
+    /**
+     * Restituisce la ruota temporale dei {@code clock-triggers}, ad esempio per pianificare azioni da un altro plugin.
+     * @return La ruota temporale, da usare solo dal thread principale.
+     */
+    public TimingWheel getClock() {
+        return clock;
+    }
+
+    /**
+     * Esegue l'estrazione giornaliera degli eventi RANDOM per una stagione, in tempo costante.
+     *
+     * @param season La stagione corrente.
+     * @return L'evento estratto, o {@code null} se oggi non parte nessun evento RANDOM.
+     */
+    private CustomEvent rollRandomEvent(TimeManager.Stagione season) {
+        AliasTable<CustomEvent> table = catalog.getRandomTable(season);
+        return table != null ? table.sample(random) : null;
+    }
+
+    /**
+     * Restituisce la tabella alias degli eventi RANDOM di una stagione, ad esempio per mostrarne le probabilità.
+     *
+     * @param season La stagione.
+     * @return La tabella, o {@code null} se nella stagione non ci sono eventi RANDOM.
+     */
+    public AliasTable<CustomEvent> getRandomEventTable(TimeManager.Stagione season) {
+        return catalog.getRandomTable(season);
     }
 
     /**
      * Metodo principale chiamato all'inizio di un nuovo giorno.
-     * Gestisce il countdown della durata dell'evento attivo e, se termina, lo conclude.
-     * Se nessun evento è attivo, controlla se le condizioni per l'avvio di un nuovo
-     * evento sono soddisfatte.
+     * Conclude gli eventi scaduti estraendoli dalla coda delle scadenze e poi
+     * avvia gli eventi previsti per la data corrente, nei limiti di concorrenza.
      */
     public void onNewDay() {
-        if (activeEvent != null) {
-            if (daysRemaining > 0) {
-                daysRemaining--;
-            }
-            // Conclude l'evento solo se la durata non è infinita (-1)
-            if (daysRemaining == 0 && activeEvent.durationDays() != -1) {
-                endActiveEvent();
-            }
-        }
-        // Se, dopo il controllo, non c'è un evento attivo, prova ad avviarne uno nuovo.
-        if (activeEvent == null) {
-            TimeManager tm = plugin.getTimeManager();
-            for (CustomEvent event : loadedEvents.values()) {
-                if (shouldEventStart(event, tm)) {
-                    startEvent(event);
-                    break; // Avvia solo un evento al giorno
-                }
+        long today = plugin.getTimeManager().getGiornoAssoluto();
+        endDueEvents(today);
+        startEventsForDay(today, true);
+    }
+
+    /**
+     * Avvia gli eventi con data della giornata e, se c'è ancora posto, l'eventuale evento RANDOM estratto.
+     *
+     * @param skipAlreadyStarted Se {@code true}, gli eventi già avviati oggi (prima di un riavvio) non ripartono.
+     */
+    private void startEventsForDay(long today, boolean skipAlreadyStarted) {
+        TimeManager tm = plugin.getTimeManager();
+        // Le condizioni vedono gli eventi in corso all'inizio della giornata, non quelli avviati qui sotto.
+        CalendarSnapshot snapshot = captureSnapshot(activeEvents.values());
+        // Gli eventi con una data hanno la precedenza: basta un accesso all'indice.
+        for (CustomEvent event : catalog.getDateIndex().eventsOn(tm.getAnnoCorrente(), tm.getMeseCorrente(), tm.getGiornoCorrente())) {
+            if (canStart(event) && !(skipAlreadyStarted && alreadyStartedOn(event, today)) && conditionsMet(event, snapshot)) {
+                startEvent(ActiveEvent.startingOn(event, today));
             }
         }
+        // Una sola estrazione decide se parte un evento RANDOM e quale.
+        CustomEvent randomEvent = rollRandomEvent(tm.getEnumStagioneCorrente());
+        if (randomEvent != null && canStart(randomEvent) && !(skipAlreadyStarted && alreadyStartedOn(randomEvent, today))
+                && conditionsMet(randomEvent, snapshot)) {
+            startEvent(ActiveEvent.startingOn(randomEvent, today));
+        }
     }
 
     /**
-     * Gestisce la logica da eseguire quando la data viene modificata manualmente tramite comando.
-     * Termina forzatamente l'evento attivo e riesegue il controllo di inizio giornata.
+     * Chiamato quando il calendario avanza di uno o più giorni in un colpo solo.
+     * Per un singolo giorno equivale a {@link #onNewDay()}; per salti più lunghi viene applicato
+     * solo il risultato netto calcolato da {@link #resolveInterval(long, long)}: per ogni evento
+     * al massimo un set di comandi di fine e uno di inizio, invece di uno per ogni giorno saltato.
+     *
+     * @param firstDay Il primo giorno assoluto trascorso (incluso).
+     * @param lastDay  L'ultimo giorno assoluto trascorso (incluso), cioè la data corrente.
      */
-    public void handleDateChange() {
-        LanguageManager lang = plugin.getLanguageManager();
-        if (activeEvent != null) {
-            plugin.getLogger().info(lang.getString("events.date-change-end", "{eventName}", activeEvent.displayName()));
-            endActiveEvent();
+    public void onDaysPassed(long firstDay, long lastDay) {
+        if (lastDay - firstDay < 1) {
+            onNewDay();
+            return;
+        }
+        IntervalResolution resolution = resolveInterval(firstDay, lastDay);
+        for (ActiveEvent ended : resolution.ended()) {
+            // Le voci rimaste nella coda delle scadenze vengono scartate quando arrivano in testa.
+            endEvent(ended, ended.endDay());
+        }
+        for (ActiveEvent started : resolution.started()) {
+            startEvent(started);
         }
-        onNewDay();
     }
 
     /**
-     * Valuta se un dato evento debba iniziare in base alla data corrente e al tipo di evento.
+     * Calcola, senza eseguire comandi, l'effetto netto di un intervallo di giorni sugli eventi.
+     * Terminano gli eventi attivi la cui fine cade nell'intervallo, in ordine di fine. Tra gli eventi ANNUAL e FIXED_DATE
+     * vengono avviati quelli con un'attivazione nell'intervallo ancora in corso alla fine del salto,
+     * dal più recente al più vecchio e nei limiti di concorrenza e dei gruppi; gli eventi iniziati
+     * e già conclusi all'interno dell'intervallo non producono effetti. Gli eventi RANDOM vengono
+     * tirati solo per il giorno finale, perché le estrazioni dei giorni precedenti non avrebbero
+     * effetti osservabili. Le condizioni {@code conditions.when} vengono valutate sullo stato alla
+     * fine dell'intervallo, l'unico ancora osservabile.
      *
-     * @param event L'evento da controllare.
-     * @param tm    Il TimeManager per ottenere la data e la stagione correnti.
-     * @return {@code true} se l'evento deve iniziare, altrimenti {@code false}.
+     * @param firstDay Il primo giorno assoluto trascorso (incluso).
+     * @param lastDay  L'ultimo giorno assoluto trascorso (incluso); deve essere la data corrente del TimeManager.
+     * @return Il risultato netto dell'intervallo.
      */
-    private boolean shouldEventStart(CustomEvent event, TimeManager tm) {
-        int currentDay = tm.getGiornoCorrente();
-        int currentMonth = tm.getMeseCorrente();
-        int currentYear = tm.getAnnoCorrente();
+    public IntervalResolution resolveInterval(long firstDay, long lastDay) {
+        List<ActiveEvent> ended = new ArrayList<>();
+        Map<String, ActiveEvent> survivors = new LinkedHashMap<>();
+        for (ActiveEvent active : activeEvents.values()) {
+            if (active.endDay() <= lastDay) {
+                ended.add(active);
+            } else {
+                survivors.put(active.event().id(), active);
+            }
+        }
+        ended.sort(Comparator.comparingLong(ActiveEvent::endDay));
+
+        EventDateIndex dateIndex = catalog.getDateIndex();
+        List<ActiveEvent> candidates = new ArrayList<>();
+        for (EventDateIndex.DateTrigger trigger : dateIndex.getTriggers()) {
+            if (!trigger.annual()) continue; // Le date fisse vengono lette dalla mappa ordinata qui sotto.
+            long start = trigger.lastOccurrence(lastDay);
+            if (start < firstDay) continue;
+            candidates.add(ActiveEvent.startingOn(trigger.event(), start));
+        }
+        for (Map.Entry<Long, List<CustomEvent>> entry : dateIndex.fixedBetween(firstDay, lastDay).entrySet()) {
+            for (CustomEvent event : entry.getValue()) {
+                candidates.add(ActiveEvent.startingOn(event, entry.getKey()));
+            }
+        }
+        // Gli eventi più recenti hanno la precedenza sui posti disponibili.
+        candidates.sort(Comparator.comparingLong(ActiveEvent::startDay).reversed());
 
-        return switch (event.type()) {
-            case "FIXED_DATE" -> {
-                String[] parts = event.triggerDate().split("/");
-                yield parts.length == 3 &&
-                        Integer.parseInt(parts[0]) == currentDay &&
-                        Integer.parseInt(parts[1]) == currentMonth &&
-                        Integer.parseInt(parts[2]) == currentYear;
+        CalendarSnapshot snapshot = captureSnapshot(survivors.values());
+        List<ActiveEvent> started = new ArrayList<>();
+        for (ActiveEvent candidate : candidates) {
+            if (candidate.endDay() > lastDay && canStart(candidate.event(), survivors.values())
+                    && !alreadyStartedOn(candidate.event(), candidate.startDay()) && conditionsMet(candidate.event(), snapshot)) {
+                survivors.put(candidate.event().id(), candidate);
+                started.add(candidate);
             }
-            case "ANNUAL" -> {
-                String[] parts = event.triggerDate().split("/");
-                yield parts.length == 2 &&
-                        Integer.parseInt(parts[0]) == currentDay &&
-                        Integer.parseInt(parts[1]) == currentMonth;
+        }
+
+        CustomEvent randomEvent = rollRandomEvent(plugin.getTimeManager().getEnumStagioneCorrente());
+        if (randomEvent != null && canStart(randomEvent, survivors.values()) && !alreadyStartedOn(randomEvent, lastDay)
+                && conditionsMet(randomEvent, snapshot)) {
+            started.add(ActiveEvent.startingOn(randomEvent, lastDay));
+        }
+        return new IntervalResolution(ended, started);
+    }
+
+    /**
+     * Gestisce la logica da eseguire quando la data viene modificata manualmente tramite comando.
+     * Termina forzatamente tutti gli eventi attivi e riesegue il controllo di inizio giornata.
+     */
+    public void handleDateChange() {
+        LanguageManager lang = plugin.getLanguageManager();
+        for (ActiveEvent active : List.copyOf(activeEvents.values())) {
+            plugin.getLogger().info(lang.getString("events.date-change-end", "{eventName}", active.event().displayName()));
+            endEvent(active.event().id());
+        }
+        startEventsForDay(plugin.getTimeManager().getGiornoAssoluto(), false);
+    }
+
+    /**
+     * Conclude tutti gli eventi la cui fine è pari o precedente al giorno indicato, ciascuno nel proprio giorno di fine.
+     * Vengono estratti solo gli elementi in testa alla coda delle scadenze.
+     */
+    private void endDueEvents(long day) {
+        while (!expiryQueue.isEmpty() && expiryQueue.peek().endDay() <= day) {
+            ActiveEvent due = expiryQueue.poll();
+            // Le voci di eventi già terminati manualmente vengono semplicemente scartate.
+            if (activeEvents.get(due.event().id()) == due) {
+                endEvent(due, due.endDay());
             }
-            case "RANDOM" -> {
-                TimeManager.Stagione currentSeason = tm.getEnumStagioneCorrente();
-                boolean seasonMatch = event.seasons().isEmpty() || event.seasons().contains(currentSeason.name());
-                yield seasonMatch && random.nextInt(100) < event.chance();
+        }
+    }
+
+    /**
+     * Indica se un evento è già stato avviato automaticamente in un certo giorno, ad esempio prima
+     * di un crash che ha riportato indietro la data salvata: in quel caso non va avviato di nuovo,
+     * per non ripetere le sue azioni di inizio.
+     */
+    private boolean alreadyStartedOn(CustomEvent event, long day) {
+        CalendarState.EventBookkeeping history = bookkeeping.get(event.id());
+        return history != null && history.lastStartDay() == day;
+    }
+
+    /**
+     * Cattura lo stato del calendario e del mondo principale su cui valutare le condizioni degli eventi.
+     *
+     * @param running Gli eventi da considerare in corso.
+     */
+    private CalendarSnapshot captureSnapshot(Collection<ActiveEvent> running) {
+        TimeManager tm = plugin.getTimeManager();
+        long today = tm.getGiornoAssoluto();
+        World world = Bukkit.getWorlds().stream().findFirst().orElse(null);
+        int moonPhase = 0;
+        EventAction.Weather weather = EventAction.Weather.CLEAR;
+        if (world != null) {
+            moonPhase = (int) ((world.getFullTime() / 24000L) % 8);
+            if (world.hasStorm()) {
+                weather = world.isThundering() ? EventAction.Weather.THUNDER : EventAction.Weather.RAIN;
             }
-            default -> false;
-        };
+        }
+        Set<String> runningIds = new HashSet<>();
+        for (ActiveEvent active : running) {
+            runningIds.add(active.event().id());
+        }
+        return new CalendarSnapshot(tm.getAnnoCorrente(), tm.getMeseCorrente(), tm.getGiornoCorrente(), today,
+                tm.getEnumStagioneCorrente(), CalendarEngine.dayOfWeek(today), moonPhase, weather,
+                Bukkit.getOnlinePlayers().size(), runningIds);
+    }
+
+    /**
+     * Valuta la condizione compilata di un evento. Gli eventi senza condizione non vengono misurati.
+     */
+    private boolean conditionsMet(CustomEvent event, CalendarSnapshot snapshot) {
+        if (event.condition() == EventCondition.ALWAYS) return true;
+        return testCondition(event.condition(), snapshot);
+    }
+
+    private boolean testCondition(EventCondition condition, CalendarSnapshot snapshot) {
+        long start = System.nanoTime();
+        boolean met = condition.test(snapshot);
+        conditionNanos += System.nanoTime() - start;
+        conditionChecks++;
+        return met;
+    }
+
+    /**
+     * Indica se un evento può partire rispetto agli eventi attualmente in corso.
+     */
+    private boolean canStart(CustomEvent event) {
+        return canStart(event, activeEvents.values());
+    }
+
+    /**
+     * Un evento può partire se non è già in corso, se non si supera il numero massimo
+     * di eventi contemporanei e se nessun evento del suo gruppo è già attivo.
+     */
+    private boolean canStart(CustomEvent event, Collection<ActiveEvent> running) {
+        if (running.size() >= maxConcurrentEvents) return false;
+        for (ActiveEvent active : running) {
+            if (active.event().id().equals(event.id())) return false;
+            if (!event.group().isEmpty() && event.group().equals(active.event().group())) return false;
+        }
+        return true;
     }
 
     /**
-     * Avvia un evento, impostandolo come attivo ed eseguendone i comandi di inizio.
+     * Avvia forzatamente un evento, ad esempio tramite comando.
+     * Se l'evento, o un altro evento del suo gruppo, è già attivo, viene prima terminato.
+     * Il limite di eventi contemporanei non viene applicato.
      *
      * @param event L'evento da avviare.
      */
     public void startEvent(CustomEvent event) {
-        this.activeEvent = event;
-        this.daysRemaining = event.durationDays();
+        for (ActiveEvent active : List.copyOf(activeEvents.values())) {
+            CustomEvent other = active.event();
+            if (other.id().equals(event.id()) || (!event.group().isEmpty() && event.group().equals(other.group()))) {
+                endEvent(other.id());
+            }
+        }
+        startEvent(ActiveEvent.startingOn(event, plugin.getTimeManager().getGiornoAssoluto()));
+    }
+
+    /**
+     * Registra un evento come attivo, ne pianifica la scadenza ed esegue i comandi di inizio.
+     * L'avvio viene scritto nel registro degli eventi prima che le azioni vengano eseguite.
+     *
+     * @param active L'evento da avviare, con i giorni di inizio e fine già calcolati.
+     */
+    private void startEvent(ActiveEvent active) {
+        CustomEvent event = active.event();
+        activeEvents.put(event.id(), active);
+        if (!active.isInfinite()) {
+            expiryQueue.add(active);
+        }
+        activeEventsVersion++;
+        bookkeeping.put(event.id(), bookkeeping.getOrDefault(event.id(), CalendarState.EventBookkeeping.NONE).started(active.startDay()));
 
         String displayName = event.displayName().replace('&', '§');
         String logMessage = plugin.getLanguageManager().getString("events.event-started-log", "{eventName}", displayName);
         Bukkit.getConsoleSender().sendMessage("[CalendarioPlugin] " + logMessage);
-        executeCommands(event.startCommands());
+        plugin.getHistory().record(CalendarHistory.Type.EVENT_START, active.startDay(), event.id());
+        CompletableFuture<Void> journaled = journal(EventJournal.Type.START, event.id(), active.startDay(), active.endDay());
+        executeActions(event.id(), event.startActions(), journaled);
+        scheduleEventTriggers(event);
+        grantRewards(active, Bukkit.getOnlinePlayers().stream().map(Player::getUniqueId).toList(), journaled);
     }
 
     /**
-     * Termina l'evento attualmente attivo, eseguendone i comandi di fine e resettando lo stato.
+     * Termina un evento attivo, eseguendone i comandi di fine dopo aver scritto la conclusione nel registro degli eventi.
+     * La sua voce nella coda delle scadenze viene scartata quando arriva in testa.
+     *
+     * @param eventId L'ID dell'evento da terminare.
+     * @return {@code true} se l'evento era attivo ed è stato terminato.
      */
-    public void endActiveEvent() {
-        if (activeEvent == null) return;
-        String displayName = activeEvent.displayName().replace('&', '§');
+    public boolean endEvent(String eventId) {
+        ActiveEvent active = activeEvents.get(eventId.toLowerCase());
+        if (active == null) return false;
+        endEvent(active, plugin.getTimeManager().getGiornoAssoluto());
+        return true;
+    }
+
+    /**
+     * Termina un evento attivo registrando come giorno di fine quello indicato, che per gli eventi
+     * scaduti è il loro giorno di fine anche se la data è andata oltre (es. durante un salto di più giorni).
+     *
+     * @param active L'evento attivo da terminare.
+     * @param endDay Il giorno assoluto di fine da registrare.
+     */
+    private void endEvent(ActiveEvent active, long endDay) {
+        activeEvents.remove(active.event().id());
+        activeEventsVersion++;
+        cancelEventTriggers(active.event().id());
+        bookkeeping.put(active.event().id(), bookkeeping.getOrDefault(active.event().id(), CalendarState.EventBookkeeping.NONE).ended(endDay));
+
+        CustomEvent event = active.event();
+        String displayName = event.displayName().replace('&', '§');
         plugin.getLogger().info(plugin.getLanguageManager().getString("events.event-ended-log", "{eventName}", displayName));
+        plugin.getHistory().record(CalendarHistory.Type.EVENT_END, endDay, event.id());
+        CompletableFuture<Void> journaled = journal(EventJournal.Type.END, event.id(), active.startDay(), endDay);
+        executeActions(event.id(), event.endActions(), journaled);
+        if (!event.rewards().isEmpty()) {
+            rewardLedger.discard(RewardLedger.key(event.id(), active.startDay()));
+        }
+    }
+
+    /**
+     * Termina tutti gli eventi attivi, nell'ordine in cui sono iniziati.
+     */
+    public void endAllEvents() {
+        for (ActiveEvent active : List.copyOf(activeEvents.values())) {
+            endEvent(active.event().id());
+        }
+    }
+
+    /**
+     * Consegna le ricompense degli eventi in corso a un giocatore appena entrato, se non le ha già ricevute.
+     *
+     * @param player Il giocatore entrato nel server.
+     */
+    public void grantPendingRewards(Player player) {
+        for (ActiveEvent active : activeEvents.values()) {
+            grantRewards(active, List.of(player.getUniqueId()), lastJournaled);
+        }
+    }
+
+    /**
+     * Consegna in corso delle ricompense di un avvio a un giocatore.
+     * Il campo {@code next} è l'indice della prossima ricompensa e viene modificato solo dal thread principale.
+     */
+    private static final class RewardDelivery {
+        private final String key;
+        private final UUID player;
+        private final List<EventAction.Scheduled> rewards;
+        private int next;
+        private boolean delayElapsed;
+
+        private RewardDelivery(String key, UUID player, List<EventAction.Scheduled> rewards, int next) {
+            this.key = key;
+            this.player = player;
+            this.rewards = rewards;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Assegna nel {@link RewardLedger} le ricompense di un avvio e le consegna, sul thread principale,
+     * ai giocatori che non le avevano ancora ricevute. La consegna avviene solo dopo che l'assegnazione
+     * è su disco: un riavvio non può quindi produrre doppioni. Se il giocatore esce prima di aver ricevuto
+     * tutte le ricompense, o il server si ferma, quelle mancanti vengono rimesse nel registro e gli
+     * verranno consegnate al prossimo ingresso.
+     *
+     * @param active  L'evento in corso.
+     * @param players I giocatori da premiare.
+     * @param after   La scrittura del registro degli eventi da attendere.
+     */
+    private void grantRewards(ActiveEvent active, Collection<UUID> players, CompletableFuture<Void> after) {
+        List<EventAction.Scheduled> rewards = active.event().rewards();
+        if (rewards.isEmpty() || players.isEmpty()) return;
+        String key = RewardLedger.key(active.event().id(), active.startDay());
+        rewardLedger.claim(key, players, after).thenAccept(granted -> {
+            if (granted.isEmpty()) return;
+            List<RewardDelivery> deliveries = new ArrayList<>(granted.size());
+            for (Map.Entry<UUID, Integer> entry : granted.entrySet()) {
+                RewardDelivery delivery = new RewardDelivery(key, entry.getKey(), rewards, entry.getValue());
+                pendingDeliveries.add(delivery);
+                deliveries.add(delivery);
+            }
+            if (closed) {
+                // Il plugin si sta fermando: le consegne non partirebbero più.
+                deliveries.forEach(this::releaseDelivery);
+                return;
+            }
+            Bukkit.getScheduler().runTask(plugin, () -> deliveries.forEach(this::continueDelivery));
+        });
+    }
+
+    /**
+     * Esegue le ricompense rimanenti di una consegna rispettando i ritardi tra un'azione e la successiva.
+     * Il giocatore viene cercato di nuovo prima di ogni ricompensa: se è uscito, le ricompense rimanenti
+     * vengono rimesse nel registro; se è rientrato nel frattempo, la consegna prosegue nella nuova sessione.
+     */
+    private void continueDelivery(RewardDelivery delivery) {
+        while (delivery.next < delivery.rewards.size()) {
+            if (!pendingDeliveries.contains(delivery)) return;
+            Player player = Bukkit.getPlayer(delivery.player);
+            if (player == null || !player.isOnline()) {
+                releaseDelivery(delivery);
+                return;
+            }
+            EventAction.Scheduled reward = delivery.rewards.get(delivery.next);
+            if (reward.delayTicks() > 0 && !delivery.delayElapsed) {
+                delivery.delayElapsed = true;
+                Bukkit.getScheduler().runTaskLater(plugin, () -> continueDelivery(delivery), reward.delayTicks());
+                return;
+            }
+            delivery.delayElapsed = false;
+            reward.action().executeFor(player);
+            delivery.next++;
+        }
+        pendingDeliveries.remove(delivery);
+    }
+
+    /**
+     * Rimette nel registro le ricompense non ancora consegnate, se nessun altro lo ha già fatto.
+     */
+    private void releaseDelivery(RewardDelivery delivery) {
+        if (pendingDeliveries.remove(delivery)) {
+            rewardLedger.release(delivery.key, delivery.player, delivery.next);
+        }
+    }
+
+    /**
+     * Accoda una lista di azioni compilate (comandi o azioni tipizzate).
+     * Le azioni vengono distribuite su più tick da {@link CommandDispatchQueue},
+     * mantenendo l'ordine all'interno dello stesso evento.
+     *
+     * @param eventId   L'ID dell'evento a cui appartengono le azioni.
+     * @param actions   La lista di azioni da eseguire.
+     * @param journaled La scrittura della voce del registro, da attendere prima di eseguire le azioni.
+     */
+    private void executeActions(String eventId, List<EventAction.Scheduled> actions, CompletableFuture<Void> journaled) {
+        commandQueue.enqueue(eventId, actions, journaled);
+    }
 
-        executeCommands(activeEvent.endCommands());
+    /**
+     * Scrive in background una voce del registro degli eventi con il numero di sequenza successivo.
+     */
+    private CompletableFuture<Void> journal(EventJournal.Type type, String eventId, long startDay, long endDay) {
+        EventJournal.Entry entry = new EventJournal.Entry(++journalSequence, type, eventId, startDay, endDay);
+        lastJournaled = plugin.getTimeManager().getPersistence().appendJournal(entry);
+        return lastJournaled;
+    }
 
-        this.activeEvent = null;
-        this.daysRemaining = 0;
+    /**
+     * Restituisce la sequenza dell'ultima voce del registro degli eventi, salvata insieme allo stato del calendario.
+     * @return La sequenza dell'ultima voce scritta.
+     */
+    public long getJournalSequence() {
+        return journalSequence;
     }
 
+    // --- Metodi Getter per le statistiche ---
+
+    public int getCompiledConditions() { return catalog.getCompiledConditions(); }
+    public long getConditionChecks() { return conditionChecks; }
+    public double getAverageConditionMicros() { return conditionChecks == 0 ? 0 : conditionNanos / (conditionChecks * 1000.0); }
+    public RewardLedger getRewardLedger() { return rewardLedger; }
+
     /**
-     * Esegue una lista di comandi tramite la console del server.
+     * Restituisce la coda dei comandi degli eventi, ad esempio per le statistiche.
+     * @return La coda dei comandi.
+     */
+    public CommandDispatchQueue getCommandQueue() {
+        return commandQueue;
+    }
+
+    /**
+     * Restituisce gli eventi attualmente in corso, nell'ordine in cui sono iniziati.
+     * @return La collezione non modificabile degli eventi attivi (vuota se non ce ne sono).
+     */
+    public Collection<ActiveEvent> getActiveEvents() {
+        return Collections.unmodifiableCollection(activeEvents.values());
+    }
+
+    /**
+     * Converte gli eventi in corso nel formato di salvataggio, con i giorni rimanenti rispetto a oggi.
      *
-     * @param commands La lista di stringhe di comandi da eseguire.
+     * @param today Il giorno assoluto corrente.
+     * @return Gli eventi in corso, nell'ordine in cui sono iniziati.
      */
-    private void executeCommands(List<String> commands) {
-        for (String cmd : commands) {
-            Bukkit.dispatchCommand(Bukkit.getConsoleSender(), cmd);
+    public List<CalendarState.StoredEvent> exportActiveEvents(long today) {
+        List<CalendarState.StoredEvent> stored = new ArrayList<>(activeEvents.size());
+        for (ActiveEvent active : activeEvents.values()) {
+            stored.add(new CalendarState.StoredEvent(active.event().id(), active.startDay(), active.daysRemaining(today)));
         }
+        return stored;
     }
 
     /**
-     * Restituisce l'evento attualmente attivo.
-     * @return Il CustomEvent attivo, o null se non c'è nessun evento in corso.
+     * Restituisce i dati storici degli eventi, per ID.
+     * @return La mappa non modificabile dei dati storici.
      */
-    public CustomEvent getActiveEvent() {
-        return activeEvent;
+    public Map<String, CalendarState.EventBookkeeping> getBookkeeping() {
+        return Collections.unmodifiableMap(bookkeeping);
+    }
+
+    /**
+     * Restituisce un contatore che cambia a ogni avvio o conclusione di un evento.
+     * Permette a chi mostra gli eventi attivi (es. la Boss Bar) di aggiornarsi solo quando serve.
+     * @return La versione corrente dell'insieme degli eventi attivi.
+     */
+    public int getActiveEventsVersion() {
+        return activeEventsVersion;
     }
 
     /**
@@ -214,6 +868,14 @@ public class EventManager {
      * @return Il CustomEvent, o null se non trovato.
      */
     public CustomEvent getEventById(String eventId) {
-        return loadedEvents.get(eventId.toLowerCase());
+        return catalog.getEvents().get(eventId.toLowerCase());
     }
-}
\ No newline at end of file
+
+    /**
+     * Risultato netto di un intervallo di giorni calcolato da {@link #resolveInterval(long, long)}.
+     *
+     * @param ended   Gli eventi attivi che terminano all'interno dell'intervallo.
+     * @param started Gli eventi ancora in corso alla fine dell'intervallo da avviare, con i giorni di inizio originali.
+     */
+    public record IntervalResolution(List<ActiveEvent> ended, List<ActiveEvent> started) {}
+}
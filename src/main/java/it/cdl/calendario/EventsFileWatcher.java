@@ -0,0 +1,113 @@
+package it.cdl.calendario;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Osserva la cartella del plugin con un {@link WatchService} e segnala le modifiche a un file.
+ * Gli editor spesso salvano in più scritture (o con un file temporaneo e una rinomina): le notifiche
+ * che arrivano a breve distanza vengono raggruppate e producono una sola chiamata.
+ * La callback viene eseguita sul thread dell'osservatore, mai sul thread principale.
+ */
+public class EventsFileWatcher {
+
+    /**
+     * Attesa dopo l'ultima notifica prima di considerare concluso il salvataggio del file.
+     */
+    private static final long SETTLE_MILLIS = 300;
+
+    private final CalendarioPlugin plugin;
+    private final Path folder;
+    private final Path fileName;
+    private final Runnable onChange;
+    private WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param plugin   L'istanza principale del plugin, per i messaggi di errore.
+     * @param file     Il file da osservare.
+     * @param onChange L'azione da eseguire quando il file viene creato o modificato.
+     */
+    public EventsFileWatcher(CalendarioPlugin plugin, Path file, Runnable onChange) {
+        this.plugin = plugin;
+        this.folder = file.toAbsolutePath().getParent();
+        this.fileName = file.getFileName();
+        this.onChange = onChange;
+    }
+
+    /**
+     * Avvia l'osservazione. Se il file system non la supporta, il ricaricamento automatico resta
+     * disattivato e viene mostrato un avviso.
+     */
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            plugin.getLogger().log(Level.WARNING, "Impossibile osservare " + fileName + ": ricaricamento automatico disattivato.", e);
+            return;
+        }
+        thread = new Thread(this::run, "Calendario-EventsWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Ferma l'osservazione. Una callback già in corso viene completata.
+     */
+    public void stop() {
+        if (watchService == null) return;
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+            // Il thread si ferma comunque alla prossima attesa.
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean relevant = drain(key);
+                // Raccoglie le notifiche successive finché il file non smette di cambiare.
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= drain(key);
+                }
+                if (relevant) {
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException e) {
+                        plugin.getLogger().log(Level.SEVERE, "Errore durante il ricaricamento di " + fileName, e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Arresto richiesto da stop().
+        }
+    }
+
+    /**
+     * Consuma le notifiche di una chiave e indica se riguardano il file osservato.
+     */
+    private boolean drain(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+}
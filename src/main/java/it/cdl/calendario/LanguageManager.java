@@ -1,21 +1,36 @@
 package it.cdl.calendario;
 
-// --- IMPORTAZIONI MODIFICATE ---
 import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.TextReplacementConfig; // <-- Importazione Chiave
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
-// --- FINE IMPORTAZIONI ---
 
+import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 /**
  * Gestisce il caricamento e la fornitura of stringhe of testo traducibili.
+ * <p>
+ * La lingua impostata in config.yml è quella del server (console e messaggi senza destinatario).
+ * Se {@code per-player-language} è attivo, i messaggi per i giocatori usano la lingua del loro client
+ * ({@link Player#locale()}): i file {@code lang/<lingua>.yml} vengono caricati solo alla prima richiesta
+ * e poi tenuti in cache. Una lingua senza file usa quello della stessa lingua di un altro paese
+ * (es. {@code it_CH} usa {@code it_IT}) o, in mancanza, quello del server. Le chiavi mancanti in un file
+ * vengono prese da quello del server e poi dall'inglese incluso nel plugin.
+ * <p>
+ * Ogni messaggio viene compilato in un {@link MessageTemplate} alla prima richiesta e riutilizzato: i messaggi
+ * senza segnaposto (es. {@code bossbar.weather-clear}, {@code seasons.*}) sono già pronti, gli altri vengono
+ * composti in un solo passaggio.
  */
 public class LanguageManager {
 
@@ -23,8 +38,30 @@ public class LanguageManager {
     private FileConfiguration langConfig;
     private String missingTranslationMessage;
 
+    /**
+     * La lingua del server, cioè quella del file caricato all'avvio.
+     */
+    private Locale defaultLocale;
+    private final boolean perPlayerLanguage;
+    private Bundle defaultBundle;
+    /**
+     * File di lingua già caricati, per lingua, e lingua del file da usare per ogni lingua dei client già vista.
+     */
+    private final Map<Locale, Bundle> bundles = new ConcurrentHashMap<>();
+    private final Map<Locale, Locale> resolvedLocales = new ConcurrentHashMap<>();
+
+    /**
+     * File di lingua caricato, con i messaggi già compilati per chiave.
+     */
+    private record Bundle(FileConfiguration config, Map<String, MessageTemplate> templates) {
+        private Bundle(FileConfiguration config) {
+            this(config, new ConcurrentHashMap<>());
+        }
+    }
+
     public LanguageManager(CalendarioPlugin plugin) {
         this.plugin = plugin;
+        this.perPlayerLanguage = plugin.getConfig().getBoolean("per-player-language", true);
         loadLanguageFile();
     }
 
@@ -33,6 +70,7 @@ public class LanguageManager {
         File langFile = new File(plugin.getDataFolder(), "lang/" + lang + ".yml");
         if (!langFile.exists()) {
             plugin.getLogger().warning("Language file '" + lang + ".yml' not found. Defaulting to 'en_US.yml'.");
+            lang = "en_US";
             langFile = new File(plugin.getDataFolder(), "lang/en_US.yml");
         }
 
@@ -46,7 +84,42 @@ public class LanguageManager {
             plugin.getLogger().log(Level.SEVERE, "Could not load default language file from JAR.", e);
         }
 
-        this.missingTranslationMessage = langConfig.getString("errors.missing-translation", "&cMissing translation for: {key}");
+        this.defaultLocale = toLocale(lang);
+        this.defaultBundle = new Bundle(langConfig);
+        bundles.put(defaultLocale, defaultBundle);
+        String missing = langConfig.getString("errors.missing-translation");
+        this.missingTranslationMessage = missing != null ? missing : "&cMissing translation for: {key}";
+    }
+
+    /**
+     * Restituisce la lingua del file che verrà usato per una lingua del client. Giocatori con lingue
+     * diverse ma servite dallo stesso file ottengono la stessa lingua, così i testi possono essere
+     * preparati una volta per file invece che una volta per giocatore.
+     *
+     * @param clientLocale La lingua del client, es. quella di {@link Player#locale()}.
+     * @return La lingua del file da usare (quella del server se la lingua per giocatore è disattivata).
+     */
+    public Locale resolve(Locale clientLocale) {
+        if (!perPlayerLanguage || clientLocale == null) return defaultLocale;
+        return resolvedLocales.computeIfAbsent(clientLocale, this::findBundleLocale);
+    }
+
+    /**
+     * Restituisce la lingua del file da usare per un giocatore.
+     *
+     * @param player Il giocatore.
+     * @return La lingua del file da usare.
+     */
+    public Locale resolve(Player player) {
+        return resolve(player.locale());
+    }
+
+    /**
+     * Restituisce la lingua del server.
+     * @return La lingua del file impostato in config.yml.
+     */
+    public Locale getDefaultLocale() {
+        return defaultLocale;
     }
 
     /**
@@ -56,11 +129,7 @@ public class LanguageManager {
      * @return La stringa tradotta e colorata (formato §).
      */
     public String getString(String key) {
-        String message = langConfig.getString(key, this.missingTranslationMessage.replace("{key}", key));
-
-        // Converte da '&' a '§'
-        Component component = LegacyComponentSerializer.legacyAmpersand().deserialize(message);
-        return LegacyComponentSerializer.legacySection().serialize(component);
+        return template(defaultBundle, key).render();
     }
 
     /**
@@ -70,32 +139,98 @@ public class LanguageManager {
      * @return La stringa finale, pronta per essere inviata.
      */
     public String getString(String key, String... replacements) {
+        return template(defaultBundle, key).render(replacements);
+    }
 
-        // Ottieni il messaggio GREZZO con i codici &
-        String rawMessage = langConfig.getString(key, this.missingTranslationMessage.replace("{key}", key));
-
-        // Converti il messaggio grezzo in un Componente Adventure
-        Component messageComponent = LegacyComponentSerializer.legacyAmpersand().deserialize(rawMessage);
+    /**
+     * Ottiene una stringa tradotta in una lingua, con i segnaposto sostituiti.
+     * @param locale La lingua, già risolta con {@link #resolve(Locale)} o quella di un client.
+     * @param key La chiave del messaggio.
+     * @param replacements Una serie of coppie "segnaposto, valore".
+     * @return La stringa finale, pronta per essere inviata.
+     */
+    public String getString(Locale locale, String key, String... replacements) {
+        return template(bundle(resolve(locale)), key).render(replacements);
+    }
 
-        // Esegui le sostituzioni usando l'API Adventure
-        for (int i = 0; i < replacements.length; i += 2) {
-            if (i + 1 < replacements.length) {
-                String placeholder = replacements[i]; // es. "{eventName}"
-                String rawValue = replacements[i + 1] != null ? replacements[i + 1] : ""; // es. "&e&lEgg Hunt"
+    /**
+     * Invia un messaggio a tutti i giocatori online e alla console, preparandolo una sola volta per
+     * ogni lingua in uso invece che una volta per giocatore.
+     *
+     * @param renderer Prepara il messaggio (formato §) in una lingua già risolta.
+     */
+    public void broadcast(Function<Locale, String> renderer) {
+        Map<Locale, Component> rendered = new HashMap<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Component message = rendered.computeIfAbsent(resolve(player),
+                    locale -> LegacyComponentSerializer.legacySection().deserialize(renderer.apply(locale)));
+            player.sendMessage(message);
+        }
+        Bukkit.getConsoleSender().sendMessage(rendered.computeIfAbsent(defaultLocale,
+                locale -> LegacyComponentSerializer.legacySection().deserialize(renderer.apply(locale))));
+    }
 
+    /**
+     * Restituisce il messaggio compilato di una chiave, compilandolo alla prima richiesta.
+     * Il messaggio viene cercato nel file della lingua, poi in quello del server e poi nell'inglese incluso nel plugin:
+     * a differenza di {@code getString(key, def)}, {@code getString(key)} consulta i valori di default impostati.
+     */
+    private MessageTemplate template(Bundle bundle, String key) {
+        MessageTemplate template = bundle.templates().get(key);
+        if (template == null) {
+            String rawMessage = bundle.config().getString(key);
+            if (rawMessage == null) {
+                rawMessage = this.missingTranslationMessage.replace("{key}", key);
+            }
+            template = MessageTemplate.compile(rawMessage);
+            bundle.templates().put(key, template);
+        }
+        return template;
+    }
 
-                Component valueComponent = LegacyComponentSerializer.legacyAmpersand().deserialize(rawValue);
+    /**
+     * Restituisce il file di una lingua già risolta, caricandolo alla prima richiesta.
+     */
+    private Bundle bundle(Locale locale) {
+        return bundles.computeIfAbsent(locale, this::loadBundle);
+    }
 
-                TextReplacementConfig replacementConfig = TextReplacementConfig.builder()
-                        .matchLiteral(placeholder)
-                        .replacement(valueComponent)
-                        .build();
+    private Bundle loadBundle(Locale locale) {
+        File file = new File(plugin.getDataFolder(), "lang/" + fileName(locale) + ".yml");
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(file);
+        config.setDefaults(langConfig);
+        return new Bundle(config);
+    }
 
-                // Esegui la sostituzione
-                messageComponent = messageComponent.replaceText(replacementConfig);
-            }
+    /**
+     * Cerca il file per una lingua del client: stessa lingua e paese, poi stessa lingua, poi quella del server.
+     */
+    private Locale findBundleLocale(Locale clientLocale) {
+        if (clientLocale.getLanguage().equals(defaultLocale.getLanguage())
+                && (clientLocale.getCountry().isEmpty() || clientLocale.getCountry().equals(defaultLocale.getCountry()))) {
+            return defaultLocale;
+        }
+        File folder = new File(plugin.getDataFolder(), "lang");
+        if (new File(folder, fileName(clientLocale) + ".yml").isFile()) {
+            return toLocale(fileName(clientLocale));
         }
+        File[] sameLanguage = folder.listFiles((dir, name) ->
+                name.toLowerCase(Locale.ROOT).startsWith(clientLocale.getLanguage() + "_") && name.endsWith(".yml"));
+        if (sameLanguage != null && sameLanguage.length > 0) {
+            String name = sameLanguage[0].getName();
+            return toLocale(name.substring(0, name.length() - ".yml".length()));
+        }
+        return defaultLocale;
+    }
+
+    /**
+     * Converte il nome di un file di lingua (es. {@code it_IT}) in una {@link Locale}.
+     */
+    private static Locale toLocale(String name) {
+        return Locale.forLanguageTag(name.replace('_', '-'));
+    }
 
-        return LegacyComponentSerializer.legacySection().serialize(messageComponent);
+    private static String fileName(Locale locale) {
+        return locale.getCountry().isEmpty() ? locale.getLanguage() : locale.getLanguage() + "_" + locale.getCountry();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,431 @@
+package it.cdl.calendario;
+
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Messaggio di un file di lingua compilato una volta sola: il testo viene diviso in tratti con il colore e gli
+ * stili già risolti, e i segnaposto ({@code {nome}}) diventano tratti a sé che ereditano lo stile del punto in cui si trovano.
+ * La sostituzione avviene quindi in un solo passaggio sul testo, senza convertire il messaggio in un
+ * {@link net.kyori.adventure.text.Component} e senza un'espressione regolare per ogni segnaposto.
+ * I messaggi senza segnaposto vengono preparati una volta e restituiti così come sono.
+ * <p>
+ * Il risultato è identico a quello della sostituzione con Adventure ({@code TextReplacementConfig} e
+ * {@link LegacyComponentSerializer}): i codici {@code &} di un valore valgono solo per il valore, che eredita
+ * il colore e gli stili del messaggio, e i codici vengono scritti solo quando lo stile cambia davvero.
+ * Viene riprodotto anche il caso in cui Adventure sostituisce un intero componente: se il segnaposto è tutto il
+ * testo di un componente e il valore inizia con un solo gruppo di codici, quello stile passa al resto del componente.
+ * I valori non vengono riesaminati in cerca di altri segnaposto; i segnaposto senza valore restano nel testo.
+ */
+public final class MessageTemplate {
+
+    /**
+     * Codici legacy: gli indici 0-15 sono i colori, 16-20 gli stili (k, l, m, n, o), 21 il reset.
+     */
+    private static final String CODES = "0123456789abcdefklmnor";
+    private static final int FIRST_DECORATION = 16;
+    private static final int RESET = 21;
+    private static final int NO_COLOR = -1;
+    /**
+     * Stile di un valore che non cambia lo stile del componente che sostituisce.
+     */
+    private static final int NO_ROOT_STYLE = -1;
+
+    /**
+     * Testo di ogni tratto; per i segnaposto, il segnaposto stesso (es. {@code {eventName}}).
+     */
+    private final String[] texts;
+    private final boolean[] slots;
+    /**
+     * Colore (indice in {@link #CODES}, o {@link #NO_COLOR}) e stili (un bit per stile) di ogni tratto.
+     */
+    private final int[] colors;
+    private final int[] decorations;
+    /**
+     * Posizione di ogni tratto nell'albero che Adventure costruisce dal messaggio: i tratti del testo dello
+     * stesso componente ({@code [contentStart, contentEnd)}), la fine dei suoi discendenti ({@code subtreeEnd}),
+     * se il componente è la radice e se la parte del messaggio che contiene il tratto imposta un colore proprio.
+     */
+    private final int[] contentStart;
+    private final int[] contentEnd;
+    private final int[] subtreeEnd;
+    private final boolean[] inRoot;
+    private final boolean[] partColored;
+    /**
+     * Il messaggio già pronto, se non ha segnaposto; altrimenti {@code null}.
+     */
+    private final String staticText;
+    private final int literalLength;
+
+    private MessageTemplate(Builder builder, String staticText) {
+        int runs = builder.texts.size();
+        this.texts = builder.texts.toArray(new String[0]);
+        this.slots = new boolean[runs];
+        this.colors = new int[runs];
+        this.decorations = new int[runs];
+        this.contentStart = new int[runs];
+        this.contentEnd = new int[runs];
+        this.subtreeEnd = new int[runs];
+        this.inRoot = new boolean[runs];
+        this.partColored = new boolean[runs];
+        int length = 0;
+        for (int run = 0; run < runs; run++) {
+            int[] info = builder.info.get(run);
+            slots[run] = info[0] != 0;
+            colors[run] = info[1];
+            decorations[run] = info[2];
+            contentStart[run] = info[3];
+            contentEnd[run] = info[4];
+            subtreeEnd[run] = info[5] < 0 ? runs : info[5];
+            inRoot[run] = info[6] != 0;
+            partColored[run] = info[7] != 0;
+            length += texts[run].length();
+        }
+        this.staticText = staticText;
+        this.literalLength = length;
+    }
+
+    /**
+     * Compila un messaggio di un file di lingua.
+     *
+     * @param raw Il messaggio con i codici colore {@code &}.
+     * @return Il messaggio compilato.
+     */
+    public static MessageTemplate compile(String raw) {
+        Builder builder = new Builder();
+        int color = NO_COLOR;
+        int decoration = 0;
+        boolean firstCodes = true;
+
+        int i = 0;
+        while (i < raw.length()) {
+            if (codeAt(raw, i) >= 0) {
+                // Un gruppo di codici consecutivi: con un colore o un reset inizia una nuova parte del messaggio,
+                // con soli stili un componente figlio di quello corrente.
+                boolean newPart = firstCodes;
+                builder.flushLiteral();
+                while (i < raw.length() && codeAt(raw, i) >= 0) {
+                    int code = codeAt(raw, i);
+                    if (code < FIRST_DECORATION || code == RESET) {
+                        // Un colore o un reset azzera gli stili precedenti, come nei codici legacy di Minecraft.
+                        color = code == RESET ? NO_COLOR : code;
+                        decoration = 0;
+                        newPart = true;
+                    } else {
+                        decoration |= 1 << (code - FIRST_DECORATION);
+                    }
+                    i += 2;
+                }
+                builder.color = color;
+                builder.decoration = decoration;
+                builder.startNode(newPart, color != NO_COLOR);
+                firstCodes = false;
+                continue;
+            }
+            char c = raw.charAt(i);
+            if (c == '{') {
+                int end = raw.indexOf('}', i + 1);
+                if (end > i + 1 && isIdentifier(raw, i + 1, end)) {
+                    builder.addSlot(raw.substring(i, end + 1));
+                    i = end + 1;
+                    continue;
+                }
+            }
+            builder.literal.append(c);
+            i++;
+        }
+        builder.finish();
+
+        String staticText = null;
+        if (builder.slotCount == 0) {
+            // Nessun segnaposto: il messaggio viene convertito una volta sola, esattamente come prima.
+            staticText = LegacyComponentSerializer.legacySection().serialize(
+                    LegacyComponentSerializer.legacyAmpersand().deserialize(raw));
+        }
+        return new MessageTemplate(builder, staticText);
+    }
+
+    /**
+     * Compone il messaggio con i valori dei segnaposto.
+     *
+     * @param replacements Una serie di coppie "segnaposto, valore" (es. "{eventName}", "&e&lEgg Hunt");
+     *                     i codici {@code &} dei valori vengono convertiti.
+     * @return Il messaggio finale (formato §).
+     */
+    public String render(String... replacements) {
+        if (staticText != null) return staticText;
+        int runs = texts.length;
+        // Per ogni segnaposto, l'indice della sua coppia: Adventure li sostituiva uno alla volta in quest'ordine.
+        int[] passes = new int[runs];
+        for (int run = 0; run < runs; run++) {
+            passes[run] = slots[run] ? passOf(texts[run], replacements) : -1;
+        }
+        int[] overrideColors = null;
+        int[] overrideDecorations = null;
+        for (int slot = 0; slot < runs; slot++) {
+            if (passes[slot] < 0 || !replacesWholeComponent(slot, passes)) continue;
+            int rootStyle = rootStyleOf(valueAt(replacements, passes[slot]));
+            if (rootStyle == NO_ROOT_STYLE) continue;
+            if (overrideColors == null) {
+                overrideColors = new int[runs];
+                overrideDecorations = new int[runs];
+                Arrays.fill(overrideColors, NO_COLOR);
+            }
+            int rootColor = rootStyle >> 8;
+            int end = affectedEnd(slot, passes);
+            for (int run = slot + 1; run < end; run++) {
+                // Le parti del messaggio con un colore proprio lo mantengono.
+                boolean keepsColor = inRoot[slot] && run >= contentEnd[slot] && partColored[run];
+                if (rootColor != NO_COLOR && !keepsColor) overrideColors[run] = rootColor;
+                overrideDecorations[run] |= rootStyle & 0xFF;
+            }
+        }
+
+        LegacyWriter out = new LegacyWriter(literalLength + 16 * replacements.length);
+        for (int run = 0; run < runs; run++) {
+            int color = overrideColors != null && overrideColors[run] != NO_COLOR ? overrideColors[run] : colors[run];
+            int decoration = decorations[run] | (overrideDecorations != null ? overrideDecorations[run] : 0);
+            if (passes[run] < 0) {
+                out.text(texts[run], 0, texts[run].length(), color, decoration);
+            } else {
+                appendValue(out, valueAt(replacements, passes[run]), color, decoration);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Indica se il messaggio non ha segnaposto.
+     * @return {@code true} se il messaggio è sempre lo stesso.
+     */
+    public boolean isStatic() {
+        return staticText != null;
+    }
+
+    private static int passOf(String slot, String[] replacements) {
+        for (int i = 0; i + 1 < replacements.length; i += 2) {
+            if (slot.equals(replacements[i])) return i;
+        }
+        return -1;
+    }
+
+    private static String valueAt(String[] replacements, int pass) {
+        return replacements[pass + 1] != null ? replacements[pass + 1] : "";
+    }
+
+    /**
+     * Indica se, quando Adventure arriva a questo segnaposto, il segnaposto è l'intero testo di un componente:
+     * i segnaposto sostituiti prima hanno già diviso il testo in componenti separati.
+     */
+    private boolean replacesWholeComponent(int slot, int[] passes) {
+        int pass = passes[slot];
+        boolean startsComponent = slot == contentStart[slot] || (passes[slot - 1] >= 0 && passes[slot - 1] < pass);
+        boolean endsComponent = slot + 1 == contentEnd[slot] || (passes[slot + 1] >= 0 && passes[slot + 1] < pass);
+        return startsComponent && endsComponent;
+    }
+
+    /**
+     * Restituisce la fine dei tratti che diventano figli del valore quando sostituisce un intero componente:
+     * il resto del componente originale con i suoi discendenti, oppure il resto del pezzo di testo creato
+     * dal segnaposto che lo precede.
+     */
+    private int affectedEnd(int slot, int[] passes) {
+        if (slot == contentStart[slot]) return subtreeEnd[slot];
+        int creator = passes[slot - 1];
+        int end = slot + 1;
+        while (end < contentEnd[slot] && !(passes[end] >= 0 && passes[end] <= creator)) end++;
+        return end;
+    }
+
+    /**
+     * Restituisce lo stile del componente che Adventure ricava da un valore, se il valore è un solo gruppo
+     * che inizia con dei codici: colore nei bit alti e stili negli 8 bit bassi, altrimenti {@link #NO_ROOT_STYLE}.
+     */
+    private static int rootStyleOf(String value) {
+        if (value.isEmpty() || codeAt(value, 0) < 0) return NO_ROOT_STYLE;
+        int color = NO_COLOR;
+        int decoration = 0;
+        int i = 0;
+        while (i < value.length() && codeAt(value, i) >= 0) {
+            int code = codeAt(value, i);
+            if (code < FIRST_DECORATION || code == RESET) {
+                color = code == RESET ? NO_COLOR : code;
+                decoration = 0;
+            } else {
+                decoration |= 1 << (code - FIRST_DECORATION);
+            }
+            i += 2;
+        }
+        for (; i < value.length(); i++) {
+            int code = codeAt(value, i);
+            // Un colore o un reset più avanti crea un'altra parte: la radice del valore resta senza stile.
+            if (code >= 0 && (code < FIRST_DECORATION || code == RESET)) return NO_ROOT_STYLE;
+            if (code >= 0) i++;
+        }
+        if (color == NO_COLOR && decoration == 0) return NO_ROOT_STYLE;
+        return (color << 8) | decoration;
+    }
+
+    /**
+     * Scrive un valore con i suoi codici {@code &}: il testo prima del primo codice ha lo stile del segnaposto,
+     * dopo un colore o un reset il valore riparte dallo stile del segnaposto con il nuovo colore.
+     */
+    private static void appendValue(LegacyWriter out, String value, int slotColor, int slotDecoration) {
+        int color = NO_COLOR;
+        int decoration = 0;
+        int start = 0;
+        int i = 0;
+        while (i < value.length()) {
+            int code = codeAt(value, i);
+            if (code < 0) {
+                i++;
+                continue;
+            }
+            out.text(value, start, i, color == NO_COLOR ? slotColor : color, slotDecoration | decoration);
+            if (code < FIRST_DECORATION || code == RESET) {
+                color = code == RESET ? NO_COLOR : code;
+                decoration = 0;
+            } else {
+                decoration |= 1 << (code - FIRST_DECORATION);
+            }
+            i += 2;
+            start = i;
+        }
+        out.text(value, start, value.length(), color == NO_COLOR ? slotColor : color, slotDecoration | decoration);
+    }
+
+    /**
+     * Restituisce l'indice in {@link #CODES} del codice {@code &} che inizia in una posizione, o -1.
+     */
+    private static int codeAt(String text, int index) {
+        if (text.charAt(index) != '&' || index + 1 >= text.length()) return -1;
+        return CODES.indexOf(Character.toLowerCase(text.charAt(index + 1)));
+    }
+
+    private static boolean isIdentifier(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Raccoglie i tratti durante la compilazione, insieme alla loro posizione nell'albero dei componenti:
+     * una radice con il testo prima del primo codice, una parte per ogni colore o reset e, dentro ogni parte,
+     * una catena di componenti figli per gli stili aggiunti dopo il testo.
+     */
+    private static final class Builder {
+        private final List<String> texts = new ArrayList<>();
+        /**
+         * Per tratto: segnaposto, colore, stili, inizio e fine del testo del componente, fine dei discendenti
+         * (-1 = fino alla fine del messaggio), radice, parte con un colore proprio.
+         */
+        private final List<int[]> info = new ArrayList<>();
+        private final StringBuilder literal = new StringBuilder();
+        private int color = NO_COLOR;
+        private int decoration = 0;
+        private int nodeStart = 0;
+        private int partStart = -1;
+        private boolean root = true;
+        private boolean colored = false;
+        private int slotCount = 0;
+
+        private void addSlot(String slot) {
+            flushLiteral();
+            addRun(slot, true);
+            slotCount++;
+        }
+
+        private void startNode(boolean newPart, boolean partHasColor) {
+            flushLiteral();
+            closeNode();
+            if (newPart) {
+                closePart();
+                partStart = texts.size();
+                colored = partHasColor;
+            }
+            root = false;
+            nodeStart = texts.size();
+        }
+
+        private void finish() {
+            flushLiteral();
+            closeNode();
+            closePart();
+        }
+
+        private void flushLiteral() {
+            if (literal.isEmpty()) return;
+            addRun(literal.toString(), false);
+            literal.setLength(0);
+        }
+
+        private void addRun(String text, boolean slot) {
+            texts.add(text);
+            info.add(new int[]{slot ? 1 : 0, color, decoration, nodeStart, -1, -1, root ? 1 : 0, colored ? 1 : 0});
+        }
+
+        private void closeNode() {
+            for (int run = nodeStart; run < texts.size(); run++) {
+                info.get(run)[4] = texts.size();
+            }
+        }
+
+        private void closePart() {
+            if (partStart < 0) return;
+            for (int run = partStart; run < texts.size(); run++) {
+                info.get(run)[5] = texts.size();
+            }
+        }
+    }
+
+    /**
+     * Scrive tratti di testo con il loro stile come il serializzatore legacy di Adventure: un colore diverso,
+     * uno stile da togliere o un reset appena scritto riscrivono colore e stili per intero, altrimenti
+     * vengono aggiunti solo gli stili mancanti. Un codice uguale all'ultimo scritto non viene ripetuto.
+     */
+    private static final class LegacyWriter {
+        private final StringBuilder out;
+        private int color = NO_COLOR;
+        private int decoration = 0;
+        private int lastCode = -1;
+
+        private LegacyWriter(int capacity) {
+            this.out = new StringBuilder(capacity);
+        }
+
+        private void text(String text, int from, int to, int runColor, int runDecoration) {
+            if (from >= to) return;
+            if (runColor != color || lastCode == RESET || (runDecoration & decoration) != decoration) {
+                code(runColor == NO_COLOR ? RESET : runColor);
+                color = runColor;
+                for (int bit = 0; bit < 5; bit++) {
+                    if ((runDecoration & (1 << bit)) != 0) code(FIRST_DECORATION + bit);
+                }
+            } else {
+                int added = runDecoration & ~decoration;
+                for (int bit = 0; bit < 5; bit++) {
+                    if ((added & (1 << bit)) != 0) code(FIRST_DECORATION + bit);
+                }
+            }
+            decoration = runDecoration;
+            out.append(text, from, to);
+        }
+
+        private void code(int code) {
+            if (code != lastCode) {
+                out.append('§').append(CODES.charAt(code));
+            }
+            lastCode = code;
+        }
+
+        @Override
+        public String toString() {
+            return out.toString();
+        }
+    }
+}
@@ -1,14 +1,18 @@
 package it.cdl.calendario;
 
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLocaleChangeEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 /**
  * Gestisce gli eventi legati alla connessione e disconnessione dei giocatori.
  * Le sue responsabilità principali sono l'inizializzazione e la pulizia
- * dei sistemi specifici per ogni giocatore, come la BossBar e i Resource Pack stagionali.
+ * dei sistemi specifici per ogni giocatore, come la BossBar e i Resource Pack stagionali,
+ * e segue i cambi di mondo e di lingua che cambiano la BossBar condivisa del giocatore.
  * È implementata come "record" Java per una sintassi più compatta e immutabile.
  */
 public record PlayerConnectionListener(CalendarioPlugin plugin) implements Listener {
@@ -22,6 +26,7 @@ public record PlayerConnectionListener(CalendarioPlugin plugin) implements Liste
      * <li>Aggiunge il giocatore al {@link BossBarManager} per visualizzare la barra delle informazioni.</li>
      * <li>Invia al giocatore il resource pack stagionale corretto con un breve ritardo,
      * per garantire che il client sia pronto a riceverlo.</li>
+     * <li>Consegna le ricompense degli eventi in corso non ancora ricevute.</li>
      * </ul>
      *
      * @param event L'evento di join del giocatore, fornito da Bukkit.
@@ -29,6 +34,7 @@ public record PlayerConnectionListener(CalendarioPlugin plugin) implements Liste
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
         plugin.getBossBarManager().addPlayer(event.getPlayer());
+        plugin.getEventManager().grantPendingRewards(event.getPlayer());
 
         TimeManager.Stagione currentSeason = plugin.getTimeManager().getEnumStagioneCorrente();
 
@@ -66,4 +72,25 @@ public record PlayerConnectionListener(CalendarioPlugin plugin) implements Liste
     public void onPlayerQuit(PlayerQuitEvent event) {
         plugin.getBossBarManager().removePlayer(event.getPlayer());
     }
-}
\ No newline at end of file
+
+    /**
+     * Sposta il giocatore sulla BossBar condivisa del nuovo mondo, che può mostrare un meteo diverso.
+     *
+     * @param event L'evento di cambio mondo, fornito da Bukkit.
+     */
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        plugin.getBossBarManager().movePlayer(event.getPlayer(), event.getPlayer().getWorld(), event.getPlayer().locale());
+    }
+
+    /**
+     * Sposta il giocatore sulla BossBar condivisa della sua nuova lingua.
+     * La lingua viene letta dall'evento perché quella del giocatore non è ancora aggiornata.
+     *
+     * @param event L'evento di cambio lingua del client, fornito da Bukkit.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLocaleChange(PlayerLocaleChangeEvent event) {
+        plugin.getBossBarManager().movePlayer(event.getPlayer(), event.getPlayer().getWorld(), event.locale());
+    }
+}
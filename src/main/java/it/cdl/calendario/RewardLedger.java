@@ -0,0 +1,284 @@
+package it.cdl.calendario;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Registro delle ricompense consegnate per ogni avvio di un evento, così che chi entra nel server
+ * mentre l'evento è in corso riceva la sua ricompensa una e una sola volta.
+ * <p>
+ * Ogni avvio (evento + giorno di inizio) ha un file nella cartella {@code rewards} con un record di
+ * {@value #RECORD_SIZE} byte per ogni variazione: l'UUID del giocatore (16 byte) e lo stato (4 byte):
+ * {@value #CLAIMED} se la consegna è iniziata o conclusa, altrimenti l'indice della prima ricompensa ancora
+ * da consegnare, perché il giocatore è uscito prima di riceverle tutte (0 = nessuna consegnata).
+ * Vale l'ultimo record di ogni giocatore; un record troncato in coda, tipico di un crash, viene scartato.
+ * <p>
+ * Tutte le letture e le scritture avvengono su un thread dedicato, che è anche l'unico a toccare gli
+ * insiemi in memoria: le richieste per lo stesso giocatore vengono quindi servite in ordine e una
+ * ricompensa viene considerata assegnata solo dopo che il record è stato forzato su disco.
+ */
+public class RewardLedger {
+
+    private static final int RECORD_SIZE = 20;
+    private static final int CLAIMED = -1;
+    private static final String EXTENSION = ".claims";
+
+    private final CalendarioPlugin plugin;
+    private final File folder;
+    private final ExecutorService executor;
+    private volatile Thread writerThread;
+
+    // --- Stato usato solo dal thread del registro ---
+    /**
+     * Stato di ogni giocatore per avvio: {@link #CLAIMED} o l'indice da cui riprendere la consegna.
+     * Un giocatore assente non ha ricevuto nulla.
+     */
+    private final Map<String, Map<UUID, Integer>> claims = new HashMap<>();
+    private final Map<String, FileChannel> channels = new HashMap<>();
+
+    // Statistiche
+    private volatile long totalClaims = 0;
+    private volatile long totalDuplicatesPrevented = 0;
+    private volatile int openLedgers = 0;
+
+    /**
+     * @param plugin L'istanza principale del plugin.
+     */
+    public RewardLedger(CalendarioPlugin plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "rewards");
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Calendario-Rewards");
+            thread.setDaemon(true);
+            writerThread = thread;
+            return thread;
+        });
+    }
+
+    /**
+     * Costruisce la chiave di un avvio di un evento.
+     *
+     * @param eventId  L'ID dell'evento.
+     * @param startDay Il giorno assoluto di inizio.
+     * @return La chiave, usata anche come nome del file.
+     */
+    public static String key(String eventId, long startDay) {
+        return eventId + "-" + startDay;
+    }
+
+    /**
+     * Assegna la ricompensa di un avvio ai giocatori che non l'hanno ancora ricevuta per intero.
+     * Il risultato contiene solo i giocatori a cui va consegnata adesso, con l'indice della prima
+     * ricompensa da consegnare; gli altri l'hanno già avuta o la stanno ricevendo.
+     *
+     * @param key     La chiave dell'avvio (vedi {@link #key(String, long)}).
+     * @param players I giocatori candidati.
+     * @param after   Operazione da attendere prima di scrivere, ad esempio la voce del registro degli eventi.
+     * @return Gli UUID a cui consegnare la ricompensa con l'indice di partenza, dopo che l'assegnazione è su disco.
+     */
+    public CompletableFuture<Map<UUID, Integer>> claim(String key, Collection<UUID> players, CompletableFuture<?> after) {
+        List<UUID> candidates = List.copyOf(players);
+        return after.handle((ignored, error) -> null).thenApplyAsync(ignored -> {
+            Map<UUID, Integer> states = claimsOf(key);
+            Map<UUID, Integer> granted = new HashMap<>();
+            for (UUID player : candidates) {
+                int state = states.getOrDefault(player, 0);
+                if (state == CLAIMED) {
+                    totalDuplicatesPrevented++;
+                } else {
+                    granted.put(player, state);
+                }
+            }
+            if (granted.isEmpty()) return granted;
+            try {
+                write(key, granted.keySet(), CLAIMED);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Impossibile registrare le ricompense di " + key + ": non verranno consegnate.", e);
+                return Map.of();
+            }
+            for (UUID player : granted.keySet()) {
+                states.put(player, CLAIMED);
+            }
+            totalClaims += granted.size();
+            return granted;
+        }, executor);
+    }
+
+    /**
+     * Annulla l'assegnazione delle ricompense non ancora consegnate, ad esempio perché il giocatore
+     * è uscito prima di riceverle tutte: le riceverà, a partire da {@code fromEntry}, al prossimo ingresso.
+     * Non fa nulla se il giocatore non ha una consegna in corso. Chiamato dal thread del registro
+     * (ad esempio da una callback di {@link #claim}) viene eseguito subito, anche durante la chiusura.
+     *
+     * @param key       La chiave dell'avvio.
+     * @param player    Il giocatore.
+     * @param fromEntry L'indice della prima ricompensa non consegnata.
+     */
+    public void release(String key, UUID player, int fromEntry) {
+        Runnable task = () -> {
+            Map<UUID, Integer> states = claims.containsKey(key) || file(key).exists() ? claimsOf(key) : null;
+            if (states == null || states.getOrDefault(player, 0) != CLAIMED) return;
+            try {
+                write(key, List.of(player), fromEntry);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Impossibile annullare la ricompensa di " + key, e);
+                return;
+            }
+            states.put(player, fromEntry);
+        };
+        if (Thread.currentThread() == writerThread) {
+            task.run();
+        } else if (!executor.isShutdown()) {
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Elimina il registro di un avvio concluso.
+     *
+     * @param key La chiave dell'avvio.
+     */
+    public void discard(String key) {
+        if (executor.isShutdown()) return;
+        executor.execute(() -> {
+            claims.remove(key);
+            closeChannel(key);
+            try {
+                Files.deleteIfExists(file(key).toPath());
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Impossibile eliminare il registro delle ricompense " + key, e);
+            }
+            openLedgers = claims.size();
+        });
+    }
+
+    /**
+     * Elimina i registri degli avvii non più in corso, ad esempio eventi conclusi mentre il server era spento.
+     *
+     * @param activeKeys Le chiavi degli avvii ancora in corso.
+     */
+    public void retainOnly(Collection<String> activeKeys) {
+        Set<String> keep = Set.copyOf(activeKeys);
+        executor.execute(() -> {
+            File[] files = folder.listFiles((dir, name) -> name.endsWith(EXTENSION));
+            if (files == null) return;
+            for (File file : files) {
+                String key = file.getName().substring(0, file.getName().length() - EXTENSION.length());
+                if (!keep.contains(key)) {
+                    claims.remove(key);
+                    closeChannel(key);
+                    if (!file.delete()) {
+                        plugin.getLogger().warning("Impossibile eliminare il registro delle ricompense " + file.getName());
+                    }
+                }
+            }
+            openLedgers = claims.size();
+        });
+    }
+
+    /**
+     * Completa le scritture in attesa e chiude i file.
+     */
+    public void close() {
+        executor.execute(() -> {
+            for (String key : List.copyOf(channels.keySet())) {
+                closeChannel(key);
+            }
+        });
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Scrittura del registro delle ricompense non completata entro 10 secondi.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Restituisce l'insieme dei giocatori già ricompensati per un avvio, leggendolo dal file la prima volta.
+     */
+    private Map<UUID, Integer> claimsOf(String key) {
+        Map<UUID, Integer> states = claims.get(key);
+        if (states != null) return states;
+        states = new HashMap<>();
+        File file = file(key);
+        if (file.exists()) {
+            try {
+                byte[] content = Files.readAllBytes(file.toPath());
+                int valid = content.length - content.length % RECORD_SIZE;
+                ByteBuffer buffer = ByteBuffer.wrap(content, 0, valid);
+                while (buffer.hasRemaining()) {
+                    states.put(new UUID(buffer.getLong(), buffer.getLong()), buffer.getInt());
+                }
+                if (valid < content.length) {
+                    channel(key).truncate(valid);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Impossibile leggere il registro delle ricompense " + key, e);
+            }
+        }
+        claims.put(key, states);
+        openLedgers = claims.size();
+        return states;
+    }
+
+    private void write(String key, Collection<UUID> players, int state) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(players.size() * RECORD_SIZE);
+        for (UUID player : players) {
+            buffer.putLong(player.getMostSignificantBits()).putLong(player.getLeastSignificantBits()).putInt(state);
+        }
+        buffer.flip();
+        FileChannel channel = channel(key);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    private FileChannel channel(String key) throws IOException {
+        FileChannel channel = channels.get(key);
+        if (channel == null) {
+            Files.createDirectories(folder.toPath());
+            channel = FileChannel.open(file(key).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channels.put(key, channel);
+        }
+        return channel;
+    }
+
+    private void closeChannel(String key) {
+        FileChannel channel = channels.remove(key);
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Ogni record è già stato forzato su disco.
+        }
+    }
+
+    private File file(String key) {
+        return new File(folder, key + EXTENSION);
+    }
+
+    // --- Metodi Getter per le statistiche ---
+
+    public long getTotalClaims() { return totalClaims; }
+    public long getTotalDuplicatesPrevented() { return totalDuplicatesPrevented; }
+    public int getOpenLedgers() { return openLedgers; }
+}
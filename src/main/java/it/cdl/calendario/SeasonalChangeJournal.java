@@ -0,0 +1,207 @@
+package it.cdl.calendario;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Registro persistente delle modifiche fatte dal plugin, salvato nel PersistentDataContainer di ogni chunk.
+ * Ogni voce è un intero che impacchetta la posizione del blocco all'interno del chunk e il tipo di modifica:
+ * <pre>
+ *  bit  0-3   X locale (0-15)
+ *  bit  4-7   Z locale (0-15)
+ *  bit  8-19  Y relativa all'altezza minima del mondo (0-4095)
+ *  bit 20-23  tipo di modifica ({@link Kind})
+ * </pre>
+ * Grazie al registro, il disgelo primaverile e il rollback amministrativo possono colpire
+ * esattamente i blocchi piazzati in inverno. Le operazioni vengono raccolte durante un tick
+ * e scritte nel chunk una sola volta con {@link #flush()}.
+ * Tutti i metodi devono essere chiamati dal thread principale.
+ */
+public class SeasonalChangeJournal {
+
+    /**
+     * Tipo di modifica registrata, con il materiale piazzato e quello originale da ripristinare.
+     */
+    public enum Kind {
+        ICE(Material.ICE, Material.WATER),
+        SNOW(Material.SNOW, Material.AIR);
+
+        private final Material placed;
+        private final Material original;
+
+        Kind(Material placed, Material original) {
+            this.placed = placed;
+            this.original = original;
+        }
+
+        public Material placed() { return placed; }
+        public Material original() { return original; }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final int POSITION_MASK = 0xFFFFF;
+
+    private final NamespacedKey journalKey;
+
+    /**
+     * Operazioni in attesa di essere scritte, per chunk. Il valore associato a una posizione è
+     * la voce impacchettata da aggiungere, oppure {@code -1} se la voce va rimossa.
+     */
+    private final Map<ChunkRef, Map<Integer, Integer>> pendingOps = new LinkedHashMap<>();
+
+    /**
+     * Costruttore del registro.
+     * @param plugin L'istanza principale del plugin, usata per creare la chiave del PersistentDataContainer.
+     */
+    public SeasonalChangeJournal(CalendarioPlugin plugin) {
+        this.journalKey = new NamespacedKey(plugin, "seasonal_changes");
+    }
+
+    /**
+     * Aggiorna il registro dopo una modifica applicata dalla {@link BlockChangeQueue}.
+     * Neve e ghiaccio piazzati vengono registrati; le modifiche che rimuovono neve o ghiaccio
+     * cancellano l'eventuale voce nella stessa posizione.
+     *
+     * @param block  Il blocco modificato.
+     * @param change La modifica applicata.
+     */
+    public void onApplied(Block block, BlockChange change) {
+        Kind kind = recordedKind(change);
+        if (kind != null) {
+            stage(block, position(block) | (kind.ordinal() << 20));
+        } else if (isSeasonalMaterial(change.expected())) {
+            stage(block, -1);
+        }
+    }
+
+    /**
+     * Aggiorna il registro quando una modifica viene scartata perché il blocco non è più quello atteso.
+     * Se la modifica voleva rimuovere neve o ghiaccio, la voce corrispondente non è più valida e viene cancellata.
+     *
+     * @param block  Il blocco che non corrispondeva.
+     * @param change La modifica scartata.
+     */
+    public void onSkipped(Block block, BlockChange change) {
+        if (isSeasonalMaterial(change.expected())) {
+            stage(block, -1);
+        }
+    }
+
+    /**
+     * Scrive nei chunk tutte le operazioni raccolte. I chunk non più caricati vengono ignorati.
+     */
+    public void flush() {
+        if (pendingOps.isEmpty()) return;
+        for (Map.Entry<ChunkRef, Map<Integer, Integer>> entry : pendingOps.entrySet()) {
+            ChunkRef ref = entry.getKey();
+            World world = Bukkit.getWorld(ref.worldId());
+            if (world == null || !world.isChunkLoaded(ref.x(), ref.z())) continue;
+
+            Chunk chunk = world.getChunkAt(ref.x(), ref.z());
+            Map<Integer, Integer> merged = new LinkedHashMap<>();
+            for (int packed : read(chunk)) {
+                merged.put(packed & POSITION_MASK, packed);
+            }
+            for (Map.Entry<Integer, Integer> op : entry.getValue().entrySet()) {
+                if (op.getValue() == -1) {
+                    merged.remove(op.getKey());
+                } else {
+                    merged.put(op.getKey(), op.getValue());
+                }
+            }
+            write(chunk, merged.values().stream().mapToInt(Integer::intValue).toArray());
+        }
+        pendingOps.clear();
+    }
+
+    /**
+     * Legge le voci registrate in un chunk.
+     *
+     * @param chunk Il chunk (caricato) da leggere.
+     * @return Le voci impacchettate; un array vuoto se il chunk non ha modifiche registrate.
+     */
+    public int[] read(Chunk chunk) {
+        int[] entries = chunk.getPersistentDataContainer().get(journalKey, PersistentDataType.INTEGER_ARRAY);
+        return entries != null ? entries : new int[0];
+    }
+
+    /**
+     * Costruisce, per ogni voce registrata nel chunk, la modifica che ripristina il blocco originale.
+     *
+     * @param chunk     Il chunk (caricato) da ripristinare.
+     * @param actionKey La chiave di traduzione dell'azione, usata per il log di debug.
+     * @return La lista di modifiche di ripristino.
+     */
+    public List<BlockChange> buildRollback(Chunk chunk, String actionKey) {
+        World world = chunk.getWorld();
+        int[] entries = read(chunk);
+        List<BlockChange> changes = new ArrayList<>(entries.length);
+        for (int packed : entries) {
+            Kind kind = kindOf(packed);
+            changes.add(new BlockChange(world.getUID(),
+                    (chunk.getX() << 4) + localX(packed),
+                    world.getMinHeight() + relativeY(packed),
+                    (chunk.getZ() << 4) + localZ(packed),
+                    kind.placed(), kind.original(), actionKey));
+        }
+        return changes;
+    }
+
+    // --- Metodi statici di (de)codifica delle voci, utilizzabili da qualsiasi thread ---
+
+    public static int localX(int packed) { return packed & 0xF; }
+    public static int localZ(int packed) { return (packed >>> 4) & 0xF; }
+    public static int relativeY(int packed) { return (packed >>> 8) & 0xFFF; }
+    public static Kind kindOf(int packed) { return KINDS[(packed >>> 20) & 0xF]; }
+
+    private void stage(Block block, int packedOrRemoval) {
+        ChunkRef ref = new ChunkRef(block.getWorld().getUID(), block.getX() >> 4, block.getZ() >> 4);
+        pendingOps.computeIfAbsent(ref, r -> new HashMap<>()).put(position(block), packedOrRemoval);
+    }
+
+    private void write(Chunk chunk, int[] entries) {
+        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        if (entries.length == 0) {
+            container.remove(journalKey);
+        } else {
+            container.set(journalKey, PersistentDataType.INTEGER_ARRAY, entries);
+        }
+    }
+
+    private static int position(Block block) {
+        return (block.getX() & 0xF)
+                | ((block.getZ() & 0xF) << 4)
+                | (((block.getY() - block.getWorld().getMinHeight()) & 0xFFF) << 8);
+    }
+
+    private static Kind recordedKind(BlockChange change) {
+        for (Kind kind : KINDS) {
+            if (change.replacement() == kind.placed() && change.expected() == kind.original()) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSeasonalMaterial(Material material) {
+        return material == Material.ICE || material == Material.SNOW;
+    }
+
+    /**
+     * Identifica un chunk all'interno di un mondo.
+     */
+    private record ChunkRef(UUID worldId, int x, int z) {}
+}
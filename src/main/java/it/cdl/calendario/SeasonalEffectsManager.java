@@ -2,16 +2,19 @@ package it.cdl.calendario;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Biome;
 import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 import org.bukkit.NamespacedKey;
@@ -19,10 +22,16 @@ import org.bukkit.Registry;
 
 import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
-import java.util.function.Consumer;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 
 /**
@@ -30,16 +39,98 @@ import java.util.function.Consumer;
  * Questa classe agisce come Listener per eventi specifici (es. Piazzamento di blocchi)
  * e orchestra task asincroni per modificare l'ambiente, come la formazione di neve
  * in inverno o lo scioglimento in primavera.
+ * <p>
+ * Gli effetti seguono una pipeline in tre fasi:
+ * <ol>
+ * <li>Sul thread principale viene catturato un {@link ChunkSnapshot} (con heightmap e biomi).</li>
+ * <li>Un pool di worker valuta le regole di gelo/disgelo lavorando solo sullo snapshot.</li>
+ * <li>Le modifiche risultanti tornano sul thread principale in un unico batch e vengono
+ * accodate nella {@link BlockChangeQueue}, che le riconvalida e le applica entro un budget per tick.</li>
+ * </ol>
+ * In questo modo nessun accesso al mondo avviene fuori dal thread principale.
+ * Ogni blocco piazzato viene annotato nel {@link SeasonalChangeJournal} del chunk, così il disgelo
+ * primaverile e il rollback amministrativo possono colpire esattamente quei blocchi.
+ * I chunk caricati per la prima volta (o dopo una stagione trascorsa altrove) vengono
+ * aggiornati pigramente al {@link ChunkLoadEvent}, con un ritmo limitato per tick.
  */
 public class SeasonalEffectsManager implements Listener {
 
     private final CalendarioPlugin plugin;
-    private final Random random = new Random();
     /**
      * Riferimento al task Bukkit attualmente attivo per gli effetti stagionali.
      * Viene mantenuto per poterlo annullare al cambio di stagione.
      */
     private BukkitTask activeEffectTask = null;
+    /**
+     * Pool di thread che esegue la logica decisionale degli effetti sugli snapshot dei chunk.
+     */
+    private final ExecutorService effectWorkers;
+    /**
+     * Coda centrale attraverso cui passano tutte le modifiche di blocco (neve, ghiaccio, disgelo, fiori).
+     */
+    private final BlockChangeQueue blockChangeQueue;
+    /**
+     * Campionatore dei chunk attivi attorno ai giocatori su cui applicare gli effetti.
+     */
+    private final ActiveChunkSampler chunkSampler;
+    /**
+     * Numero di chunk campionati a ogni esecuzione del task degli effetti.
+     */
+    private final int samplesPerRun;
+    /**
+     * Contatore di "generazione" degli effetti. Viene incrementato a ogni arresto,
+     * così i risultati calcolati per una stagione precedente vengono scartati.
+     */
+    private volatile int effectGeneration = 0;
+    /**
+     * Registro persistente, per chunk, dei blocchi modificati dal plugin.
+     */
+    private final SeasonalChangeJournal journal;
+    /**
+     * Chiave del PersistentDataContainer del chunk con l'indice dell'ultima stagione applicata
+     * (vedi {@link TimeManager#getIndiceStagioneAssoluto()}).
+     */
+    private final NamespacedKey seasonStateKey;
+    /**
+     * Chunk caricati il cui stato stagionale è obsoleto, in attesa di essere aggiornati.
+     * L'insieme ordinato evita duplicati quando lo stesso chunk viene caricato più volte.
+     */
+    private final Set<ChunkRef> pendingCatchUp = new LinkedHashSet<>();
+    /**
+     * Task che elabora gli aggiornamenti dei chunk obsoleti, a ritmo limitato.
+     */
+    private final BukkitTask catchUpTask;
+    private final int catchUpChunksPerTick;
+    private final int catchUpMaxPending;
+    private final int catchUpWinterRolls;
+    /**
+     * Indice della stagione applicata dagli effetti correnti, letto dal thread principale.
+     */
+    private int activeSeasonIndex = Integer.MIN_VALUE;
+    /**
+     * Stagione applicata dagli effetti correnti.
+     */
+    private TimeManager.Stagione activeSeason = null;
+
+    // --- Contatori per le statistiche dell'aggiornamento pigro ---
+    private long catchUpProcessed = 0;
+    private long catchUpDropped = 0;
+    private long catchUpProcessedSinceSample = 0;
+    private int catchUpTicksSinceSample = 0;
+    private long catchUpRatePerSecond = 0;
+
+    /**
+     * Rollback amministrativo attualmente in corso, o {@code null} se nessuno.
+     */
+    private SeasonalRollbackTask activeRollback = null;
+    /**
+     * Numero di tentativi di gelo/disgelo casuali eseguiti su ogni snapshot.
+     */
+    private static final int ROLLS_PER_CHUNK = 5;
+    /**
+     * Bonus di probabilità di gelo per ogni blocco freddo adiacente.
+     */
+    private static final int SPREAD_BONUS_PER_BLOCK = 15;
     /**
      * Insieme di materiali il cui piazzamento viene tracciato in modalità debug.
      */
@@ -58,6 +149,18 @@ public class SeasonalEffectsManager implements Listener {
      */
     private final List<Material> spawnableFlowers;
 
+    /**
+     * Probabilità lette dal config.yml alla creazione del manager, in modo che
+     * i worker non debbano mai accedere alla configurazione fuori dal thread principale.
+     */
+    private final int freezeChance;
+    private final int thawChance;
+    private final int flowerSpawnChance;
+    /**
+     * Se {@code true}, l'inverno deposita anche strati di neve sui blocchi solidi in superficie.
+     */
+    private final boolean snowLayers;
+
 
     /**
      * Costruttore del manager degli effetti stagionali.
@@ -77,6 +180,56 @@ public class SeasonalEffectsManager implements Listener {
             spawnableFlowers.add(Material.POPPY);
             spawnableFlowers.add(Material.DANDELION);
         }
+
+        this.freezeChance = plugin.getConfig().getInt("visual-effects.inverno.freeze-chance", 30);
+        this.snowLayers = plugin.getConfig().getBoolean("visual-effects.inverno.snow-layers", false);
+        this.thawChance = plugin.getConfig().getInt("visual-effects.primavera.thaw-chance", 35);
+        this.flowerSpawnChance = plugin.getConfig().getInt("visual-effects.primavera.flower-spawn-chance", 5);
+
+        int workerThreads = Math.max(1, plugin.getConfig().getInt("visual-effects.performance.worker-threads", 2));
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.effectWorkers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "Calendario-Seasonal-Worker-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.journal = new SeasonalChangeJournal(plugin);
+        this.blockChangeQueue = new BlockChangeQueue(plugin, new BlockChangeQueue.ChangeListener() {
+            @Override
+            public void onApplied(Block block, BlockChange change) {
+                journal.onApplied(block, change);
+                logNaturalChange(change.actionKey(), block.getLocation());
+            }
+
+            @Override
+            public void onSkipped(Block block, BlockChange change) {
+                journal.onSkipped(block, change);
+            }
+
+            @Override
+            public void onDrainFinished() {
+                journal.flush();
+            }
+        });
+        this.blockChangeQueue.start();
+
+        ActiveChunkSampler.Mode samplerMode;
+        try {
+            samplerMode = ActiveChunkSampler.Mode.valueOf(
+                    plugin.getConfig().getString("visual-effects.chunk-sampler.mode", "ROUND_ROBIN").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            samplerMode = ActiveChunkSampler.Mode.ROUND_ROBIN;
+        }
+        this.chunkSampler = new ActiveChunkSampler(
+                plugin.getConfig().getInt("visual-effects.chunk-sampler.radius", 2), samplerMode);
+        this.samplesPerRun = Math.max(1, plugin.getConfig().getInt("visual-effects.chunk-sampler.samples-per-run", 8));
+
+        this.seasonStateKey = new NamespacedKey(plugin, "seasonal_state");
+        this.catchUpChunksPerTick = Math.max(1, plugin.getConfig().getInt("visual-effects.catch-up.max-chunks-per-tick", 4));
+        this.catchUpMaxPending = Math.max(1, plugin.getConfig().getInt("visual-effects.catch-up.max-pending-chunks", 4096));
+        this.catchUpWinterRolls = Math.max(1, plugin.getConfig().getInt("visual-effects.catch-up.winter-rolls", 24));
+        this.catchUpTask = Bukkit.getScheduler().runTaskTimer(plugin, this::processCatchUp, 1L, 1L);
     }
 
     /**
@@ -170,6 +323,28 @@ public class SeasonalEffectsManager implements Listener {
         }
     }
 
+    /**
+     * Intercetta il caricamento dei chunk. Se il chunk non ha ancora ricevuto gli effetti
+     * della stagione corrente (ad es. Generato o visitato l'ultima volta in un'altra stagione),
+     * viene messo in coda per l'aggiornamento pigro. Il lavoro vero e proprio avviene
+     * in {@link #processCatchUp()}, a ritmo limitato.
+     *
+     * @param event L'evento di caricamento del chunk.
+     */
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent event) {
+        if (activeSeason == null) return;
+        Chunk chunk = event.getChunk();
+        Integer appliedIndex = chunk.getPersistentDataContainer().get(seasonStateKey, PersistentDataType.INTEGER);
+        if (appliedIndex != null && appliedIndex == activeSeasonIndex) return;
+
+        if (pendingCatchUp.size() >= catchUpMaxPending) {
+            catchUpDropped++;
+            return;
+        }
+        pendingCatchUp.add(new ChunkRef(event.getWorld().getUID(), chunk.getX(), chunk.getZ()));
+    }
+
     /**
      * Metodo orchestratore chiamato al cambio di stagione.
      * Interrompe gli effetti precedenti, invia il nuovo resource pack
@@ -179,6 +354,8 @@ public class SeasonalEffectsManager implements Listener {
      */
     public void handleSeasonChange(TimeManager.Stagione newSeason) {
         stopAllEffects();
+        this.activeSeason = newSeason;
+        this.activeSeasonIndex = plugin.getTimeManager().getIndiceStagioneAssoluto();
         sendResourcePack(newSeason);
         LanguageManager lang = plugin.getLanguageManager();
 
@@ -236,6 +413,7 @@ public class SeasonalEffectsManager implements Listener {
      * Previene la sovrapposizione di effetti al cambio di stagione.
      */
     public void stopAllEffects() {
+        effectGeneration++;
         if (activeEffectTask != null && !activeEffectTask.isCancelled()) {
             activeEffectTask.cancel();
             activeEffectTask = null;
@@ -243,32 +421,202 @@ public class SeasonalEffectsManager implements Listener {
     }
 
     /**
-     * Avvia un task periodico che applica un effetto a un chunk casuale vicino a un giocatore.
-     * L'operazione di ricerca del blocco viene eseguita in modo asincrono per non impattare
-     * le performance del server.
+     * Arresta definitivamente il manager: ferma gli effetti e chiude il pool di worker.
+     * Da chiamare alla disabilitazione o al ricaricamento del plugin.
+     */
+    public void shutdown() {
+        stopAllEffects();
+        catchUpTask.cancel();
+        pendingCatchUp.clear();
+        effectWorkers.shutdownNow();
+        if (activeRollback != null) {
+            activeRollback.abort();
+            activeRollback = null;
+        }
+        blockChangeQueue.stop();
+        journal.flush();
+    }
+
+    /**
+     * Avvia il rollback in blocco di tutte le modifiche stagionali registrate in una regione quadrata di chunk.
+     * I ripristini passano dalla {@link BlockChangeQueue} e rispettano quindi il suo budget per tick.
+     *
+     * @param requester    Chi ha richiesto il rollback, a cui viene notificato l'esito.
+     * @param world        Il mondo della regione.
+     * @param centerChunkX La X del chunk centrale.
+     * @param centerChunkZ La Z del chunk centrale.
+     * @param radius       Il raggio della regione, in chunk.
+     * @return Il numero di chunk da esaminare, o {@code -1} se un rollback è già in corso.
+     */
+    public long startRollback(CommandSender requester, World world, int centerChunkX, int centerChunkZ, int radius) {
+        if (activeRollback != null && !activeRollback.isCancelled()) {
+            return -1;
+        }
+        activeRollback = new SeasonalRollbackTask(plugin, journal, blockChangeQueue, requester, world,
+                centerChunkX - radius, centerChunkZ - radius, centerChunkX + radius, centerChunkZ + radius);
+        activeRollback.runTaskTimer(plugin, 1L, 1L);
+        return activeRollback.getTotalChunks();
+    }
+
+    /**
+     * Avvia un task periodico che applica un effetto ai chunk attivi attorno ai giocatori.
+     * A ogni esecuzione il {@link ActiveChunkSampler} sceglie un numero fisso di chunk, di cui
+     * sul thread principale viene catturato solo lo snapshot; la ricerca dei blocchi avviene
+     * nel pool di worker e le modifiche risultanti tornano sul thread principale in un unico batch.
      *
      * @param period      L'intervallo in tick tra ogni esecuzione dell'effetto.
-     * @param chunkEffect L'azione (effetto) da applicare al chunk selezionato.
+     * @param chunkEffect La logica (effetto) da valutare sullo snapshot, che aggiunge le modifiche alla lista.
      */
-    private void startSeasonalEffectTask(long period, Consumer<Chunk> chunkEffect) {
+    private void startSeasonalEffectTask(long period, BiConsumer<ChunkSample, List<BlockChange>> chunkEffect) {
         stopAllEffects();
+        final int generation = effectGeneration;
         activeEffectTask = new BukkitRunnable() {
             @Override
             public void run() {
-                List<Player> players = new ArrayList<>(Bukkit.getOnlinePlayers());
-                if (players.isEmpty()) return;
-
-                Player randomPlayer = players.get(random.nextInt(players.size()));
-                Chunk chunk = randomPlayer.getLocation().getChunk();
-                Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-                    for (int i = 0; i < 5; i++) {
-                        chunkEffect.accept(chunk);
+                chunkSampler.refresh();
+                List<ChunkSample> samples = new ArrayList<>(samplesPerRun);
+                chunkSampler.sample(samplesPerRun, chunk -> samples.add(captureSample(chunk)));
+                if (samples.isEmpty()) return;
+
+                effectWorkers.execute(() -> {
+                    List<BlockChange> changes = new ArrayList<>();
+                    for (ChunkSample sample : samples) {
+                        chunkEffect.accept(sample, changes);
+                    }
+                    if (!changes.isEmpty()) {
+                        dispatchToMainThread(generation, changes);
                     }
                 });
             }
         }.runTaskTimer(plugin, 40L, period);
     }
 
+    /**
+     * Cattura sul thread principale tutto ciò che serve ai worker per valutare un chunk:
+     * lo snapshot con heightmap e biomi, i limiti verticali del mondo e le voci del registro.
+     *
+     * @param chunk Il chunk (caricato) da fotografare.
+     * @return Il campione immutabile del chunk.
+     */
+    private ChunkSample captureSample(Chunk chunk) {
+        World world = chunk.getWorld();
+        ChunkSnapshot snapshot = chunk.getChunkSnapshot(true, true, false);
+        return new ChunkSample(world.getUID(), snapshot, world.getMinHeight(), world.getMaxHeight(), journal.read(chunk));
+    }
+
+    /**
+     * Rimanda sul thread principale un batch di modifiche calcolate dai worker,
+     * accodandolo nella {@link BlockChangeQueue}. Se nel frattempo gli effetti sono stati
+     * fermati (cambio di stagione, reload), il batch viene scartato.
+     *
+     * @param generation La generazione degli effetti con cui il batch è stato calcolato.
+     * @param changes    Le modifiche da applicare.
+     */
+    private void dispatchToMainThread(int generation, List<BlockChange> changes) {
+        if (generation != effectGeneration || !plugin.isEnabled()) return;
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (generation != effectGeneration) return;
+            blockChangeQueue.enqueueAll(changes);
+        });
+    }
+
+    /**
+     * Elabora, a ogni tick, un numero limitato di chunk in attesa di aggiornamento stagionale.
+     * Per ogni chunk ancora caricato con lavoro da fare viene catturato uno snapshot da elaborare nel
+     * pool di worker; le modifiche risultanti passano dalla {@link BlockChangeQueue} come tutte le altre.
+     * La stagione viene registrata nel chunk solo dopo che le sue modifiche sono state applicate:
+     * se il batch viene scartato il chunk resta da aggiornare e viene ripreso al prossimo caricamento.
+     */
+    private void processCatchUp() {
+        if (++catchUpTicksSinceSample >= 20) {
+            catchUpRatePerSecond = catchUpProcessedSinceSample;
+            catchUpProcessedSinceSample = 0;
+            catchUpTicksSinceSample = 0;
+        }
+        if (pendingCatchUp.isEmpty() || activeSeason == null) return;
+
+        final int generation = effectGeneration;
+        final int seasonIndex = activeSeasonIndex;
+        final boolean winter = activeSeason == TimeManager.Stagione.INVERNO;
+        List<ChunkSample> samples = new ArrayList<>();
+        Iterator<ChunkRef> iterator = pendingCatchUp.iterator();
+        for (int i = 0; i < catchUpChunksPerTick && iterator.hasNext(); i++) {
+            ChunkRef ref = iterator.next();
+            iterator.remove();
+            World world = Bukkit.getWorld(ref.worldId());
+            if (world == null || !world.isChunkLoaded(ref.x(), ref.z())) continue;
+
+            Chunk chunk = world.getChunkAt(ref.x(), ref.z());
+            catchUpProcessed++;
+            catchUpProcessedSinceSample++;
+            // Fuori dall'inverno c'è lavoro solo se il chunk ha neve o ghiaccio registrati da sciogliere.
+            if (!winter && journal.read(chunk).length == 0) {
+                markSeasonApplied(chunk, seasonIndex);
+                continue;
+            }
+            samples.add(captureSample(chunk));
+        }
+        if (samples.isEmpty()) return;
+
+        effectWorkers.execute(() -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            List<List<BlockChange>> changesByChunk = new ArrayList<>(samples.size());
+            for (ChunkSample sample : samples) {
+                List<BlockChange> changes = new ArrayList<>();
+                changesByChunk.add(changes);
+                if (winter) {
+                    for (int i = 0; i < catchUpWinterRolls; i++) {
+                        freezeRandomColumn(sample, rnd, changes);
+                    }
+                } else {
+                    // La stagione fredda è già passata: tutto ciò che è stato piazzato si scioglie.
+                    thawJournaledBlocks(sample, rnd, 100, changes);
+                }
+            }
+            dispatchCatchUpToMainThread(generation, seasonIndex, samples, changesByChunk);
+        });
+    }
+
+    /**
+     * Rimanda sul thread principale le modifiche calcolate per i chunk in aggiornamento pigro e, per ogni
+     * chunk le cui modifiche sono state accettate per intero dalla coda, registra la stagione una volta
+     * applicate. I chunk scartati (effetti fermati, coda piena, chunk scaricato) restano da aggiornare.
+     *
+     * @param generation     La generazione degli effetti con cui il batch è stato calcolato.
+     * @param seasonIndex    L'indice della stagione applicata.
+     * @param samples        Gli snapshot dei chunk elaborati.
+     * @param changesByChunk Le modifiche per ogni chunk, nello stesso ordine degli snapshot.
+     */
+    private void dispatchCatchUpToMainThread(int generation, int seasonIndex, List<ChunkSample> samples,
+                                             List<List<BlockChange>> changesByChunk) {
+        if (generation != effectGeneration || !plugin.isEnabled()) return;
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (generation != effectGeneration) return;
+            for (int i = 0; i < samples.size(); i++) {
+                ChunkSample sample = samples.get(i);
+                if (!blockChangeQueue.enqueueAll(changesByChunk.get(i))) continue;
+                int chunkX = sample.snapshot().getX();
+                int chunkZ = sample.snapshot().getZ();
+                blockChangeQueue.whenApplied(sample.worldId(), chunkX, chunkZ, () -> {
+                    World world = Bukkit.getWorld(sample.worldId());
+                    if (world != null && world.isChunkLoaded(chunkX, chunkZ)) {
+                        markSeasonApplied(world.getChunkAt(chunkX, chunkZ), seasonIndex);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Registra nel chunk la stagione i cui effetti vi sono stati applicati.
+     *
+     * @param chunk       Il chunk (caricato).
+     * @param seasonIndex L'indice della stagione applicata.
+     */
+    private void markSeasonApplied(Chunk chunk, int seasonIndex) {
+        chunk.getPersistentDataContainer().set(seasonStateKey, PersistentDataType.INTEGER, seasonIndex);
+    }
+
     /**
      * Avvia il task per gli effetti invernali (formazione di neve e ghiaccio).
      */
@@ -291,84 +639,193 @@ public class SeasonalEffectsManager implements Listener {
     }
 
     /**
-     * Applica la logica di congelamento a un blocco casuale all'interno di un chunk.
-     * Trasforma l'acqua in ghiaccio o deposita neve sui blocchi solidi.
-     * La probabilità aumenta se ci sono già blocchi freddi nelle vicinanze.
+     * Applica la logica di congelamento a alcune colonne casuali del chunk.
+     * Lavora esclusivamente sullo snapshot: può essere eseguito da qualsiasi thread.
      *
-     * @param chunk Il chunk su cui applicare l'effetto.
+     * @param sample  Lo snapshot del chunk su cui valutare l'effetto.
+     * @param changes La lista a cui aggiungere le modifiche decise.
      */
-    private void applyWinterToChunk(Chunk chunk) {
-        int x = chunk.getX() * 16 + random.nextInt(16);
-        int z = chunk.getZ() * 16 + random.nextInt(16);
-        World world = chunk.getWorld();
-        Block highestBlock = world.getHighestBlockAt(x, z);
+    private void applyWinterToChunk(ChunkSample sample, List<BlockChange> changes) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (int i = 0; i < ROLLS_PER_CHUNK; i++) {
+            freezeRandomColumn(sample, rnd, changes);
+        }
+    }
+
+    /**
+     * Applica la logica di congelamento a una colonna casuale del chunk.
+     * Trasforma l'acqua in ghiaccio e, se {@code snow-layers} è attivo, deposita neve sui blocchi solidi.
+     * La probabilità aumenta se ci sono già blocchi freddi attorno al blocco sotto la superficie.
+     */
+    private void freezeRandomColumn(ChunkSample sample, ThreadLocalRandom rnd, List<BlockChange> changes) {
+        ChunkSnapshot snapshot = sample.snapshot();
+        int localX = rnd.nextInt(16);
+        int localZ = rnd.nextInt(16);
+        int surfaceY = snapshot.getHighestBlockYAt(localX, localZ);
+        if (surfaceY < sample.minY() || surfaceY + 1 >= sample.maxY()) return;
 
         // Controlla la lista caricata dal config
-        if (!this.mildBiomes.contains(highestBlock.getBiome())) return;
+        if (!this.mildBiomes.contains(snapshot.getBiome(localX, surfaceY, localZ))) return;
 
-        int baseChance = plugin.getConfig().getInt("visual-effects.inverno.freeze-chance", 30);
-        int spreadBonusPerBlock = 15;
+        // I vicini vengono cercati un blocco sotto la superficie; quelli fuori dallo snapshot
+        // non sono visibili e non contano come freddi.
+        int belowY = surfaceY - 1;
         int surroundingIce = 0;
-        Block blockBelow = highestBlock.getRelative(BlockFace.DOWN);
-
-        if (isColdBlock(blockBelow.getRelative(BlockFace.NORTH).getType())) surroundingIce++;
-        if (isColdBlock(blockBelow.getRelative(BlockFace.SOUTH).getType())) surroundingIce++;
-        if (isColdBlock(blockBelow.getRelative(BlockFace.EAST).getType())) surroundingIce++;
-        if (isColdBlock(blockBelow.getRelative(BlockFace.WEST).getType())) surroundingIce++;
-
-        int finalChance = baseChance + (surroundingIce * spreadBonusPerBlock);
-        if (random.nextInt(100) < finalChance) {
-            Bukkit.getScheduler().runTask(plugin, () -> {
-                Material blockType = highestBlock.getType();
-                if (blockType == Material.WATER) {
-                    highestBlock.setType(Material.ICE);
-                    logNaturalChange("seasonal-effects.actions.frozen", highestBlock.getLocation());
-
-                } else if (blockType == Material.AIR && blockBelow.getType().isSolid() && blockBelow.getType() != Material.ICE) {
-                    highestBlock.setType(Material.SNOW);
-                    logNaturalChange("seasonal-effects.actions.snow-formed", highestBlock.getLocation());
-                }
-            });
+        if (belowY >= sample.minY()) {
+            if (localZ > 0 && isColdBlock(snapshot.getBlockType(localX, belowY, localZ - 1))) surroundingIce++;
+            if (localZ < 15 && isColdBlock(snapshot.getBlockType(localX, belowY, localZ + 1))) surroundingIce++;
+            if (localX < 15 && isColdBlock(snapshot.getBlockType(localX + 1, belowY, localZ))) surroundingIce++;
+            if (localX > 0 && isColdBlock(snapshot.getBlockType(localX - 1, belowY, localZ))) surroundingIce++;
+        }
+
+        int finalChance = freezeChance + (surroundingIce * SPREAD_BONUS_PER_BLOCK);
+        if (rnd.nextInt(100) >= finalChance) return;
+
+        int worldX = (snapshot.getX() << 4) + localX;
+        int worldZ = (snapshot.getZ() << 4) + localZ;
+        Material surfaceType = snapshot.getBlockType(localX, surfaceY, localZ);
+        if (surfaceType == Material.WATER) {
+            changes.add(new BlockChange(sample.worldId(), worldX, surfaceY, worldZ,
+                    Material.WATER, Material.ICE, "seasonal-effects.actions.frozen"));
+        } else if (snowLayers && surfaceType.isSolid() && surfaceType != Material.ICE
+                && snapshot.getBlockType(localX, surfaceY + 1, localZ) == Material.AIR) {
+            changes.add(new BlockChange(sample.worldId(), worldX, surfaceY + 1, worldZ,
+                    Material.AIR, Material.SNOW, "seasonal-effects.actions.snow-formed"));
         }
     }
 
     /**
-     * Applica la logica di scioglimento a un blocco casuale all'interno di un chunk.
-     * Rimuove la neve o trasforma il ghiaccio in acqua. Può anche far nascere fiori.
+     * Applica la logica di scioglimento al chunk.
+     * Se il chunk ha modifiche registrate nel {@link SeasonalChangeJournal}, ognuna di esse viene
+     * considerata una volta (costo proporzionale alle modifiche); altrimenti, per i chunk modificati
+     * prima dell'introduzione del registro, vengono provate alcune colonne casuali.
+     * Lavora esclusivamente sullo snapshot: può essere eseguito da qualsiasi thread.
      *
-     * @param chunk Il chunk su cui applicare l'effetto.
-     */
-    private void applySpringToChunk(Chunk chunk) {
-        int thawChance = plugin.getConfig().getInt("visual-effects.primavera.thaw-chance", 35);
-        if (random.nextInt(100) < thawChance) {
-            int x = chunk.getX() * 16 + random.nextInt(16);
-            int z = chunk.getZ() * 16 + random.nextInt(16);
-            Block highestBlock = chunk.getWorld().getHighestBlockAt(x, z);
-            Material blockType = highestBlock.getType();
-
-            Bukkit.getScheduler().runTask(plugin, () -> {
-                if (blockType == Material.SNOW) {
-                    highestBlock.setType(Material.AIR);
-                    logNaturalChange("seasonal-effects.actions.snow-melted", highestBlock.getLocation());
-                    int flowerChance = plugin.getConfig().getInt("visual-effects.primavera.flower-spawn-chance", 5);
-
-                    // Sceglie un fiore casuale dalla lista caricata dal config
-                    if (highestBlock.getRelative(BlockFace.DOWN).getType() == Material.GRASS_BLOCK &&
-                            random.nextInt(100) < flowerChance &&
-                            !spawnableFlowers.isEmpty()) {
-
-                        Material flowerToSpawn = spawnableFlowers.get(random.nextInt(spawnableFlowers.size()));
-                        highestBlock.setType(flowerToSpawn);
-                    }
-                } else if (blockType == Material.ICE) {
+     * @param sample  Lo snapshot del chunk su cui valutare l'effetto.
+     * @param changes La lista a cui aggiungere le modifiche decise.
+     */
+    private void applySpringToChunk(ChunkSample sample, List<BlockChange> changes) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        if (sample.journal().length > 0) {
+            thawJournaledBlocks(sample, rnd, thawChance, changes);
+            return;
+        }
+        for (int i = 0; i < ROLLS_PER_CHUNK; i++) {
+            thawRandomColumn(sample, rnd, changes);
+        }
+    }
 
-                    highestBlock.setType(Material.WATER);
-                    logNaturalChange("seasonal-effects.actions.ice-melted", highestBlock.getLocation());
-                }
-            });
+    /**
+     * Scioglie i blocchi registrati nel registro del chunk, ognuno con la probabilità di disgelo indicata.
+     * Le voci che non corrispondono più allo snapshot producono comunque una modifica: verrà scartata
+     * sul thread principale e la voce, ormai obsoleta, sarà rimossa dal registro.
+     */
+    private void thawJournaledBlocks(ChunkSample sample, ThreadLocalRandom rnd, int chance, List<BlockChange> changes) {
+        ChunkSnapshot snapshot = sample.snapshot();
+        for (int packed : sample.journal()) {
+            if (rnd.nextInt(100) >= chance) continue;
+
+            SeasonalChangeJournal.Kind kind = SeasonalChangeJournal.kindOf(packed);
+            int localX = SeasonalChangeJournal.localX(packed);
+            int localZ = SeasonalChangeJournal.localZ(packed);
+            int y = sample.minY() + SeasonalChangeJournal.relativeY(packed);
+            if (y >= sample.maxY()) continue;
+
+            Material replacement = kind.original();
+            String actionKey = "seasonal-effects.actions.ice-melted";
+            if (kind == SeasonalChangeJournal.Kind.SNOW) {
+                actionKey = "seasonal-effects.actions.snow-melted";
+                replacement = pickFlower(snapshot, sample, localX, y, localZ, rnd);
+            }
+            changes.add(new BlockChange(sample.worldId(),
+                    (snapshot.getX() << 4) + localX, y, (snapshot.getZ() << 4) + localZ,
+                    kind.placed(), replacement, actionKey));
         }
     }
 
+    /**
+     * Sceglie il blocco che prende il posto della neve sciolta: un fiore casuale dalla lista
+     * caricata dal config se sotto c'è erba e il tiro riesce, altrimenti aria.
+     */
+    private Material pickFlower(ChunkSnapshot snapshot, ChunkSample sample, int localX, int snowY, int localZ, ThreadLocalRandom rnd) {
+        if (snowY > sample.minY()
+                && snapshot.getBlockType(localX, snowY - 1, localZ) == Material.GRASS_BLOCK
+                && rnd.nextInt(100) < flowerSpawnChance
+                && !spawnableFlowers.isEmpty()) {
+            return spawnableFlowers.get(rnd.nextInt(spawnableFlowers.size()));
+        }
+        return Material.AIR;
+    }
+
+    /**
+     * Applica la logica di scioglimento a una colonna casuale del chunk.
+     * Rimuove la neve o trasforma il ghiaccio in acqua. Può anche far nascere fiori.
+     */
+    private void thawRandomColumn(ChunkSample sample, ThreadLocalRandom rnd, List<BlockChange> changes) {
+        if (rnd.nextInt(100) >= thawChance) return;
+
+        ChunkSnapshot snapshot = sample.snapshot();
+        int localX = rnd.nextInt(16);
+        int localZ = rnd.nextInt(16);
+        int surfaceY = snapshot.getHighestBlockYAt(localX, localZ);
+        if (surfaceY < sample.minY() || surfaceY + 1 >= sample.maxY()) return;
+
+        int worldX = (snapshot.getX() << 4) + localX;
+        int worldZ = (snapshot.getZ() << 4) + localZ;
+
+        // Lo strato di neve non blocca il movimento, quindi si trova sopra la superficie della heightmap.
+        int snowY = snapshot.getBlockType(localX, surfaceY + 1, localZ) == Material.SNOW ? surfaceY + 1
+                : (snapshot.getBlockType(localX, surfaceY, localZ) == Material.SNOW ? surfaceY : Integer.MIN_VALUE);
+
+        if (snowY != Integer.MIN_VALUE) {
+            Material replacement = pickFlower(snapshot, sample, localX, snowY, localZ, rnd);
+            changes.add(new BlockChange(sample.worldId(), worldX, snowY, worldZ,
+                    Material.SNOW, replacement, "seasonal-effects.actions.snow-melted"));
+        } else if (snapshot.getBlockType(localX, surfaceY, localZ) == Material.ICE) {
+            changes.add(new BlockChange(sample.worldId(), worldX, surfaceY, worldZ,
+                    Material.ICE, Material.WATER, "seasonal-effects.actions.ice-melted"));
+        }
+    }
+
+    /**
+     * Dati di un chunk catturati sul thread principale e condivisi con i worker.
+     *
+     * @param worldId  L'UUID del mondo a cui appartiene il chunk.
+     * @param snapshot Lo snapshot immutabile del chunk (con heightmap e biomi).
+     * @param minY     L'altezza minima del mondo.
+     * @param maxY     L'altezza massima (esclusa) del mondo.
+     * @param journal  Le voci del {@link SeasonalChangeJournal} del chunk al momento dello snapshot.
+     */
+    private record ChunkSample(UUID worldId, ChunkSnapshot snapshot, int minY, int maxY, int[] journal) {}
+
+    /**
+     * Identifica un chunk all'interno di un mondo.
+     */
+    private record ChunkRef(UUID worldId, int x, int z) {}
+
+    /**
+     * Restituisce la coda delle modifiche di blocco, ad esempio per consultarne le statistiche.
+     * @return La BlockChangeQueue del manager.
+     */
+    public BlockChangeQueue getBlockChangeQueue() {
+        return blockChangeQueue;
+    }
+
+    /**
+     * Restituisce il campionatore dei chunk attivi, ad esempio per consultarne le statistiche.
+     * @return L'ActiveChunkSampler del manager.
+     */
+    public ActiveChunkSampler getChunkSampler() {
+        return chunkSampler;
+    }
+
+    // --- Metodi Getter per le statistiche dell'aggiornamento pigro dei chunk ---
+
+    public int getCatchUpPending() { return pendingCatchUp.size(); }
+    public long getCatchUpProcessed() { return catchUpProcessed; }
+    public long getCatchUpDropped() { return catchUpDropped; }
+    public long getCatchUpRatePerSecond() { return catchUpRatePerSecond; }
+
     /**
      * Metodo di utilità per verificare se un materiale è un "blocco freddo".
      *
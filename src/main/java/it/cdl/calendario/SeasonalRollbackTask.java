@@ -0,0 +1,170 @@
+package it.cdl.calendario;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Task che annulla in blocco le modifiche stagionali registrate in una regione di chunk.
+ * I chunk vengono caricati in modo asincrono, poche decine alla volta, e tenuti caricati
+ * con un ticket del plugin finché la {@link BlockChangeQueue} non ha applicato tutti i ripristini.
+ * I chunk mai generati vengono saltati senza generarli: non possono contenere modifiche registrate.
+ * Il costo sul thread principale resta quindi entro il budget per tick della coda.
+ */
+public class SeasonalRollbackTask extends BukkitRunnable {
+
+    private final CalendarioPlugin plugin;
+    private final SeasonalChangeJournal journal;
+    private final BlockChangeQueue queue;
+    private final CommandSender requester;
+    private final World world;
+
+    // --- Regione da ripristinare (coordinate dei chunk, estremi inclusi) ---
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int width;
+    private final long totalChunks;
+
+    /**
+     * Numero massimo di chunk caricati o in caricamento contemporaneamente.
+     */
+    private final int maxChunksInFlight;
+
+    private long nextIndex = 0;
+    private int loadsInFlight = 0;
+    private final List<Chunk> heldChunks = new ArrayList<>();
+
+    private int chunksWithChanges = 0;
+    private int changesQueued = 0;
+    /**
+     * Chunk i cui ripristini sono stati rifiutati, in tutto o in parte, perché la coda era piena.
+     */
+    private int chunksRejected = 0;
+
+    /**
+     * Costruttore del task di rollback.
+     *
+     * @param plugin    L'istanza principale del plugin.
+     * @param journal   Il registro da cui leggere le modifiche da annullare.
+     * @param queue     La coda attraverso cui applicare i ripristini.
+     * @param requester Chi ha richiesto il rollback, a cui viene notificato l'esito.
+     * @param world     Il mondo della regione.
+     * @param minChunkX La X minima dei chunk della regione.
+     * @param minChunkZ La Z minima dei chunk della regione.
+     * @param maxChunkX La X massima dei chunk della regione.
+     * @param maxChunkZ La Z massima dei chunk della regione.
+     */
+    public SeasonalRollbackTask(CalendarioPlugin plugin, SeasonalChangeJournal journal, BlockChangeQueue queue,
+                                CommandSender requester, World world,
+                                int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        this.plugin = plugin;
+        this.journal = journal;
+        this.queue = queue;
+        this.requester = requester;
+        this.world = world;
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.width = maxChunkX - minChunkX + 1;
+        this.totalChunks = (long) width * (maxChunkZ - minChunkZ + 1);
+        this.maxChunksInFlight = Math.max(1, plugin.getConfig().getInt("visual-effects.rollback.max-chunks-in-flight", 16));
+    }
+
+    /**
+     * Restituisce il numero totale di chunk della regione.
+     * @return Il numero di chunk da esaminare.
+     */
+    public long getTotalChunks() {
+        return totalChunks;
+    }
+
+    /**
+     * Eseguito a ogni tick: rilascia i chunk già ripristinati e avvia nuovi caricamenti asincroni.
+     */
+    @Override
+    public void run() {
+        releaseCompletedChunks();
+
+        while (nextIndex < totalChunks && loadsInFlight + heldChunks.size() < maxChunksInFlight) {
+            int chunkX = minChunkX + (int) (nextIndex % width);
+            int chunkZ = minChunkZ + (int) (nextIndex / width);
+            nextIndex++;
+            loadsInFlight++;
+            world.getChunkAtAsync(chunkX, chunkZ, false).whenComplete((chunk, error) -> {
+                loadsInFlight--;
+                if (error != null) {
+                    plugin.getLogger().log(Level.WARNING, "Impossibile caricare il chunk " + chunkX + "," + chunkZ
+                            + " per il ripristino stagionale.", error);
+                } else if (chunk != null) {
+                    onChunkLoaded(chunk);
+                }
+            });
+        }
+
+        if (nextIndex >= totalChunks && loadsInFlight == 0 && heldChunks.isEmpty()) {
+            cancel();
+            requester.sendMessage(plugin.getLanguageManager().getString("commands.rollback-finished",
+                    "{chunks}", String.valueOf(chunksWithChanges),
+                    "{changes}", String.valueOf(changesQueued)));
+            if (chunksRejected > 0) {
+                requester.sendMessage(plugin.getLanguageManager().getString("commands.rollback-incomplete",
+                        "{chunks}", String.valueOf(chunksRejected)));
+            }
+        }
+    }
+
+    /**
+     * Interrompe il rollback rilasciando tutti i ticket dei chunk trattenuti.
+     */
+    public void abort() {
+        if (!isCancelled()) {
+            cancel();
+        }
+        for (Chunk chunk : heldChunks) {
+            chunk.removePluginChunkTicket(plugin);
+        }
+        heldChunks.clear();
+    }
+
+    /**
+     * Callback del caricamento asincrono (eseguita sul thread principale): accoda i ripristini del chunk.
+     * Vengono contati solo i ripristini accettati dalla coda; i chunk con ripristini rifiutati vengono
+     * segnalati a fine rollback, così che il comando possa essere ripetuto.
+     */
+    private void onChunkLoaded(Chunk chunk) {
+        if (isCancelled()) return;
+
+        List<BlockChange> changes = journal.buildRollback(chunk, "seasonal-effects.actions.rolled-back");
+        if (changes.isEmpty()) return;
+
+        int accepted = 0;
+        for (BlockChange change : changes) {
+            if (queue.enqueue(change)) accepted++;
+        }
+        if (accepted < changes.size()) {
+            chunksRejected++;
+        }
+        if (accepted == 0) return;
+
+        chunk.addPluginChunkTicket(plugin);
+        heldChunks.add(chunk);
+        chunksWithChanges++;
+        changesQueued += accepted;
+    }
+
+    private void releaseCompletedChunks() {
+        Iterator<Chunk> iterator = heldChunks.iterator();
+        while (iterator.hasNext()) {
+            Chunk chunk = iterator.next();
+            if (!queue.hasPending(world.getUID(), chunk.getX(), chunk.getZ())) {
+                chunk.removePluginChunkTicket(plugin);
+                iterator.remove();
+            }
+        }
+    }
+}
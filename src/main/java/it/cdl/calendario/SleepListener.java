@@ -80,6 +80,7 @@ public final class SleepListener implements Listener {
         if (currentTime >= 0 && currentTime < 1000) {
             plugin.getLogger().info("[Calendario] Il giocatore si è svegliato. Riprendo il controllo del tempo.");
             world.setGameRule(GameRule.DO_DAYLIGHT_CYCLE, false);
+            plugin.getHistory().record(CalendarHistory.Type.SLEEP_SKIP, plugin.getTimeManager().getGiornoAssoluto(), world.getName());
 
             // Notifica il CalendarTask di sincronizzarsi con il nuovo stato del tempo.
             CalendarTask mainTask = plugin.getMainTaskInstance();
@@ -0,0 +1,172 @@
+package it.cdl.calendario;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Salvataggio del calendario in un database SQLite incorporato ({@code data.db}).
+ * Usa il driver JDBC SQLite già incluso nel server, senza dipendenze aggiuntive.
+ * Ogni salvataggio è una singola transazione: dopo un crash il database contiene
+ * sempre l'ultimo salvataggio completo. I dati storici degli eventi hanno una riga
+ * per evento, quindi non crescono in un unico albero da riscrivere a ogni salvataggio.
+ */
+public class SqliteCalendarStorage implements CalendarStorage {
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS calendar (id INTEGER PRIMARY KEY CHECK (id = 0), "
+                    + "anno INTEGER NOT NULL, mese INTEGER NOT NULL, giorno INTEGER NOT NULL, full_time INTEGER NOT NULL, "
+                    + "journal_sequence INTEGER NOT NULL DEFAULT 0)",
+            "CREATE TABLE IF NOT EXISTS active_events (event_id TEXT PRIMARY KEY, "
+                    + "start_day INTEGER NOT NULL, days_remaining INTEGER NOT NULL, position INTEGER NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS event_bookkeeping (event_id TEXT PRIMARY KEY, "
+                    + "times_started INTEGER NOT NULL, last_start_day INTEGER NOT NULL, last_end_day INTEGER NOT NULL)"
+    };
+
+    private final File file;
+    private Connection connection;
+
+    /**
+     * @param file Il file del database.
+     */
+    public SqliteCalendarStorage(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized CalendarState load() throws IOException {
+        try {
+            Connection db = connection();
+            int anno, mese, giorno;
+            long fullTime, journalSequence;
+            try (Statement statement = db.createStatement();
+                 ResultSet row = statement.executeQuery("SELECT anno, mese, giorno, full_time, journal_sequence FROM calendar WHERE id = 0")) {
+                if (!row.next()) return null;
+                anno = row.getInt(1);
+                mese = row.getInt(2);
+                giorno = row.getInt(3);
+                fullTime = row.getLong(4);
+                journalSequence = row.getLong(5);
+            }
+            List<CalendarState.StoredEvent> active = new ArrayList<>();
+            try (Statement statement = db.createStatement();
+                 ResultSet rows = statement.executeQuery(
+                         "SELECT event_id, start_day, days_remaining FROM active_events ORDER BY position")) {
+                while (rows.next()) {
+                    active.add(new CalendarState.StoredEvent(rows.getString(1), rows.getLong(2), rows.getLong(3)));
+                }
+            }
+            Map<String, CalendarState.EventBookkeeping> bookkeeping = new HashMap<>();
+            try (Statement statement = db.createStatement();
+                 ResultSet rows = statement.executeQuery(
+                         "SELECT event_id, times_started, last_start_day, last_end_day FROM event_bookkeeping")) {
+                while (rows.next()) {
+                    bookkeeping.put(rows.getString(1),
+                            new CalendarState.EventBookkeeping(rows.getLong(2), rows.getLong(3), rows.getLong(4)));
+                }
+            }
+            return new CalendarState(anno, mese, giorno, fullTime, active, bookkeeping, journalSequence);
+        } catch (SQLException e) {
+            throw new IOException("Lettura di " + file.getName() + " fallita: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void save(CalendarState state) throws IOException {
+        try {
+            Connection db = connection();
+            db.setAutoCommit(false);
+            try {
+                try (PreparedStatement calendar = db.prepareStatement(
+                        "INSERT OR REPLACE INTO calendar (id, anno, mese, giorno, full_time, journal_sequence) VALUES (0, ?, ?, ?, ?, ?)")) {
+                    calendar.setInt(1, state.anno());
+                    calendar.setInt(2, state.mese());
+                    calendar.setInt(3, state.giorno());
+                    calendar.setLong(4, state.fullTime());
+                    calendar.setLong(5, state.journalSequence());
+                    calendar.executeUpdate();
+                }
+                try (Statement clear = db.createStatement()) {
+                    clear.executeUpdate("DELETE FROM active_events");
+                }
+                try (PreparedStatement insert = db.prepareStatement(
+                        "INSERT INTO active_events (event_id, start_day, days_remaining, position) VALUES (?, ?, ?, ?)")) {
+                    int position = 0;
+                    for (CalendarState.StoredEvent event : state.activeEvents()) {
+                        insert.setString(1, event.eventId());
+                        insert.setLong(2, event.startDay());
+                        insert.setLong(3, event.daysRemaining());
+                        insert.setInt(4, position++);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+                try (PreparedStatement upsert = db.prepareStatement(
+                        "INSERT OR REPLACE INTO event_bookkeeping (event_id, times_started, last_start_day, last_end_day) VALUES (?, ?, ?, ?)")) {
+                    for (Map.Entry<String, CalendarState.EventBookkeeping> entry : state.bookkeeping().entrySet()) {
+                        upsert.setString(1, entry.getKey());
+                        upsert.setLong(2, entry.getValue().timesStarted());
+                        upsert.setLong(3, entry.getValue().lastStartDay());
+                        upsert.setLong(4, entry.getValue().lastEndDay());
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                }
+                db.commit();
+            } catch (SQLException e) {
+                db.rollback();
+                throw e;
+            } finally {
+                db.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException("Scrittura di " + file.getName() + " fallita: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Il database è comunque coerente: ogni salvataggio è già stato confermato.
+        }
+        connection = null;
+    }
+
+    @Override
+    public String getName() {
+        return "SQLITE";
+    }
+
+    /**
+     * Apre la connessione al primo utilizzo e crea le tabelle se non esistono.
+     */
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+                throw new SQLException("Impossibile creare la cartella " + file.getParentFile());
+            }
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                // WAL con sincronizzazione completa: ogni commit è su disco prima di restituire il controllo.
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=FULL");
+                for (String table : SCHEMA) {
+                    statement.execute(table);
+                }
+            }
+        }
+        return connection;
+    }
+}
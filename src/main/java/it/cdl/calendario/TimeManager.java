@@ -1,28 +1,35 @@
 package it.cdl.calendario;
 
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.bukkit.Bukkit;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.World;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Year;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 /**
  * Gestisce tutti gli aspetti legati al tempo e al calendario del plugin.
  * Le sue responsabilità includono:
  * Mantenere e modificare la data corrente (giorno, mese, anno)
- * Salvare e caricare la data da un file dedicato (data.yml) per separarla dalla configurazione
+ * Salvare e caricare lo stato del calendario in un file dedicato (YAML, SQLite o binario, vedi
+ * {@link CalendarStorage}) per separarlo dalla configurazione, con scritture in background tramite {@link CalendarPersistence}
  * Determinare la stagione corrente in base al mese
  * Fornire metodi di utilità per accedere alle informazioni temporali in modo formattato
  */
 public class TimeManager {
 
     private final CalendarioPlugin plugin;
+    private final CalendarPersistence persistence;
     private int giornoCorrente;
     private int meseCorrente;
     private int annoCorrente;
+    /**
+     * Lo stato letto all'avvio, da cui l'EventManager ripristina gli eventi in corso.
+     */
+    private CalendarState loadedState;
 
     /**
      * Enumerazione che definisce le quattro stagioni del calendario.
@@ -39,7 +46,10 @@ public class TimeManager {
      */
     public TimeManager(CalendarioPlugin plugin) {
         this.plugin = plugin;
+        this.persistence = new CalendarPersistence(plugin, CalendarStorage.create(plugin),
+                new EventJournal(new File(plugin.getDataFolder(), "events.journal")));
         loadData();
+        persistence.startAutosave(this::snapshot);
     }
     /**
      * Imposta il giorno corrente del calendario.
@@ -50,19 +60,42 @@ public class TimeManager {
     }
 
     /**
-     * Imposta il mese corrente del calendario.
+     * Imposta il mese corrente del calendario. Se il giorno corrente non esiste nel nuovo mese
+     * (es. il 31 passando a febbraio), viene portato all'ultimo giorno del mese.
      * @param mese Il nuovo mese da impostare.
      */
     public void setMese(int mese) {
         this.meseCorrente = mese;
+        clampDate();
     }
 
     /**
-     * Imposta l'anno corrente del calendario.
+     * Imposta l'anno corrente del calendario, al massimo {@link Year#MAX_VALUE}. Il 29 febbraio
+     * di un anno non bisestile diventa il 28.
      * @param anno Il nuovo anno da impostare.
      */
     public void setAnno(int anno) {
         this.annoCorrente = anno;
+        clampDate();
+    }
+
+    /**
+     * Riporta la data corrente entro i limiti validi: anno tra 1 e {@link Year#MAX_VALUE}, mese tra 1 e 12
+     * e giorno entro la lunghezza del mese. Una data impossibile farebbe fallire ogni calcolo del giorno
+     * assoluto, bloccando il task del calendario e i salvataggi.
+     *
+     * @return {@code true} se la data è stata corretta.
+     */
+    private boolean clampDate() {
+        int anno = Math.max(1, Math.min(Year.MAX_VALUE, this.annoCorrente));
+        int mese = Math.max(1, Math.min(12, this.meseCorrente));
+        boolean changed = anno != this.annoCorrente || mese != this.meseCorrente;
+        this.annoCorrente = anno;
+        this.meseCorrente = mese;
+        int giorno = Math.max(1, Math.min(getGiorniNelMese(), this.giornoCorrente));
+        changed |= giorno != this.giornoCorrente;
+        this.giornoCorrente = giorno;
+        return changed;
     }
 
     /**
@@ -82,9 +115,7 @@ public class TimeManager {
             case 2 -> {
                 // Un anno è bisestile se è divisibile per 4,
                 // tranne se è divisibile per 100 a meno che non sia anche divisibile per 400.
-                boolean isBisestile = (anno % 4 == 0 && anno
-                        % 100 != 0) || (anno % 400 == 0);
-                if (isBisestile) {
+                if (CalendarEngine.isLeapYear(anno)) {
                     yield 29;
                     // Febbraio ha 29 giorni in un anno bisestile
                 } else {
@@ -97,55 +128,116 @@ public class TimeManager {
         };
     }
     /**
-     * Salva lo stato attuale del calendario (data e tempo del mondo) nel file {@code data.yml}.
-     * Questo metodo viene chiamato alla disabilitazione del plugin per garantire la persistenza dei dati.
+     * Cattura lo stato attuale del calendario (data, tempo del mondo ed eventi in corso) in un oggetto immutabile.
+     * Deve essere chiamato dal thread principale; il costo è trascurabile.
+     * Finché l'EventManager non è stato creato, vengono riportati gli eventi letti all'avvio.
+     *
+     * @return Lo stato corrente del calendario.
      */
-    public void saveData() {
-        File dataFile = new File(plugin.getDataFolder(), "data.yml");
-        FileConfiguration dataConfig = YamlConfiguration.loadConfiguration(dataFile);
-
-        dataConfig.set("calendario.anno", this.annoCorrente);
-        dataConfig.set("calendario.mese", this.meseCorrente);
-        dataConfig.set("calendario.giorno", this.giornoCorrente);
+    public CalendarState snapshot() {
         // Usa Optional per gestire in modo sicuro il caso in cui nessun mondo sia caricato.
-        Bukkit.getWorlds().stream().findFirst()
-                .ifPresent(world -> dataConfig.set("calendario.total-ticks-salvati", world.getFullTime()));
-        try {
-            dataConfig.save(dataFile);
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "Impossibile salvare i dati del calendario in data.yml!", e);
+        long fullTime = Bukkit.getWorlds().stream().findFirst().map(World::getFullTime).orElse(-1L);
+        List<CalendarState.StoredEvent> activeEvents = loadedState.activeEvents();
+        Map<String, CalendarState.EventBookkeeping> bookkeeping = loadedState.bookkeeping();
+        long journalSequence = loadedState.journalSequence();
+        EventManager eventManager = plugin.getEventManager();
+        if (eventManager != null) {
+            activeEvents = eventManager.exportActiveEvents(getGiornoAssoluto());
+            bookkeeping = eventManager.getBookkeeping();
+            journalSequence = eventManager.getJournalSequence();
         }
+        return new CalendarState(this.annoCorrente, this.meseCorrente, this.giornoCorrente, fullTime,
+                activeEvents, bookkeeping, journalSequence);
+    }
+
+    /**
+     * Salva lo stato attuale del calendario e attende che la scrittura sia completata.
+     * Viene chiamato alla disabilitazione e al ricaricamento del plugin.
+     */
+    public void saveData() {
+        persistence.saveAsync(snapshot()).join();
+    }
+
+    /**
+     * Salva lo stato attuale del calendario in background: sul thread principale viene solo
+     * catturato lo stato, la scrittura avviene sul thread di {@link CalendarPersistence}.
+     */
+    public void saveDataAsync() {
+        persistence.saveAsync(snapshot());
+    }
+
+    /**
+     * Ferma il salvataggio automatico e attende le scritture ancora in coda.
+     */
+    public void shutdown() {
+        persistence.close();
+    }
+
+    /**
+     * Restituisce il sistema di salvataggio del calendario, ad esempio per le statistiche.
+     * @return Il sistema di salvataggio.
+     */
+    public CalendarPersistence getPersistence() {
+        return persistence;
+    }
+
+    /**
+     * Restituisce lo stato letto all'avvio, usato dall'EventManager per ripristinare gli eventi in corso.
+     * @return Lo stato caricato.
+     */
+    public CalendarState getLoadedState() {
+        return loadedState;
     }
 
     /**
-     * Carica lo stato del calendario dal file {@code data.yml}.
-     * Se il file non esiste, esegue una migrazione una tantum dei dati dal vecchio
-     * percorso in {@code config.yml} per garantire la retro compatibilità.
+     * Carica lo stato del calendario dal formato configurato.
+     * Se il formato non contiene ancora dati, importa lo stato da {@code data.yml} (cambio di formato)
+     * oppure esegue una migrazione una tantum dei dati dal vecchio percorso in {@code config.yml}
+     * per garantire la retro compatibilità.
      */
     private void loadData() {
-        File dataFile = new File(plugin.getDataFolder(), "data.yml");
-        if (!dataFile.exists()) {
-            plugin.getLogger().info("File data.yml non trovato, carico i dati iniziali da config.yml per la migrazione...");
-            this.annoCorrente = plugin.getConfig().getInt("calendario.anno", 1);
-            this.meseCorrente = plugin.getConfig().getInt("calendario.mese", 1);
-            this.giornoCorrente = plugin.getConfig().getInt("calendario.giorno", 1);
-            Bukkit.getWorlds().stream().findFirst().ifPresent(world -> {
-                long ticksSalvati = plugin.getConfig().getLong("calendario.total-ticks-salvati", 0L);
-                world.setFullTime(ticksSalvati);
-            });
-            saveData();
-            return;
+        CalendarState state = null;
+        // Indica se lo stato non proviene dal formato configurato e va quindi scritto subito in esso.
+        boolean migrated = false;
+        try {
+            state = persistence.load();
+            File yamlFile = new File(plugin.getDataFolder(), "data.yml");
+            if (state == null && !persistence.getStorageName().equals("YAML") && yamlFile.exists()) {
+                plugin.getLogger().info("Nessun dato in formato " + persistence.getStorageName() + ", importo lo stato da data.yml...");
+                state = new YamlCalendarStorage(yamlFile).load();
+                migrated = true;
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Impossibile leggere i dati del calendario, carico i valori da config.yml!", e);
         }
 
-        FileConfiguration dataConfig = YamlConfiguration.loadConfiguration(dataFile);
-        this.annoCorrente = dataConfig.getInt("calendario.anno", 1);
-        this.meseCorrente = dataConfig.getInt("calendario.mese", 1);
-        this.giornoCorrente = dataConfig.getInt("calendario.giorno", 1);
+        if (state == null) {
+            plugin.getLogger().info("Dati del calendario non trovati, carico i dati iniziali da config.yml per la migrazione...");
+            state = new CalendarState(
+                    plugin.getConfig().getInt("calendario.anno", 1),
+                    plugin.getConfig().getInt("calendario.mese", 1),
+                    plugin.getConfig().getInt("calendario.giorno", 1),
+                    plugin.getConfig().getLong("calendario.total-ticks-salvati", 0L),
+                    List.of(), Map.of(), 0L);
+            migrated = true;
+        }
 
-        Bukkit.getWorlds().stream().findFirst().ifPresent(world -> {
-            long ticksSalvati = dataConfig.getLong("calendario.total-ticks-salvati", 0L);
-            world.setFullTime(ticksSalvati);
-        });
+        this.loadedState = state;
+        this.annoCorrente = state.anno();
+        this.meseCorrente = state.mese();
+        this.giornoCorrente = state.giorno();
+        if (clampDate()) {
+            plugin.getLogger().warning("Data salvata non valida (" + state.giorno() + "/" + state.mese() + "/" + state.anno()
+                    + "), corretta in " + giornoCorrente + "/" + meseCorrente + "/" + annoCorrente + ".");
+            migrated = true;
+        }
+        long ticksSalvati = state.fullTime();
+        if (ticksSalvati >= 0) {
+            Bukkit.getWorlds().stream().findFirst().ifPresent(world -> world.setFullTime(ticksSalvati));
+        }
+        if (migrated) {
+            saveDataAsync();
+        }
     }
 
     /**
@@ -153,25 +245,40 @@ public class TimeManager {
      * in base al numero esatto di giorni del mese corrente.
      */
     public void advanceDayWithBroadcast() {
-        this.giornoCorrente++;
-        // Usa il nuovo metodo per controllare se il mese è finito
-        if (this.giornoCorrente > getGiorniNelMese()) {
-            this.giornoCorrente = 1;
-            this.meseCorrente++;
-            if (this.meseCorrente > 12) {
-                this.meseCorrente = 1;
-                this.annoCorrente++;
-            }
-        }
+        advanceDaysWithBroadcast(1);
+    }
+
+    /**
+     * Fa avanzare il calendario di un numero arbitrario di giorni in tempo costante,
+     * passando per il giorno assoluto calcolato da {@link CalendarEngine}.
+     * Anche per salti molto grandi viene inviato un solo messaggio di nuovo giorno.
+     *
+     * @param days Il numero di giorni da aggiungere (se minore o uguale a zero non accade nulla).
+     */
+    public void advanceDaysWithBroadcast(long days) {
+        if (days <= 0) return;
+        // Il calendario si ferma all'ultimo giorno rappresentabile invece di superarlo.
+        long lastDay = CalendarEngine.toEpochDay(Year.MAX_VALUE, 12, 31);
+        CalendarEngine.CalendarDate newDate = CalendarEngine.fromEpochDay(Math.min(lastDay, getGiornoAssoluto() + days));
+        this.annoCorrente = newDate.year();
+        this.meseCorrente = newDate.month();
+        this.giornoCorrente = newDate.day();
 
+        // Il messaggio viene preparato una volta per ogni lingua dei giocatori online.
         LanguageManager lang = plugin.getLanguageManager();
-        String dateString = this.giornoCorrente + " " + getNomeMese(this.meseCorrente) + " " + this.annoCorrente;
-        String legacyMessage = lang.getString("events.new-day", "{date}", dateString);
-        Component messageComponent = LegacyComponentSerializer.legacyAmpersand().deserialize(legacyMessage);
-        Bukkit.broadcast(messageComponent);
+        lang.broadcast(locale -> lang.getString(locale, "events.new-day", "{date}",
+                this.giornoCorrente + " " + getNomeMese(this.meseCorrente, locale) + " " + this.annoCorrente));
     }
 
-
+    /**
+     * Restituisce il giorno assoluto della data corrente, cioè il numero di giorni
+     * trascorsi dal 01/01/0001 (vedi {@link CalendarEngine}).
+     *
+     * @return Il giorno assoluto corrente.
+     */
+    public long getGiornoAssoluto() {
+        return CalendarEngine.toEpochDay(this.annoCorrente, this.meseCorrente, this.giornoCorrente);
+    }
 
     /**
      * Restituisce il giorno corrente.
@@ -209,6 +316,17 @@ public class TimeManager {
         return plugin.getLanguageManager().getString("months." + mese, fallback);
     }
 
+    /**
+     * Ottiene il nome tradotto di un mese in una lingua.
+     *
+     * @param mese   Il numero del mese (1-12).
+     * @param locale La lingua.
+     * @return Il nome del mese.
+     */
+    public String getNomeMese(int mese, Locale locale) {
+        return plugin.getLanguageManager().getString(locale, "months." + mese);
+    }
+
     /**
      * Ottiene il nome tradotto e colorato della stagione corrente.
      *
@@ -218,18 +336,33 @@ public class TimeManager {
         return plugin.getLanguageManager().getString("seasons." + getEnumStagioneCorrente().name());
     }
 
+    /**
+     * Ottiene il nome tradotto e colorato della stagione corrente in una lingua.
+     *
+     * @param locale La lingua.
+     * @return La stringa della stagione.
+     */
+    public String getStagioneCorrente(Locale locale) {
+        return plugin.getLanguageManager().getString(locale, "seasons." + getEnumStagioneCorrente().name());
+    }
+
+    /**
+     * Restituisce un indice progressivo che identifica univocamente la stagione corrente
+     * di un determinato anno. Dicembre viene conteggiato con l'inverno dell'anno successivo,
+     * così l'intero inverno (dicembre-febbraio) ha lo stesso indice.
+     *
+     * @return L'indice assoluto della stagione corrente.
+     */
+    public int getIndiceStagioneAssoluto() {
+        return (this.annoCorrente * 12 + this.meseCorrente) / 3;
+    }
+
     /**
      * Determina e restituisce l'enumerazione {@link Stagione} in base al mese corrente.
      *
      * @return L'enum della stagione corrente.
      */
     public Stagione getEnumStagioneCorrente() {
-        return switch (this.meseCorrente) {
-            case 12, 1, 2 -> Stagione.INVERNO;
-            case 3, 4, 5 -> Stagione.PRIMAVERA;
-            case 6, 7, 8 -> Stagione.ESTATE;
-            case 9, 10, 11 -> Stagione.AUTUNNO;
-            default -> Stagione.PRIMAVERA; // Fallback
-        };
+        return CalendarEngine.seasonOf(this.meseCorrente);
     }
 }
\ No newline at end of file
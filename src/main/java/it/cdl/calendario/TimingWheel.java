@@ -0,0 +1,309 @@
+package it.cdl.calendario;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ruota temporale gerarchica per pianificare azioni a un tick assoluto del mondo
+ * ({@link org.bukkit.World#getFullTime()}).
+ * <p>
+ * Ci sono {@value #LEVELS} livelli da {@value #SLOTS} caselle: il livello {@code L} divide il tempo in
+ * blocchi di {@code 64^L} tick. Un timer viene messo nel livello del gruppo di 6 bit più alto in cui
+ * la sua scadenza differisce dal tick corrente e, quando il tempo entra nel suo blocco, viene
+ * spostato in un livello più basso o eseguito. Ogni livello ha una maschera delle caselle occupate,
+ * così il prossimo blocco da elaborare si trova in tempo costante: avanzare di un tick o di
+ * milioni di tick costa solo in proporzione ai timer scaduti, non al tempo trascorso né ai timer registrati.
+ * <p>
+ * Inserimento e annullamento sono O(1) (liste doppiamente collegate). I timer periodici che hanno
+ * saltato più esecuzioni durante un salto in avanti vengono eseguiti una volta sola e ripianificati
+ * dopo il nuovo tick corrente. Se il tempo torna indietro, i timer vengono ridistribuiti (l'unico caso
+ * che li visita tutti). Va usata solo dal thread principale.
+ */
+public class TimingWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 7;
+    /**
+     * Scadenze oltre questo orizzonte (circa 4.4 * 10^12 tick) vengono tenute in una lista a parte.
+     */
+    private static final long HORIZON = 1L << (BITS * LEVELS);
+
+    /**
+     * Timer registrato nella ruota, restituito come riferimento per poterlo annullare.
+     */
+    public static final class Timer {
+        private final Runnable task;
+        private final long period;
+        private long deadline;
+        private Timer prev;
+        private Timer next;
+        /**
+         * Livello e casella in cui si trova il timer: -1 se non è nella ruota, -2 se è nella lista oltre l'orizzonte,
+         * -3 se è scaduto e in attesa di essere eseguito.
+         */
+        private int level = -1;
+        private int slot;
+        private boolean cancelled;
+
+        private Timer(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * Restituisce il prossimo tick assoluto in cui il timer verrà eseguito.
+         * @return Il tick di scadenza.
+         */
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Indica se il timer è ancora in attesa di essere eseguito.
+         * @return {@code false} se il timer è stato annullato o, se non periodico, già eseguito.
+         */
+        public boolean isPending() {
+            return !cancelled && level != -1;
+        }
+    }
+
+    private final Timer[][] heads = new Timer[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private final List<Timer> beyondHorizon = new ArrayList<>();
+    private final List<Timer> due = new ArrayList<>();
+    private long now;
+    private int size;
+
+    // Statistiche
+    private long totalFired = 0;
+    private long totalCascaded = 0;
+
+    /**
+     * @param now Il tick assoluto corrente.
+     */
+    public TimingWheel(long now) {
+        this.now = now;
+    }
+
+    /**
+     * Pianifica un'esecuzione singola.
+     *
+     * @param deadline Il tick assoluto di esecuzione; se è già passato, l'azione parte al prossimo avanzamento.
+     * @param task     L'azione da eseguire.
+     * @return Il timer, per poterlo annullare.
+     */
+    public Timer schedule(long deadline, Runnable task) {
+        return add(new Timer(task, Math.max(deadline, now + 1), 0));
+    }
+
+    /**
+     * Pianifica un'esecuzione periodica.
+     *
+     * @param firstDeadline Il tick assoluto della prima esecuzione.
+     * @param period        L'intervallo in tick tra due esecuzioni (almeno 1).
+     * @param task          L'azione da eseguire.
+     * @return Il timer, per poterlo annullare.
+     */
+    public Timer scheduleRepeating(long firstDeadline, long period, Runnable task) {
+        if (period < 1) {
+            throw new IllegalArgumentException("period must be at least 1 tick");
+        }
+        long deadline = firstDeadline;
+        if (deadline <= now) {
+            deadline += period * ((now - deadline) / period + 1);
+        }
+        return add(new Timer(task, deadline, period));
+    }
+
+    /**
+     * Annulla un timer in tempo costante. Annullare un timer già eseguito o annullato non ha effetto.
+     *
+     * @param timer Il timer da annullare.
+     */
+    public void cancel(Timer timer) {
+        if (timer.cancelled) return;
+        timer.cancelled = true;
+        if (timer.level >= 0) {
+            unlink(timer);
+            size--;
+        } else if (timer.level == -2) {
+            beyondHorizon.remove(timer);
+            timer.level = -1;
+            size--;
+        }
+    }
+
+    /**
+     * Porta la ruota al tick indicato, eseguendo in ordine di scadenza i timer scaduti.
+     * I timer eseguiti possono pianificarne o annullarne altri.
+     *
+     * @param target Il nuovo tick assoluto corrente.
+     */
+    public void advanceTo(long target) {
+        if (target < now) {
+            rewind(target);
+            return;
+        }
+        while (true) {
+            long next = nextBlockStart();
+            if (next > target) break;
+            now = next;
+            // Dal livello più alto al più basso: i timer spostati possono finire in caselle che iniziano adesso.
+            for (int level = LEVELS - 1; level >= 0; level--) {
+                long blockMask = (1L << (BITS * level)) - 1;
+                if ((now & blockMask) != 0) continue;
+                int slot = (int) ((now >>> (BITS * level)) & (SLOTS - 1));
+                if ((occupied[level] & (1L << slot)) == 0) continue;
+                Timer timer = heads[level][slot];
+                heads[level][slot] = null;
+                occupied[level] &= ~(1L << slot);
+                while (timer != null) {
+                    Timer following = timer.next;
+                    timer.prev = null;
+                    timer.next = null;
+                    timer.level = -1;
+                    size--;
+                    if (level > 0) totalCascaded++;
+                    add(timer);
+                    timer = following;
+                }
+            }
+            fireDue(target);
+        }
+        long previousEpoch = now & -HORIZON;
+        now = target;
+        if ((now & -HORIZON) != previousEpoch && !beyondHorizon.isEmpty()) {
+            // Si è entrati in un nuovo orizzonte: i timer lontani possono ora trovare posto nella ruota.
+            List<Timer> pending = new ArrayList<>(beyondHorizon);
+            beyondHorizon.clear();
+            size -= pending.size();
+            for (Timer timer : pending) {
+                timer.level = -1;
+                add(timer);
+            }
+            fireDue(target);
+        }
+    }
+
+    /**
+     * Esegue i timer arrivati a scadenza e ripianifica quelli periodici dopo il tick finale dell'avanzamento.
+     */
+    private void fireDue(long target) {
+        for (int i = 0; i < due.size(); i++) {
+            Timer timer = due.get(i);
+            if (timer.cancelled) continue;
+            timer.level = -1;
+            totalFired++;
+            timer.task.run();
+            if (timer.period > 0 && !timer.cancelled) {
+                timer.deadline += timer.period * (Math.max(0, target - timer.deadline) / timer.period + 1);
+                place(timer);
+            }
+        }
+        due.clear();
+    }
+
+    /**
+     * Calcola il primo tick, successivo al tick corrente, in cui inizia il blocco di una casella occupata.
+     */
+    private long nextBlockStart() {
+        long best = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            long bits = occupied[level];
+            if (bits == 0) continue;
+            int shift = BITS * level;
+            int slot = Long.numberOfTrailingZeros(bits);
+            long base = now & ~((1L << (shift + BITS)) - 1);
+            long start = base + ((long) slot << shift);
+            if (start < best) best = start;
+        }
+        return best;
+    }
+
+    /**
+     * Il tempo è tornato indietro: le posizioni dipendono dal tick corrente, quindi tutti i timer vengono ridistribuiti.
+     */
+    private void rewind(long target) {
+        List<Timer> all = new ArrayList<>(size);
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                for (Timer timer = heads[level][slot]; timer != null; timer = timer.next) {
+                    all.add(timer);
+                }
+                heads[level][slot] = null;
+            }
+            occupied[level] = 0;
+        }
+        all.addAll(beyondHorizon);
+        beyondHorizon.clear();
+        size = 0;
+        now = target;
+        for (Timer timer : all) {
+            timer.prev = null;
+            timer.next = null;
+            timer.level = -1;
+            place(timer);
+        }
+    }
+
+    private Timer add(Timer timer) {
+        if (timer.deadline <= now) {
+            timer.level = -3;
+            due.add(timer);
+            return timer;
+        }
+        place(timer);
+        return timer;
+    }
+
+    /**
+     * Inserisce un timer con scadenza futura nella casella corretta.
+     */
+    private void place(Timer timer) {
+        size++;
+        long diff = timer.deadline ^ now;
+        if ((diff & -HORIZON) != 0) {
+            timer.level = -2;
+            beyondHorizon.add(timer);
+            return;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(diff)) / BITS;
+        int slot = (int) ((timer.deadline >>> (BITS * level)) & (SLOTS - 1));
+        timer.level = level;
+        timer.slot = slot;
+        Timer head = heads[level][slot];
+        timer.next = head;
+        if (head != null) head.prev = timer;
+        heads[level][slot] = timer;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            heads[timer.level][timer.slot] = timer.next;
+            if (timer.next == null) occupied[timer.level] &= ~(1L << timer.slot);
+        }
+        if (timer.next != null) timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+        timer.level = -1;
+    }
+
+    /**
+     * Restituisce il tick assoluto corrente della ruota.
+     * @return L'ultimo tick raggiunto con {@link #advanceTo(long)}.
+     */
+    public long getNow() {
+        return now;
+    }
+
+    // --- Metodi Getter per le statistiche ---
+
+    public int getSize() { return size; }
+    public long getTotalFired() { return totalFired; }
+    public long getTotalCascaded() { return totalCascaded; }
+}
@@ -0,0 +1,96 @@
+package it.cdl.calendario;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Salvataggio del calendario nel file {@code data.yml}, leggibile e modificabile a mano.
+ * Le chiavi della data sono le stesse delle versioni precedenti del plugin, quindi i vecchi
+ * file vengono letti senza migrazione. Il file viene sostituito con una rinomina atomica.
+ */
+public class YamlCalendarStorage implements CalendarStorage {
+
+    private final File file;
+
+    /**
+     * @param file Il file YAML in cui salvare il calendario.
+     */
+    public YamlCalendarStorage(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public CalendarState load() throws IOException {
+        if (!file.exists()) return null;
+        YamlConfiguration data = new YamlConfiguration();
+        try {
+            data.load(file);
+        } catch (InvalidConfigurationException e) {
+            throw new IOException("File " + file.getName() + " non valido: " + e.getMessage(), e);
+        }
+
+        List<CalendarState.StoredEvent> active = new ArrayList<>();
+        ConfigurationSection activeSection = data.getConfigurationSection("active-events");
+        if (activeSection != null) {
+            for (String id : activeSection.getKeys(false)) {
+                active.add(new CalendarState.StoredEvent(id,
+                        activeSection.getLong(id + ".start-day", 0L),
+                        activeSection.getLong(id + ".days-remaining", -1L)));
+            }
+        }
+        Map<String, CalendarState.EventBookkeeping> bookkeeping = new HashMap<>();
+        ConfigurationSection bookkeepingSection = data.getConfigurationSection("bookkeeping");
+        if (bookkeepingSection != null) {
+            for (String id : bookkeepingSection.getKeys(false)) {
+                bookkeeping.put(id, new CalendarState.EventBookkeeping(
+                        bookkeepingSection.getLong(id + ".times-started", 0L),
+                        bookkeepingSection.getLong(id + ".last-start-day", -1L),
+                        bookkeepingSection.getLong(id + ".last-end-day", -1L)));
+            }
+        }
+        return new CalendarState(
+                data.getInt("calendario.anno", 1),
+                data.getInt("calendario.mese", 1),
+                data.getInt("calendario.giorno", 1),
+                data.getLong("calendario.total-ticks-salvati", -1L),
+                active, bookkeeping,
+                data.getLong("calendario.journal-sequence", 0L));
+    }
+
+    @Override
+    public void save(CalendarState state) throws IOException {
+        YamlConfiguration data = new YamlConfiguration();
+        data.set("calendario.anno", state.anno());
+        data.set("calendario.mese", state.mese());
+        data.set("calendario.giorno", state.giorno());
+        if (state.fullTime() >= 0) {
+            data.set("calendario.total-ticks-salvati", state.fullTime());
+        }
+        data.set("calendario.journal-sequence", state.journalSequence());
+        for (CalendarState.StoredEvent event : state.activeEvents()) {
+            data.set("active-events." + event.eventId() + ".start-day", event.startDay());
+            data.set("active-events." + event.eventId() + ".days-remaining", event.daysRemaining());
+        }
+        for (Map.Entry<String, CalendarState.EventBookkeeping> entry : state.bookkeeping().entrySet()) {
+            String path = "bookkeeping." + entry.getKey();
+            data.set(path + ".times-started", entry.getValue().timesStarted());
+            data.set(path + ".last-start-day", entry.getValue().lastStartDay());
+            data.set(path + ".last-end-day", entry.getValue().lastEndDay());
+        }
+        CalendarPersistence.writeAtomically(file.toPath(), data.saveToString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String getName() {
+        return "YAML";
+    }
+}